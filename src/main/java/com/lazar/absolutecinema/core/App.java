@@ -1,7 +1,10 @@
 package com.lazar.absolutecinema.core;
 
+import com.lazar.absolutecinema.diagnostics.Diagnostic;
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
 import com.lazar.absolutecinema.generator.*;
 import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.optimizer.Optimizer;
 import com.lazar.absolutecinema.parser.Parser;
 import com.lazar.absolutecinema.parser.ast.Program;
 import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
@@ -10,9 +13,11 @@ import com.lazar.absolutecinema.util.JsonAstSwingViewer;
 import com.lazar.absolutecinema.util.Util;
 
 import java.io.File;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 public class App {
 	private File sourceFile;
@@ -21,19 +26,34 @@ public class App {
 	private Parser parser;
 	private SemanticAnalyzer semanticAnalyzer;
 	private boolean codeGen;
+	private boolean instrument;
+	private boolean dump;
+	private int scenesPerClass;
 	private Generator generator;
 	private GenerationResult generationResult;
 
 	public App(String[] args) {
 		try {
-			if (args.length == 2) {
-				sourceFile = Util.loadFileFromResources(args[0]);
-				sourceCode = Files.readString(sourceFile.toPath(), StandardCharsets.UTF_8);
-				codeGen = Boolean.parseBoolean(args[1]);
-			}
-			else {
+			if (args.length < 2 || args.length > 5) {
 				throw new IllegalArgumentException("Invalid number of arguments");
 			}
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].equals("--instrument")) {
+					instrument = true;
+				}
+				else if (args[i].equals("--dump")) {
+					dump = true;
+				}
+				else if (args[i].startsWith("--partition=")) {
+					scenesPerClass = Integer.parseInt(args[i].substring("--partition=".length()));
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+			sourceFile = Util.loadFileFromResources(args[0]);
+			sourceCode = Files.readString(sourceFile.toPath(), StandardCharsets.UTF_8);
+			codeGen = Boolean.parseBoolean(args[1]);
 		}
 		catch (Exception e) {
 			System.out.println(e.getMessage());
@@ -42,27 +62,50 @@ public class App {
 
 	public void run() {
 		try {
+			Diagnostics diagnostics = new Diagnostics();
 			System.out.println("Lexing...");
-			lexer = new Lexer(sourceCode);
+			lexer = new Lexer(sourceCode, diagnostics);
 			var tokens = lexer.lex();
 			Util.printTokenTable(tokens);
-			System.out.println("Lexing successful!");
+			if (!diagnostics.hasErrors()) {
+				System.out.println("Lexing successful!");
+			}
 			System.out.println("Parsing...");
-			parser = new Parser(tokens);
+			parser = new Parser(tokens, diagnostics);
 			Program program = parser.parseProgram();
+			if (reportErrors(diagnostics)) {
+				return;
+			}
 			System.out.println("Parsing successful!");
+			if (codeGen) {
+				List<String> removed = new Optimizer().pruneUnreachable(program);
+				if (!removed.isEmpty()) {
+					System.out.println("Removed unreachable declarations: " + String.join(", ", removed));
+				}
+			}
 			System.out.println("Performing semantic analysis...");
 
-			semanticAnalyzer = new SemanticAnalyzer(program);
+			semanticAnalyzer = new SemanticAnalyzer(program, diagnostics);
 			semanticAnalyzer.analyze();
+			if (reportErrors(diagnostics)) {
+				return;
+			}
 
 			System.out.println("Semantic analysis successful!");
+			new Optimizer().optimize(program, !instrument);
 			if(codeGen){
 				System.out.println("Generating IR...");
-				generator = new Generator();
+				generator = new Generator(true, sourceFile.getName(), instrument, Generator.DEFAULT_MAX_METHOD_SIZE, scenesPerClass, dump);
 				generationResult = generator.generate(program);
-				Util.writeStringToFile(generationResult.getPlainTextIR(), "./Main.j");
-				Util.writeBytesToFile(generationResult.getBinaryIR(), "./Main.class");
+				if (dump) {
+					try (Writer out = Files.newBufferedWriter(Path.of("./Main.j"), StandardCharsets.UTF_8)) {
+						generationResult.writePlainTextIR(out);
+					}
+					Util.writeStringToFile(generationResult.dumpIr(), "./Main.ir");
+				}
+				for (var entry : generationResult.getClasses().entrySet()) {
+					Util.writeBytesToFile(entry.getValue(), "./" + entry.getKey() + ".class");
+				}
 				System.out.println("IR generation successful!");
 			}
 			System.out.println("Converting AST to JSON...");
@@ -79,4 +122,15 @@ public class App {
 			e.printStackTrace();
 		}
 	}
+
+	private boolean reportErrors(Diagnostics diagnostics) {
+		if (!diagnostics.hasErrors()) {
+			return false;
+		}
+		for (Diagnostic diagnostic : diagnostics.getDiagnostics()) {
+			System.out.println(diagnostic.message());
+		}
+		System.out.println(diagnostics.count() + " error(s) found.");
+		return true;
+	}
 }
@@ -0,0 +1,18 @@
+package com.lazar.absolutecinema.diagnostics;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class CompilationException extends RuntimeException {
+	private final List<Diagnostic> diagnostics;
+
+	public CompilationException(List<Diagnostic> diagnostics) {
+		super(diagnostics.stream().map(Diagnostic::message).collect(Collectors.joining(System.lineSeparator())),
+			null, false, false);
+		this.diagnostics = List.copyOf(diagnostics);
+	}
+
+	public List<Diagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+}
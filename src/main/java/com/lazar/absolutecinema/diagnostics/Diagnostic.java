@@ -0,0 +1,14 @@
+package com.lazar.absolutecinema.diagnostics;
+
+public record Diagnostic(Stage stage, String message, int line, int column) {
+	public enum Stage {
+		LEXER,
+		PARSER,
+		SEMANTIC
+	}
+
+	@Override
+	public String toString() {
+		return message;
+	}
+}
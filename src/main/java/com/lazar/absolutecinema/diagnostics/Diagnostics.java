@@ -0,0 +1,35 @@
+package com.lazar.absolutecinema.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Diagnostics {
+	private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+	public void report(Diagnostic.Stage stage, String message, int line, int column) {
+		diagnostics.add(new Diagnostic(stage, message, line, column));
+	}
+
+	public boolean hasErrors() {
+		return !diagnostics.isEmpty();
+	}
+
+	public int count() {
+		return diagnostics.size();
+	}
+
+	public List<Diagnostic> getDiagnostics() {
+		return Collections.unmodifiableList(diagnostics);
+	}
+
+	public void clear() {
+		diagnostics.clear();
+	}
+
+	public void throwIfErrors() {
+		if (hasErrors()) {
+			throw new CompilationException(diagnostics);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.parser.ast.Expr;
+import com.lazar.absolutecinema.parser.ast.Grouping;
+import com.lazar.absolutecinema.parser.ast.Literal;
+import com.lazar.absolutecinema.parser.ast.Unary;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Large primitive array literals whose elements are all constants. Instead of a store per element, the values travel
+// as a string constant, which lives in the constant pool rather than in the method's code: char arrays are the string
+// itself, the other types are decoded in one pass by a synthetic $unpack method of the class. Each element becomes a
+// little endian run of 6 bit groups, one per char, where 0x40 marks that another group follows and everything is
+// shifted up by one so the common chars stay single bytes in the class file. Ints are zigzag encoded so small negative
+// values stay short, and doubles have their bits reversed, so the zeros at the end of a short mantissa come first.
+final class ConstantArrays {
+	static final int MIN_ELEMENTS = 16;
+	static final String DECODER = "$unpack";
+	static final String TEMPLATE = "$array";
+	private static final int MAX_CONSTANT = 65535 / 3;
+	private static final int MORE = 0x40;
+
+	private ConstantArrays() {
+	}
+
+	// The element values, or null when the literal is too small or not all constant.
+	static Object[] values(List<Expr> elements, Type elementType) {
+		if (elements.size() < MIN_ELEMENTS) {
+			return null;
+		}
+		Object[] values = new Object[elements.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = value(elements.get(i), elementType);
+			if (values[i] == null) {
+				return null;
+			}
+		}
+		return values;
+	}
+
+	private static Object value(Expr e, Type elementType) {
+		if (e instanceof Grouping grouping) {
+			return value(grouping.expr, elementType);
+		}
+		if (e instanceof Unary unary && unary.op.getLexeme().equals("-")) {
+			return switch (value(unary.right, elementType)) {
+				case Integer i -> -i;
+				case Double d -> -d;
+				case null, default -> null;
+			};
+		}
+		if (!(e instanceof Literal literal)) {
+			return null;
+		}
+		return switch (elementType.getSort()) {
+			case Type.INT -> literal.value instanceof Integer i ? i : null;
+			case Type.DOUBLE -> literal.value instanceof Number n ? n.doubleValue() : null;
+			case Type.BOOLEAN -> literal.value instanceof Boolean b ? b : null;
+			case Type.CHAR -> literal.value instanceof Character c ? c : null;
+			default -> null;
+		};
+	}
+
+	static String encode(Object[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (Object value : values) {
+			switch (value) {
+				case Character c -> sb.append(c.charValue());
+				case Integer i -> append(sb, Integer.toUnsignedLong(i << 1 ^ i >> 31));
+				case Boolean b -> append(sb, b ? 1 : 0);
+				case Double d -> append(sb, Long.reverse(Double.doubleToRawLongBits(d)));
+				default -> throw new RuntimeException("Cannot encode array element: " + value);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, long bits) {
+		do {
+			int group = (int) (bits & 0x3F);
+			bits >>>= 6;
+			sb.append((char) ((bits != 0 ? group | MORE : group) + 1));
+		} while (bits != 0);
+	}
+
+	// Pieces that each fit a constant pool entry, to be joined with String.concat.
+	static List<String> chunks(String encoded) {
+		List<String> chunks = new ArrayList<>();
+		for (int i = 0; i < encoded.length(); i += MAX_CONSTANT) {
+			chunks.add(encoded.substring(i, Math.min(encoded.length(), i + MAX_CONSTANT)));
+		}
+		if (chunks.isEmpty()) {
+			chunks.add("");
+		}
+		return chunks;
+	}
+
+	static String decoderName(Type elementType) {
+		return DECODER + elementType.getDescriptor();
+	}
+
+	static String decoderDescriptor(Type elementType) {
+		return "(Ljava/lang/String;I)[" + elementType.getDescriptor();
+	}
+
+	// static T[] $unpackT(String s, int n): locals are s, n, the array, the read position, the element index, the
+	// bits read so far (two slots), their shift and the current char.
+	static MethodNode decoder(String name) {
+		Type elementType = Type.getType(name.substring(DECODER.length()));
+		MethodNode mv = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, name,
+			decoderDescriptor(elementType), null, null);
+		LabelNode element = new LabelNode();
+		LabelNode group = new LabelNode();
+		LabelNode done = new LabelNode();
+		InsnList code = mv.instructions;
+		code.add(new VarInsnNode(Opcodes.ILOAD, 1));
+		code.add(new IntInsnNode(Opcodes.NEWARRAY, switch (elementType.getSort()) {
+			case Type.INT -> Opcodes.T_INT;
+			case Type.DOUBLE -> Opcodes.T_DOUBLE;
+			default -> Opcodes.T_BOOLEAN;
+		}));
+		code.add(new VarInsnNode(Opcodes.ASTORE, 2));
+		code.add(new InsnNode(Opcodes.ICONST_0));
+		code.add(new VarInsnNode(Opcodes.ISTORE, 3));
+		code.add(new InsnNode(Opcodes.ICONST_0));
+		code.add(new VarInsnNode(Opcodes.ISTORE, 4));
+		code.add(element);
+		code.add(new VarInsnNode(Opcodes.ILOAD, 4));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 1));
+		code.add(new JumpInsnNode(Opcodes.IF_ICMPGE, done));
+		code.add(new InsnNode(Opcodes.LCONST_0));
+		code.add(new VarInsnNode(Opcodes.LSTORE, 5));
+		code.add(new InsnNode(Opcodes.ICONST_0));
+		code.add(new VarInsnNode(Opcodes.ISTORE, 7));
+		code.add(group);
+		code.add(new VarInsnNode(Opcodes.ALOAD, 0));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 3));
+		code.add(new IincInsnNode(3, 1));
+		code.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C", false));
+		code.add(new InsnNode(Opcodes.ICONST_1));
+		code.add(new InsnNode(Opcodes.ISUB));
+		code.add(new VarInsnNode(Opcodes.ISTORE, 8));
+		code.add(new VarInsnNode(Opcodes.LLOAD, 5));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 8));
+		code.add(new IntInsnNode(Opcodes.BIPUSH, 0x3F));
+		code.add(new InsnNode(Opcodes.IAND));
+		code.add(new InsnNode(Opcodes.I2L));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 7));
+		code.add(new InsnNode(Opcodes.LSHL));
+		code.add(new InsnNode(Opcodes.LOR));
+		code.add(new VarInsnNode(Opcodes.LSTORE, 5));
+		code.add(new IincInsnNode(7, 6));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 8));
+		code.add(new IntInsnNode(Opcodes.BIPUSH, MORE));
+		code.add(new InsnNode(Opcodes.IAND));
+		code.add(new JumpInsnNode(Opcodes.IFNE, group));
+		code.add(new VarInsnNode(Opcodes.ALOAD, 2));
+		code.add(new VarInsnNode(Opcodes.ILOAD, 4));
+		code.add(new VarInsnNode(Opcodes.LLOAD, 5));
+		switch (elementType.getSort()) {
+			case Type.INT -> {
+				code.add(new InsnNode(Opcodes.ICONST_1));
+				code.add(new InsnNode(Opcodes.LUSHR));
+				code.add(new VarInsnNode(Opcodes.LLOAD, 5));
+				code.add(new InsnNode(Opcodes.LCONST_1));
+				code.add(new InsnNode(Opcodes.LAND));
+				code.add(new InsnNode(Opcodes.LNEG));
+				code.add(new InsnNode(Opcodes.LXOR));
+				code.add(new InsnNode(Opcodes.L2I));
+			}
+			case Type.DOUBLE -> {
+				code.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Long", "reverse", "(J)J", false));
+				code.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false));
+			}
+			default -> code.add(new InsnNode(Opcodes.L2I));
+		}
+		code.add(new InsnNode(elementType.getOpcode(Opcodes.IASTORE)));
+		code.add(new IincInsnNode(4, 1));
+		code.add(new JumpInsnNode(Opcodes.GOTO, element));
+		code.add(done);
+		code.add(new VarInsnNode(Opcodes.ALOAD, 2));
+		code.add(new InsnNode(Opcodes.ARETURN));
+		return mv;
+	}
+}
@@ -1,19 +1,55 @@
 package com.lazar.absolutecinema.generator;
 
+import com.lazar.absolutecinema.generator.ir.IrMethod;
+import com.lazar.absolutecinema.generator.ir.IrPrinter;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
 public class GenerationResult {
-	private final String plainTextIR;
 	private final byte[] binaryIR;
+	private final Map<String, byte[]> classes;
+	private final List<IrMethod> irMethods;
 
-	public GenerationResult(String plainTextIR, byte[] binaryIR) {
-		this.plainTextIR = plainTextIR;
+	public GenerationResult(byte[] binaryIR, Map<String, byte[]> classes, List<IrMethod> irMethods) {
 		this.binaryIR = binaryIR;
+		this.classes = classes;
+		this.irMethods = irMethods;
 	}
 
+	// Jasmin text for every class, printed from the class bytes only when asked for.
 	public String getPlainTextIR() {
-		return plainTextIR;
+		StringWriter out = new StringWriter();
+		writePlainTextIR(out);
+		return out.toString();
+	}
+
+	public void writePlainTextIR(Writer out) {
+		for (byte[] bytes : classes.values()) {
+			JasminPrinter.write(bytes, out);
+		}
 	}
 
 	public byte[] getBinaryIR() {
 		return binaryIR;
 	}
+
+	// Every emitted class by internal name, the main class first.
+	public Map<String, byte[]> getClasses() {
+		return classes;
+	}
+
+	public List<IrMethod> getIrMethods() {
+		return irMethods;
+	}
+
+	// Only available when the generator was asked to keep the IR.
+	public String dumpIr() {
+		if (irMethods == null) {
+			throw new RuntimeException("IR was not kept for this result");
+		}
+		return IrPrinter.print(irMethods);
+	}
 }
@@ -0,0 +1,1545 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.generator.ir.BasicBlock;
+import com.lazar.absolutecinema.generator.ir.Insn;
+import com.lazar.absolutecinema.generator.ir.IrMethod;
+import com.lazar.absolutecinema.generator.ir.LineNumber;
+import com.lazar.absolutecinema.generator.ir.LocalVariable;
+import com.lazar.absolutecinema.generator.ir.Terminator;
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+import com.lazar.absolutecinema.semantic.Binding;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+// Lowers one analyzed scene into a control-flow graph of stack instructions.
+public class IrBuilder {
+	static final int MAX_INLINE_DEPTH = 3;
+	// StringConcatFactory accepts at most 200 argument slots; longer chains are split into chained calls.
+	private static final int MAX_CONCAT_SLOTS = 200;
+	// Fewer keys than this compare faster one after the other than through a switch.
+	private static final int MIN_SWITCH_KEYS = 3;
+
+	private final String className;
+	private final Map<String, SceneDecl> scenes;
+	private final Map<String, SetupDecl> setups;
+	private final Map<String, String> holders;
+	private IrMethod method;
+	private SceneDecl tailCallee;
+	private BasicBlock current;
+	private Type returnType;
+	private final Deque<BasicBlock> breakTargets = new ArrayDeque<>();
+	private final Deque<BasicBlock> continueTargets = new ArrayDeque<>();
+	private int slotBase = 0;
+	private int frameTop = 0;
+	private final Deque<BasicBlock> inlineEnds = new ArrayDeque<>();
+	private final Deque<Boolean> inlineValueNeeded = new ArrayDeque<>();
+	private final List<LocalVariable> openLocals = new ArrayList<>();
+	private int line = 0;
+	private int templates = 0;
+
+	public IrBuilder(String className, Map<String, SceneDecl> scenes, Map<String, SetupDecl> setups) {
+		this(className, scenes, setups, Map.of());
+	}
+
+	// holders names the class of every scene that does not live in the main class.
+	public IrBuilder(String className, Map<String, SceneDecl> scenes, Map<String, SetupDecl> setups, Map<String, String> holders) {
+		this.className = className;
+		this.scenes = scenes;
+		this.setups = setups;
+		this.holders = holders;
+	}
+
+	public IrMethod build(SceneDecl scene) {
+		boolean isEntrance = scene.name.getLexeme().equals("entrance");
+		String name = isEntrance ? "main" : scene.name.getLexeme();
+		String descriptor = isEntrance ? "([Ljava/lang/String;)V" : JvmTypes.descriptor(scene);
+		method = new IrMethod(holders.getOrDefault(scene.name.getLexeme(), className), name, descriptor,
+			Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+		tailCallee = isEntrance ? null : scene;
+		return buildBody(scene);
+	}
+
+	public IrMethod buildMethod(SetupDecl setup, SceneDecl scene) {
+		method = new IrMethod(setup.name.getLexeme(), scene.name.getLexeme(), JvmTypes.descriptor(scene),
+			Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL);
+		return buildBody(scene);
+	}
+
+	private IrMethod buildBody(SceneDecl scene) {
+		boolean isEntrance = !scene.isMethod && scene.name.getLexeme().equals("entrance");
+		returnType = isEntrance ? Type.VOID_TYPE : JvmTypes.of(scene.returnType);
+		slotBase = 0;
+		frameTop = scene.frameSize;
+		start(new BasicBlock());
+		if (scene.isMethod) {
+			openLocal("this", Type.getObjectType(method.owner), 0);
+		}
+		for (Param param : scene.params) {
+			// Split scenes pass fillers for the slots their rest never reads; those have no name to list.
+			if (param.binding.name() != null) {
+				openLocal(param.name.getLexeme(), JvmTypes.of(param.type), param.binding.slot());
+			}
+		}
+		generateBlock(scene.body);
+		if (!returnType.equals(Type.VOID_TYPE)) {
+			pushDefaultValue(returnType);
+		}
+		terminate(new Terminator.Return(returnType));
+		closeLocals(0);
+		method.threadJumps();
+		return method;
+	}
+
+	// Field initializers run in declaration order after Object.<init>, then the ctor body.
+	public IrMethod buildConstructor(SetupDecl setup) {
+		String owner = setup.name.getLexeme();
+		method = new IrMethod(owner, "<init>", JvmTypes.descriptor(setup.ctor), Opcodes.ACC_PUBLIC);
+		returnType = Type.VOID_TYPE;
+		slotBase = 0;
+		frameTop = setup.ctor != null ? setup.ctor.frameSize : 1;
+		start(new BasicBlock());
+		openLocal("this", Type.getObjectType(owner), 0);
+		if (setup.ctor != null) {
+			for (Param param : setup.ctor.params) {
+				openLocal(param.name.getLexeme(), JvmTypes.of(param.type), param.binding.slot());
+			}
+		}
+		emit(new Insn.Load(Type.getObjectType(owner), 0));
+		emit(new Insn.Invoke(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V"));
+		for (VarDecl field : setup.fields) {
+			if (field.initializer != null) {
+				emit(new Insn.Load(Type.getObjectType(owner), 0));
+				generateExpression(field.initializer);
+				emit(new Insn.Field(Opcodes.PUTFIELD, owner, field.name.getLexeme(), JvmTypes.of(field.type).getDescriptor()));
+			}
+		}
+		if (setup.ctor != null) {
+			generateBlock(setup.ctor.body);
+		}
+		terminate(new Terminator.Return(Type.VOID_TYPE));
+		closeLocals(0);
+		method.threadJumps();
+		return method;
+	}
+
+	// Main's static initializer: the scanner, then the global initializers in source order.
+	public IrMethod buildStaticInitializer(Collection<VarDecl> globals) {
+		method = new IrMethod(className, "<clinit>", "()V", Opcodes.ACC_STATIC);
+		returnType = Type.VOID_TYPE;
+		slotBase = 0;
+		frameTop = 0;
+		start(new BasicBlock());
+		emit(new Insn.TypeOp(Opcodes.NEW, "java/util/Scanner"));
+		op(Opcodes.DUP);
+		emit(new Insn.Field(Opcodes.GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;"));
+		emit(new Insn.Invoke(Opcodes.INVOKESPECIAL, "java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V"));
+		emit(new Insn.Field(Opcodes.PUTSTATIC, className, "scanner", "Ljava/util/Scanner;"));
+		for (VarDecl global : globals) {
+			if (global.initializer != null) {
+				markLine(global.name);
+				generateExpression(global.initializer);
+				emit(new Insn.Field(Opcodes.PUTSTATIC, className, global.name.getLexeme(), JvmTypes.of(global.type).getDescriptor()));
+			}
+		}
+		terminate(new Terminator.Return(Type.VOID_TYPE));
+		method.threadJumps();
+		return method;
+	}
+
+	// ---------- CFG construction ----------
+
+	private void emit(Insn insn) {
+		current.insns.add(insn);
+	}
+
+	private void op(int opcode) {
+		emit(new Insn.Op(opcode));
+	}
+
+	private void push(Object value) {
+		emit(new Insn.Const(value));
+	}
+
+	private void start(BasicBlock block) {
+		method.place(block);
+		current = block;
+		line = 0;
+	}
+
+	// Closes the current block; anything emitted before the next start() lands in an unplaced, unreachable block.
+	private void terminate(Terminator terminator) {
+		current.terminator = terminator;
+		current = new BasicBlock();
+	}
+
+	private void jump(BasicBlock target) {
+		terminate(new Terminator.Goto(target));
+	}
+
+	private void branch(int opcode, BasicBlock target, BasicBlock next) {
+		terminate(new Terminator.Branch(opcode, target, next));
+	}
+
+	// Ends the current block with a jump into the given one and continues there.
+	private void fallInto(BasicBlock block) {
+		current.terminator = new Terminator.Goto(block);
+		start(block);
+	}
+
+	// Only the method's own variables are listed; inlined bodies live in scratch slots above its frame.
+	private void openLocal(String name, Type type, int slot) {
+		if (!inlineEnds.isEmpty()) {
+			return;
+		}
+		LocalVariable local = current.id >= 0
+			? new LocalVariable(name, type.getDescriptor(), slot, current, current.insns.size())
+			: new LocalVariable(name, type.getDescriptor(), slot, method.blocks.getLast(), LocalVariable.AFTER_BLOCK);
+		method.locals.add(local);
+		openLocals.add(local);
+	}
+
+	// Ends the variables opened since mark at the current position; after a cut that is behind the last placed block.
+	private void closeLocals(int mark) {
+		while (openLocals.size() > mark) {
+			LocalVariable local = openLocals.removeLast();
+			if (current.id >= 0) {
+				local.endBlock = current;
+				local.endIndex = current.insns.size();
+			}
+			else {
+				local.endBlock = method.blocks.getLast();
+				local.endIndex = LocalVariable.AFTER_BLOCK;
+			}
+		}
+	}
+
+	// Opens a LineNumberTable entry when the code reaches another source line. Every block starts a fresh entry, since
+	// it may be entered from anywhere; an entry with no code behind it yet is taken over by the next one.
+	private void markLine(Token token) {
+		if (token == null || token.getLine() <= 0 || token.getLine() == line || current.id < 0) {
+			return;
+		}
+		line = token.getLine();
+		int index = current.insns.size();
+		LineNumber last = method.lines.isEmpty() ? null : method.lines.getLast();
+		if (last != null && last.block() == current && last.index() == index) {
+			method.lines.set(method.lines.size() - 1, new LineNumber(line, current, index));
+		}
+		else {
+			method.lines.add(new LineNumber(line, current, index));
+		}
+	}
+
+	private static Token tokenOf(Expr expr) {
+		return switch (expr) {
+			case Variable v -> v.name;
+			case Binary b -> b.op;
+			case Logical l -> l.op;
+			case Unary u -> u.op;
+			case Assign a -> a.op;
+			case Postfix p -> p.op;
+			case Get g -> g.name;
+			case Set s -> s.name;
+			case ActionNew a -> a.action;
+			case This t -> t.atToken;
+			case Call c -> tokenOf(c.callee);
+			case Grouping g -> tokenOf(g.expr);
+			case Index i -> tokenOf(i.array);
+			case null, default -> null;
+		};
+	}
+
+	// ---------- Statements ----------
+
+	private void generateStatement(Node node) {
+		if (node instanceof Return returnStmt) {
+			markLine(returnStmt.keyword);
+		}
+		else if (node instanceof Var varStmt) {
+			markLine(varStmt.decl.name);
+		}
+		else if (node instanceof Break breakStmt) {
+			markLine(breakStmt.keyword);
+		}
+		else if (node instanceof Continue continueStmt) {
+			markLine(continueStmt.keyword);
+		}
+		if (node instanceof ExprStmt exprStmt) {
+			generateEffect(exprStmt.expr);
+		}
+		else if (node instanceof If ifStmt) {
+			generateIfStatement(ifStmt);
+		}
+		else if (node instanceof Return returnStmt) {
+			generateReturnStatement(returnStmt);
+		}
+		else if (node instanceof Block block) {
+			generateBlock(block);
+		}
+		else if (node instanceof Var varStmt) {
+			generateLocalVariable(varStmt.decl);
+		}
+		else if (node instanceof While whileStmt) {
+			generateWhileStatement(whileStmt);
+		}
+		else if (node instanceof For forStmt) {
+			generateForStatement(forStmt);
+		}
+		else if (node instanceof Break) {
+			if (breakTargets.isEmpty()) {
+				throw new RuntimeException("Break statement outside of loop");
+			}
+			jump(breakTargets.peek());
+		}
+		else if (node instanceof Continue) {
+			if (continueTargets.isEmpty()) {
+				throw new RuntimeException("Continue statement outside of loop");
+			}
+			jump(continueTargets.peek());
+		}
+	}
+
+	private void generateBlock(Block block) {
+		if (block == null || block.statements == null) {
+			return;
+		}
+		int scope = openLocals.size();
+		for (Node node : block.statements) {
+			generateStatement(node);
+		}
+		closeLocals(scope);
+	}
+
+	private void generateIfStatement(If ifStmt) {
+		if (generateSwitch(ifStmt)) {
+			return;
+		}
+		BasicBlock end = new BasicBlock();
+		generateBranch(ifStmt.ifBranch, end);
+		for (Branch elifBranch : ifStmt.elifBranchList) {
+			generateBranch(elifBranch, end);
+		}
+		if (ifStmt.elseBranch != null && ifStmt.elseBranch.block != null) {
+			generateBlock(ifStmt.elseBranch.block);
+		}
+		fallInto(end);
+	}
+
+	private void generateBranch(Branch branch, BasicBlock end) {
+		BasicBlock body = new BasicBlock();
+		BasicBlock next = new BasicBlock();
+		generateCondition(branch.cond, body, next);
+		start(body);
+		generateBlock(branch.block);
+		jump(end);
+		start(next);
+	}
+
+	// An if/elif chain whose conditions only test one side-effect-free int, char or string value for equality with
+	// constants dispatches through one switch. A key repeated in a later branch could never reach it and is dropped.
+	private boolean generateSwitch(If ifStmt) {
+		List<Branch> branches = new ArrayList<>();
+		branches.add(ifStmt.ifBranch);
+		branches.addAll(ifStmt.elifBranchList);
+		Expr subject = null;
+		Map<Object, Integer> cases = new LinkedHashMap<>();
+		for (int i = 0; i < branches.size(); i++) {
+			List<Binary> tests = new ArrayList<>();
+			if (!collectEqualityTests(branches.get(i).cond, tests)) {
+				return false;
+			}
+			for (Binary test : tests) {
+				Object key = caseKey(test.right);
+				Expr tested = test.left;
+				if (key == null) {
+					key = caseKey(test.left);
+					tested = test.right;
+				}
+				if (key == null || !isStable(tested) || subject != null && !sameValue(subject, tested)) {
+					return false;
+				}
+				subject = tested;
+				cases.putIfAbsent(key, i);
+			}
+		}
+		boolean strings = ResolvedType.STRING.equals(subject.getType());
+		if (!strings && !ResolvedType.INT.equals(subject.getType()) && !ResolvedType.CHAR.equals(subject.getType())) {
+			return false;
+		}
+		for (Object key : cases.keySet()) {
+			if (key instanceof String != strings) {
+				return false;
+			}
+		}
+		if (cases.size() < MIN_SWITCH_KEYS) {
+			return false;
+		}
+
+		BasicBlock end = new BasicBlock();
+		boolean hasElse = ifStmt.elseBranch != null && ifStmt.elseBranch.block != null;
+		BasicBlock otherwise = hasElse ? new BasicBlock() : end;
+		List<BasicBlock> bodies = new ArrayList<>();
+		for (int i = 0; i < branches.size(); i++) {
+			bodies.add(new BasicBlock());
+		}
+		if (strings) {
+			generateStringSwitch(subject, cases, bodies, otherwise);
+		}
+		else {
+			TreeMap<Integer, BasicBlock> targets = new TreeMap<>();
+			cases.forEach((key, branch) -> targets.put((Integer) key, bodies.get(branch)));
+			generateExpression(subject);
+			terminate(new Terminator.Switch(List.copyOf(targets.keySet()), List.copyOf(targets.values()), otherwise));
+		}
+		for (int i = 0; i < branches.size(); i++) {
+			start(bodies.get(i));
+			generateBlock(branches.get(i).block);
+			jump(end);
+		}
+		if (hasElse) {
+			start(otherwise);
+			generateBlock(ifStmt.elseBranch.block);
+		}
+		fallInto(end);
+		return true;
+	}
+
+	// Switches on the hash code, then confirms with equals among the constants sharing it; null matches no constant.
+	// The subject waits in the first free slot, which no variable occupies during the dispatch.
+	private void generateStringSwitch(Expr subject, Map<Object, Integer> cases, List<BasicBlock> bodies, BasicBlock otherwise) {
+		Type string = Type.getType(String.class);
+		int slot = frameTop;
+		generateExpression(subject);
+		emit(new Insn.Store(string, slot));
+		emit(new Insn.Load(string, slot));
+		BasicBlock notNull = new BasicBlock();
+		branch(Opcodes.IFNULL, otherwise, notNull);
+		start(notNull);
+		emit(new Insn.Load(string, slot));
+		emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, "java/lang/String", "hashCode", "()I"));
+		TreeMap<Integer, List<String>> byHash = new TreeMap<>();
+		for (Object key : cases.keySet()) {
+			byHash.computeIfAbsent(key.hashCode(), h -> new ArrayList<>()).add((String) key);
+		}
+		List<BasicBlock> checks = new ArrayList<>();
+		for (int i = 0; i < byHash.size(); i++) {
+			checks.add(new BasicBlock());
+		}
+		terminate(new Terminator.Switch(List.copyOf(byHash.keySet()), checks, otherwise));
+		int i = 0;
+		for (List<String> colliding : byHash.values()) {
+			start(checks.get(i++));
+			for (int j = 0; j < colliding.size(); j++) {
+				emit(new Insn.Load(string, slot));
+				push(colliding.get(j));
+				emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z"));
+				BasicBlock next = j == colliding.size() - 1 ? otherwise : new BasicBlock();
+				branch(Opcodes.IFNE, bodies.get(cases.get(colliding.get(j))), next);
+				if (next != otherwise) {
+					start(next);
+				}
+			}
+		}
+	}
+
+	// Accepts a == b, or several of them joined with ||.
+	private static boolean collectEqualityTests(Expr cond, List<Binary> tests) {
+		if (cond instanceof Grouping grouping) {
+			return collectEqualityTests(grouping.expr, tests);
+		}
+		if (cond instanceof Logical logical && logical.op.getLexeme().equals("||")) {
+			return collectEqualityTests(logical.left, tests) && collectEqualityTests(logical.right, tests);
+		}
+		if (cond instanceof Binary binary && binary.op.getLexeme().equals("==")) {
+			tests.add(binary);
+			return true;
+		}
+		return false;
+	}
+
+	private static Object caseKey(Expr e) {
+		if (e instanceof Grouping grouping) {
+			return caseKey(grouping.expr);
+		}
+		if (e instanceof Unary unary && unary.op.getLexeme().equals("-") && unary.right instanceof Literal literal
+			&& literal.value instanceof Integer i) {
+			return -i;
+		}
+		if (e instanceof Literal literal) {
+			return switch (literal.value) {
+				case Integer i -> i;
+				case Character c -> (int) c;
+				case String str -> str;
+				case null, default -> null;
+			};
+		}
+		return null;
+	}
+
+	// Reads nothing a test could change, so evaluating it once stands for evaluating it before every test.
+	private static boolean isStable(Expr e) {
+		return switch (e) {
+			case Variable v -> true;
+			case This t -> true;
+			case Literal l -> true;
+			case Grouping g -> isStable(g.expr);
+			case Get g -> isStable(g.object);
+			case Index i -> isStable(i.array) && isStable(i.index);
+			case Unary u -> !isIncrement(u.op) && isStable(u.right);
+			case Binary b -> isStable(b.left) && isStable(b.right);
+			default -> false;
+		};
+	}
+
+	private static boolean sameValue(Expr a, Expr b) {
+		if (a instanceof Grouping g) {
+			return sameValue(g.expr, b);
+		}
+		if (b instanceof Grouping g) {
+			return sameValue(a, g.expr);
+		}
+		return switch (a) {
+			case Variable v -> b instanceof Variable w && v.binding != null && v.binding.equals(w.binding);
+			case This t -> b instanceof This;
+			case Literal l -> b instanceof Literal m && Objects.equals(l.value, m.value);
+			case Get g -> b instanceof Get h && g.name.getLexeme().equals(h.name.getLexeme()) && sameValue(g.object, h.object);
+			case Index i -> b instanceof Index j && sameValue(i.array, j.array) && sameValue(i.index, j.index);
+			case Unary u -> b instanceof Unary w && u.op.getLexeme().equals(w.op.getLexeme()) && sameValue(u.right, w.right);
+			case Binary x -> b instanceof Binary y && x.op.getLexeme().equals(y.op.getLexeme())
+				&& sameValue(x.left, y.left) && sameValue(x.right, y.right);
+			default -> false;
+		};
+	}
+
+	private void generateWhileStatement(While whileStmt) {
+		BasicBlock head = new BasicBlock();
+		BasicBlock end = new BasicBlock();
+		BasicBlock body = new BasicBlock();
+		fallInto(head);
+		generateCondition(whileStmt.condition, body, end);
+		start(body);
+		breakTargets.push(end);
+		continueTargets.push(head);
+		generateStatement(whileStmt.body);
+		breakTargets.pop();
+		continueTargets.pop();
+		jump(head);
+		start(end);
+	}
+
+	private void generateForStatement(For forStmt) {
+		int scope = openLocals.size();
+		if (forStmt.initializer instanceof Var varDecl) {
+			generateLocalVariable(varDecl.decl);
+		}
+		else if (forStmt.initializer instanceof ExprStmt exprStmt) {
+			generateEffect(exprStmt.expr);
+		}
+
+		BasicBlock head = new BasicBlock();
+		BasicBlock step = new BasicBlock();
+		BasicBlock end = new BasicBlock();
+		fallInto(head);
+		if (forStmt.condition != null) {
+			BasicBlock body = new BasicBlock();
+			generateCondition(forStmt.condition, body, end);
+			start(body);
+		}
+		breakTargets.push(end);
+		continueTargets.push(step);
+		generateStatement(forStmt.body);
+		breakTargets.pop();
+		continueTargets.pop();
+		fallInto(step);
+		if (forStmt.increment != null) {
+			generateEffect(forStmt.increment);
+		}
+		jump(head);
+		start(end);
+		closeLocals(scope);
+	}
+
+	private void generateReturnStatement(Return returnStmt) {
+		if (inlineEnds.isEmpty() && selfCall(returnStmt.value) instanceof Call call) {
+			generateTailCall(call);
+			return;
+		}
+		if (returnStmt.value != null && !inlineEnds.isEmpty() && !inlineValueNeeded.peek()) {
+			generateEffect(returnStmt.value);
+		}
+		else if (returnStmt.value != null) {
+			generateExpression(returnStmt.value);
+		}
+		if (!inlineEnds.isEmpty()) {
+			jump(inlineEnds.peek());
+			return;
+		}
+		terminate(new Terminator.Return(returnType));
+	}
+
+	private Call selfCall(Expr value) {
+		while (value instanceof Grouping grouping) {
+			value = grouping.expr;
+		}
+		if (tailCallee != null && value instanceof Call call && call.callee instanceof Variable callee
+			&& scenes.get(callee.name.getLexeme()) == tailCallee) {
+			return call;
+		}
+		return null;
+	}
+
+	// cut f(...) inside f: every argument is evaluated before any parameter is overwritten, then the body restarts.
+	private void generateTailCall(Call call) {
+		for (Expr arg : call.arguments) {
+			generateExpression(arg);
+		}
+		for (int i = tailCallee.params.size() - 1; i >= 0; i--) {
+			Param param = tailCallee.params.get(i);
+			emit(new Insn.Store(JvmTypes.of(param.type), param.binding.slot()));
+		}
+		jump(method.entry());
+	}
+
+	private void generateLocalVariable(VarDecl varDecl) {
+		Type varType = JvmTypes.of(varDecl.type);
+		if (varDecl.initializer != null) {
+			generateExpression(varDecl.initializer);
+		}
+		else {
+			pushDefaultValue(varType);
+		}
+		emit(new Insn.Store(varType, slotBase + varDecl.binding.slot()));
+		openLocal(varDecl.name.getLexeme(), varType, varDecl.binding.slot());
+	}
+
+	// ---------- Expressions ----------
+
+	private void generateExpression(Expr expr) {
+		if (expr == null) {
+			return;
+		}
+		markLine(tokenOf(expr));
+		if (expr instanceof Literal literal) {
+			generateLiteral(literal);
+		}
+		else if (expr instanceof Variable variable) {
+			loadBinding(bindingOf(variable));
+		}
+		else if (expr instanceof Binary binary) {
+			generateBinaryExpression(binary);
+		}
+		else if (expr instanceof Logical logical) {
+			generateLogicalExpression(logical);
+		}
+		else if (expr instanceof Unary unary) {
+			generateUnaryExpression(unary);
+		}
+		else if (expr instanceof Call call) {
+			generateCall(call, true);
+		}
+		else if (expr instanceof Grouping grouping) {
+			generateExpression(grouping.expr);
+		}
+		else if (expr instanceof Assign assign) {
+			generateAssign(assign, true);
+		}
+		else if (expr instanceof Postfix postfix) {
+			generateIncrement(postfix.target, postfix.op, true, true);
+		}
+		else if (expr instanceof Get get) {
+			generateGet(get);
+		}
+		else if (expr instanceof Set set) {
+			generateSet(set, true);
+		}
+		else if (expr instanceof This thisExpr) {
+			emit(new Insn.Load(JvmTypes.of(thisExpr.getType()), 0));
+		}
+		else if (expr instanceof ActionNew actionNew) {
+			generateActionNew(actionNew);
+		}
+		else if (expr instanceof Index index) {
+			generateExpression(index.array);
+			generateExpression(index.index);
+			op(JvmTypes.of(index.getType()).getOpcode(Opcodes.IALOAD));
+		}
+		else {
+			throw new RuntimeException("Unsupported expression: " + expr.getClass().getSimpleName());
+		}
+	}
+
+	// Evaluates an expression for its side effects only, leaving nothing on the stack.
+	private void generateEffect(Expr expr) {
+		markLine(tokenOf(expr));
+		if (expr instanceof Assign assign) {
+			generateAssign(assign, false);
+		}
+		else if (expr instanceof Set set) {
+			generateSet(set, false);
+		}
+		else if (expr instanceof Postfix postfix) {
+			generateIncrement(postfix.target, postfix.op, false, true);
+		}
+		else if (expr instanceof Unary unary && isIncrement(unary.op)) {
+			generateIncrement(unary.right, unary.op, false, false);
+		}
+		else if (expr instanceof Call call) {
+			generateCall(call, false);
+		}
+		else if (expr instanceof Grouping grouping) {
+			generateEffect(grouping.expr);
+		}
+		else {
+			generateExpression(expr);
+			popValue(expr.getType());
+		}
+	}
+
+	private void generateLiteral(Literal literal) {
+		Object value = literal.value;
+		ResolvedType type = literal.getType();
+		if (value instanceof Number n && type.equals(ResolvedType.DOUBLE)) {
+			push(n.doubleValue());
+		}
+		else if (value instanceof Number n && type.equals(ResolvedType.INT)) {
+			push(n.intValue());
+		}
+		else if (value instanceof Boolean b) {
+			push(b ? 1 : 0);
+		}
+		else if (value instanceof Character c) {
+			push((int) c);
+		}
+		else {
+			push(value);
+		}
+	}
+
+	private Binding bindingOf(Variable variable) {
+		if (variable.binding == null) {
+			throw new RuntimeException("Undefined variable: " + variable.name.getLexeme());
+		}
+		return variable.binding;
+	}
+
+	private void loadBinding(Binding binding) {
+		Type type = JvmTypes.of(binding.type());
+		switch (binding.kind()) {
+			case LOCAL -> emit(new Insn.Load(type, slotBase + binding.slot()));
+			case STATIC -> emit(new Insn.Field(Opcodes.GETSTATIC, className, binding.name(), type.getDescriptor()));
+			case FIELD -> {
+				emit(new Insn.Load(Type.getObjectType(binding.owner()), 0));
+				emit(new Insn.Field(Opcodes.GETFIELD, binding.owner(), binding.name(), type.getDescriptor()));
+			}
+		}
+	}
+
+	// Stores the value on top of the stack, leaving a copy behind when valueNeeded; a FIELD binding expects `this` below the value.
+	private void storeBinding(Binding binding, boolean valueNeeded) {
+		Type type = JvmTypes.of(binding.type());
+		switch (binding.kind()) {
+			case LOCAL -> {
+				if (valueNeeded) {
+					op(type.getSize() == 2 ? Opcodes.DUP2 : Opcodes.DUP);
+				}
+				emit(new Insn.Store(type, slotBase + binding.slot()));
+			}
+			case STATIC -> {
+				if (valueNeeded) {
+					op(type.getSize() == 2 ? Opcodes.DUP2 : Opcodes.DUP);
+				}
+				emit(new Insn.Field(Opcodes.PUTSTATIC, className, binding.name(), type.getDescriptor()));
+			}
+			case FIELD -> {
+				if (valueNeeded) {
+					op(type.getSize() == 2 ? Opcodes.DUP2_X1 : Opcodes.DUP_X1);
+				}
+				emit(new Insn.Field(Opcodes.PUTFIELD, binding.owner(), binding.name(), type.getDescriptor()));
+			}
+		}
+	}
+
+	private void generateBinaryExpression(Binary binary) {
+		ResolvedType leftType = binary.left.getType();
+		ResolvedType rightType = binary.right.getType();
+		String op = binary.op.getLexeme();
+
+		if (op.equals("+") && (leftType.equals(ResolvedType.STRING) || rightType.equals(ResolvedType.STRING))) {
+			generateStringConcatenation(binary);
+			return;
+		}
+		if (isNumericComparison(binary) || isEquality(binary)) {
+			materialize(binary);
+			return;
+		}
+
+		boolean leftIsInt = leftType.equals(ResolvedType.INT);
+		boolean leftIsDouble = leftType.equals(ResolvedType.DOUBLE);
+		boolean rightIsInt = rightType.equals(ResolvedType.INT);
+		boolean rightIsDouble = rightType.equals(ResolvedType.DOUBLE);
+
+		if (leftIsInt && rightIsDouble) {
+			generateExpression(binary.left);
+			op(Opcodes.I2D);
+			generateExpression(binary.right);
+			emitDoubleOperation(op);
+			return;
+		}
+		else if (leftIsDouble && rightIsInt) {
+			generateExpression(binary.left);
+			generateExpression(binary.right);
+			op(Opcodes.I2D);
+			emitDoubleOperation(op);
+			return;
+		}
+
+		generateExpression(binary.left);
+		generateExpression(binary.right);
+
+		if (leftIsInt && rightIsInt) {
+			switch (op) {
+				case "+" -> op(Opcodes.IADD);
+				case "-" -> op(Opcodes.ISUB);
+				case "*" -> op(Opcodes.IMUL);
+				case "/" -> op(Opcodes.IDIV);
+				case "%" -> op(Opcodes.IREM);
+				default -> throw new RuntimeException("Unsupported integer operation: " + op);
+			}
+			return;
+		}
+
+		if (leftIsDouble && rightIsDouble) {
+			emitDoubleOperation(op);
+			return;
+		}
+
+		throw new RuntimeException("Unsupported binary operation types: " +
+			leftType + " " + op + " " + rightType);
+	}
+
+	private void emitDoubleOperation(String op) {
+		switch (op) {
+			case "+" -> op(Opcodes.DADD);
+			case "-" -> op(Opcodes.DSUB);
+			case "*" -> op(Opcodes.DMUL);
+			case "/" -> op(Opcodes.DDIV);
+			case "%" -> op(Opcodes.DREM);
+			default -> throw new RuntimeException("Unsupported double operation: " + op);
+		}
+	}
+
+	// ---------- Conditions ----------
+
+	// Compiles a condition as control flow: the current block ends in a jump to ifTrue or ifFalse, nothing stays on the stack.
+	private void generateCondition(Expr cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+		if (cond instanceof Grouping grouping) {
+			generateCondition(grouping.expr, ifTrue, ifFalse);
+		}
+		else if (cond instanceof Literal literal && literal.value instanceof Boolean b) {
+			jump(b ? ifTrue : ifFalse);
+		}
+		else if (cond instanceof Unary unary && unary.op.getLexeme().equals("!")) {
+			generateCondition(unary.right, ifFalse, ifTrue);
+		}
+		else if (cond instanceof Logical logical) {
+			BasicBlock right = new BasicBlock();
+			if (logical.op.getLexeme().equals("&&")) {
+				generateCondition(logical.left, right, ifFalse);
+			}
+			else {
+				generateCondition(logical.left, ifTrue, right);
+			}
+			start(right);
+			generateCondition(logical.right, ifTrue, ifFalse);
+		}
+		else if (cond instanceof Binary binary && isNumericComparison(binary)) {
+			branch(generateComparison(binary), ifTrue, ifFalse);
+		}
+		else if (cond instanceof Binary binary && isEquality(binary)) {
+			branch(generateEquality(binary), ifTrue, ifFalse);
+		}
+		else {
+			generateExpression(cond);
+			branch(Opcodes.IFNE, ifTrue, ifFalse);
+		}
+	}
+
+	// Turns a condition into 0/1 on the stack.
+	private void materialize(Expr cond) {
+		BasicBlock isTrue = new BasicBlock();
+		BasicBlock isFalse = new BasicBlock();
+		BasicBlock end = new BasicBlock();
+		generateCondition(cond, isTrue, isFalse);
+		start(isTrue);
+		push(1);
+		jump(end);
+		start(isFalse);
+		push(0);
+		fallInto(end);
+	}
+
+	private static boolean isNumericComparison(Binary binary) {
+		return switch (binary.op.getLexeme()) {
+			case "==", "!=", "<", "<=", ">", ">=" -> isNumeric(binary.left.getType()) && isNumeric(binary.right.getType());
+			default -> false;
+		};
+	}
+
+	// == and != on anything but numbers: chars and bools compare as ints, strings by content, everything else by identity.
+	private static boolean isEquality(Binary binary) {
+		String op = binary.op.getLexeme();
+		ResolvedType type = binary.left.getType();
+		return (op.equals("==") || op.equals("!=")) && type != null && !type.isError() && !type.equals(ResolvedType.SCRAP);
+	}
+
+	private int generateEquality(Binary binary) {
+		boolean equal = binary.op.getLexeme().equals("==");
+		ResolvedType type = binary.left.getType();
+		generateExpression(binary.left);
+		generateExpression(binary.right);
+		if (type.equals(ResolvedType.CHAR) || type.equals(ResolvedType.BOOL)) {
+			return equal ? Opcodes.IF_ICMPEQ : Opcodes.IF_ICMPNE;
+		}
+		if (type.equals(ResolvedType.STRING)) {
+			emit(new Insn.Invoke(Opcodes.INVOKESTATIC, "java/util/Objects", "equals", "(Ljava/lang/Object;Ljava/lang/Object;)Z"));
+			return equal ? Opcodes.IFNE : Opcodes.IFEQ;
+		}
+		return equal ? Opcodes.IF_ACMPEQ : Opcodes.IF_ACMPNE;
+	}
+
+	private static boolean isNumeric(ResolvedType type) {
+		return ResolvedType.INT.equals(type) || ResolvedType.DOUBLE.equals(type);
+	}
+
+	// Pushes the operands and returns the jump opcode that is taken when the comparison holds.
+	private int generateComparison(Binary binary) {
+		String op = binary.op.getLexeme();
+		boolean isDouble = binary.left.getType().equals(ResolvedType.DOUBLE) || binary.right.getType().equals(ResolvedType.DOUBLE);
+		generateExpression(binary.left);
+		if (isDouble && binary.left.getType().equals(ResolvedType.INT)) {
+			op(Opcodes.I2D);
+		}
+		generateExpression(binary.right);
+		if (isDouble && binary.right.getType().equals(ResolvedType.INT)) {
+			op(Opcodes.I2D);
+		}
+		if (!isDouble) {
+			return switch (op) {
+				case "==" -> Opcodes.IF_ICMPEQ;
+				case "!=" -> Opcodes.IF_ICMPNE;
+				case "<" -> Opcodes.IF_ICMPLT;
+				case "<=" -> Opcodes.IF_ICMPLE;
+				case ">" -> Opcodes.IF_ICMPGT;
+				default -> Opcodes.IF_ICMPGE;
+			};
+		}
+		// NaN must fail every ordered comparison: DCMPG yields 1 and DCMPL yields -1 for it.
+		op(op.equals("<") || op.equals("<=") ? Opcodes.DCMPG : Opcodes.DCMPL);
+		return switch (op) {
+			case "==" -> Opcodes.IFEQ;
+			case "!=" -> Opcodes.IFNE;
+			case "<" -> Opcodes.IFLT;
+			case "<=" -> Opcodes.IFLE;
+			case ">" -> Opcodes.IFGT;
+			default -> Opcodes.IFGE;
+		};
+	}
+
+	// Flattens a chain of string + into one invokedynamic; literal operands become part of the recipe.
+	private void generateStringConcatenation(Binary binary) {
+		List<Expr> operands = new ArrayList<>();
+		flattenConcatenation(binary, operands);
+		StringBuilder recipe = new StringBuilder();
+		StringBuilder descriptor = new StringBuilder("(");
+		List<Object> constants = new ArrayList<>();
+		int slots = 0;
+		for (Expr operand : operands) {
+			if (operand instanceof Literal literal) {
+				String text = literalText(literal);
+				if (text.indexOf('\1') >= 0 || text.indexOf('\2') >= 0) {
+					recipe.append('\2');
+					constants.add(text);
+				}
+				else {
+					recipe.append(text);
+				}
+				continue;
+			}
+			Type type = JvmTypes.of(operand.getType());
+			if (slots + type.getSize() > MAX_CONCAT_SLOTS) {
+				emit(new Insn.Concat(recipe.toString(), descriptor.append(")Ljava/lang/String;").toString(), constants));
+				recipe = new StringBuilder("\1");
+				descriptor = new StringBuilder("(Ljava/lang/String;");
+				constants = new ArrayList<>();
+				slots = 1;
+			}
+			generateExpression(operand);
+			recipe.append('\1');
+			descriptor.append(type.getDescriptor());
+			slots += type.getSize();
+		}
+		emit(new Insn.Concat(recipe.toString(), descriptor.append(")Ljava/lang/String;").toString(), constants));
+	}
+
+	private void flattenConcatenation(Expr expr, List<Expr> operands) {
+		Expr inner = expr instanceof Grouping grouping ? grouping.expr : expr;
+		if (inner instanceof Binary binary && binary.op.getLexeme().equals("+")
+			&& ResolvedType.STRING.equals(binary.getType())) {
+			flattenConcatenation(binary.left, operands);
+			flattenConcatenation(binary.right, operands);
+		}
+		else {
+			operands.add(expr);
+		}
+	}
+
+	private static String literalText(Literal literal) {
+		Object value = literal.value;
+		ResolvedType type = literal.getType();
+		if (value instanceof Number n && type.equals(ResolvedType.DOUBLE)) {
+			return String.valueOf(n.doubleValue());
+		}
+		if (value instanceof Number n && type.equals(ResolvedType.INT)) {
+			return String.valueOf(n.intValue());
+		}
+		return String.valueOf(value);
+	}
+
+	private void generateLogicalExpression(Logical logical) {
+		materialize(logical);
+	}
+
+	private void generateUnaryExpression(Unary unary) {
+		if (isIncrement(unary.op)) {
+			generateIncrement(unary.right, unary.op, true, false);
+			return;
+		}
+		generateExpression(unary.right);
+		ResolvedType type = unary.right.getType();
+		String op = unary.op.getLexeme();
+
+		switch (op) {
+			case "-" -> {
+				if (type.equals(ResolvedType.INT)) {
+					op(Opcodes.INEG);
+				}
+				else if (type.equals(ResolvedType.DOUBLE)) {
+					op(Opcodes.DNEG);
+				}
+			}
+			case "+" -> {
+			}
+			case "!" -> {
+				convertToBoolean(type);
+				push(1);
+				op(Opcodes.IXOR);
+			}
+			case "int" -> {
+				if (type.equals(ResolvedType.DOUBLE)) {
+					op(Opcodes.D2I);
+				}
+			}
+			case "double" -> {
+				if (type.equals(ResolvedType.INT)) {
+					op(Opcodes.I2D);
+				}
+			}
+			default -> throw new RuntimeException("Unsupported unary operator: " + op);
+		}
+	}
+
+	private static boolean isIncrement(Token op) {
+		return op.getType() == TokenType.PLUS_PLUS || op.getType() == TokenType.MINUS_MINUS;
+	}
+
+	private void generateIncrement(Expr target, Token op, boolean valueNeeded, boolean resultIsOld) {
+		boolean up = op.getType() == TokenType.PLUS_PLUS;
+		if (generateIinc(target, up ? 1 : -1, valueNeeded, resultIsOld)) {
+			return;
+		}
+		Type type = JvmTypes.of(target.getType());
+		generateUpdate(target, () -> {
+			push(type.equals(Type.DOUBLE_TYPE) ? (Object) 1.0 : (Object) 1);
+			op(type.getOpcode(up ? Opcodes.IADD : Opcodes.ISUB));
+		}, valueNeeded, resultIsOld);
+	}
+
+	private void generateCompoundAssignment(Expr target, Token op, Expr value, Type type, boolean valueNeeded) {
+		if (value instanceof Literal literal && literal.value instanceof Integer delta && type.equals(Type.INT_TYPE)
+			&& (op.getType() == TokenType.PLUS_EQUAL || op.getType() == TokenType.MINUS_EQUAL && delta != Integer.MIN_VALUE)
+			&& generateIinc(target, op.getType() == TokenType.PLUS_EQUAL ? delta : -delta, valueNeeded, false)) {
+			return;
+		}
+		generateUpdate(target, () -> {
+			if (type.getSort() == Type.OBJECT) {
+				appendToString(value);
+				return;
+			}
+			generateExpression(value);
+			if (type.equals(Type.DOUBLE_TYPE) && value.getType().equals(ResolvedType.INT)) {
+				op(Opcodes.I2D);
+			}
+			int opcode = switch (op.getType()) {
+				case PLUS_EQUAL -> Opcodes.IADD;
+				case MINUS_EQUAL -> Opcodes.ISUB;
+				case STAR_EQUAL -> Opcodes.IMUL;
+				case SLASH_EQUAL -> Opcodes.IDIV;
+				case PERCENT_EQUAL -> Opcodes.IREM;
+				default -> throw new RuntimeException("Unsupported compound assignment: " + op.getLexeme());
+			};
+			op(type.getOpcode(opcode));
+		}, valueNeeded, false);
+	}
+
+	// Turns the string on the stack into itself followed by the value, as in s += value.
+	private void appendToString(Expr value) {
+		if (value instanceof Literal literal) {
+			String text = literalText(literal);
+			if (text.indexOf('\1') < 0 && text.indexOf('\2') < 0) {
+				emit(new Insn.Concat("\1" + text, "(Ljava/lang/String;)Ljava/lang/String;", List.of()));
+				return;
+			}
+		}
+		generateExpression(value);
+		String descriptor = "(Ljava/lang/String;" + JvmTypes.of(value.getType()).getDescriptor() + ")Ljava/lang/String;";
+		emit(new Insn.Concat("\1\1", descriptor, List.of()));
+	}
+
+	// Adds a constant to an int local in place; reports false for any other target.
+	private boolean generateIinc(Expr target, int delta, boolean valueNeeded, boolean resultIsOld) {
+		if (!(target instanceof Variable variable) || !bindingOf(variable).isLocal()
+			|| !JvmTypes.of(variable.binding.type()).equals(Type.INT_TYPE)
+			|| delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+			return false;
+		}
+		int slot = slotBase + variable.binding.slot();
+		if (valueNeeded && resultIsOld) {
+			emit(new Insn.Load(Type.INT_TYPE, slot));
+		}
+		emit(new Insn.Iinc(slot, delta));
+		if (valueNeeded && !resultIsOld) {
+			emit(new Insn.Load(Type.INT_TYPE, slot));
+		}
+		return true;
+	}
+
+	// Read-modify-write of a variable, field (Get or compound Set) or array element. The references the store needs are
+	// pushed once and duplicated for the load; update turns the current value into the new one. With valueNeeded the
+	// old or new value is kept beneath those references as the result.
+	private void generateUpdate(Expr target, Runnable update, boolean valueNeeded, boolean resultIsOld) {
+		Type type;
+		Insn load;
+		Insn store;
+		int references;
+		if (target instanceof Variable variable) {
+			Binding binding = bindingOf(variable);
+			type = JvmTypes.of(binding.type());
+			switch (binding.kind()) {
+				case LOCAL -> {
+					load = new Insn.Load(type, slotBase + binding.slot());
+					store = new Insn.Store(type, slotBase + binding.slot());
+					references = 0;
+				}
+				case STATIC -> {
+					load = new Insn.Field(Opcodes.GETSTATIC, className, binding.name(), type.getDescriptor());
+					store = new Insn.Field(Opcodes.PUTSTATIC, className, binding.name(), type.getDescriptor());
+					references = 0;
+				}
+				default -> {
+					emit(new Insn.Load(Type.getObjectType(binding.owner()), 0));
+					load = new Insn.Field(Opcodes.GETFIELD, binding.owner(), binding.name(), type.getDescriptor());
+					store = new Insn.Field(Opcodes.PUTFIELD, binding.owner(), binding.name(), type.getDescriptor());
+					references = 1;
+				}
+			}
+		}
+		else if (target instanceof Get || target instanceof Set) {
+			Expr object = target instanceof Get get ? get.object : ((Set) target).object;
+			Token name = target instanceof Get get ? get.name : ((Set) target).name;
+			String owner = object.getType().name();
+			String descriptor = fieldDescriptor(owner, name);
+			type = Type.getType(descriptor);
+			generateExpression(object);
+			load = new Insn.Field(Opcodes.GETFIELD, owner, name.getLexeme(), descriptor);
+			store = new Insn.Field(Opcodes.PUTFIELD, owner, name.getLexeme(), descriptor);
+			references = 1;
+		}
+		else if (target instanceof Index index) {
+			type = JvmTypes.of(index.getType());
+			generateExpression(index.array);
+			generateExpression(index.index);
+			load = new Insn.Op(type.getOpcode(Opcodes.IALOAD));
+			store = new Insn.Op(type.getOpcode(Opcodes.IASTORE));
+			references = 2;
+		}
+		else {
+			throw new RuntimeException("Invalid assignment target: " + target.getClass().getSimpleName());
+		}
+		if (references > 0) {
+			op(references == 1 ? Opcodes.DUP : Opcodes.DUP2);
+		}
+		emit(load);
+		if (valueNeeded && resultIsOld) {
+			keepBelow(type, references);
+		}
+		update.run();
+		if (valueNeeded && !resultIsOld) {
+			keepBelow(type, references);
+		}
+		emit(store);
+	}
+
+	// Duplicates the value on top of the stack beneath the given number of reference words.
+	private void keepBelow(Type type, int references) {
+		boolean wide = type.getSize() == 2;
+		switch (references) {
+			case 0 -> op(wide ? Opcodes.DUP2 : Opcodes.DUP);
+			case 1 -> op(wide ? Opcodes.DUP2_X1 : Opcodes.DUP_X1);
+			default -> op(wide ? Opcodes.DUP2_X2 : Opcodes.DUP_X2);
+		}
+	}
+
+	private void generateCall(Call call, boolean valueNeeded) {
+		if (call.callee instanceof Variable callee) {
+			SceneDecl target = scenes.get(callee.name.getLexeme());
+			if (target != null && target.inline && inlineEnds.size() < MAX_INLINE_DEPTH) {
+				generateInlineCall(target, call.arguments, valueNeeded);
+				return;
+			}
+		}
+		generateInvocation(call);
+		if (!valueNeeded) {
+			popValue(call.getType());
+		}
+	}
+
+	private void generateInvocation(Call call) {
+		if (call.callee instanceof Get get) {
+			generateMethodCall(get, call.arguments);
+			return;
+		}
+		if (!(call.callee instanceof Variable callee)) {
+			throw new RuntimeException("Unsupported call target: " + call.callee.getClass().getSimpleName());
+		}
+		String funcName = callee.name.getLexeme();
+
+		if (funcName.equals("project")) {
+			for (Expr arg : call.arguments) {
+				generateExpression(arg);
+			}
+			markLine(callee.name);
+			emit(new Insn.Invoke(Opcodes.INVOKESTATIC, className, "project", "(Ljava/lang/String;)V"));
+			return;
+		}
+		if (funcName.equals("capture")) {
+			emit(new Insn.Invoke(Opcodes.INVOKESTATIC, className, "capture", "()Ljava/lang/String;"));
+			return;
+		}
+
+		SceneDecl target = scenes.get(funcName);
+		for (Expr arg : call.arguments) {
+			generateExpression(arg);
+		}
+		String descriptor;
+		if (target != null) {
+			descriptor = JvmTypes.descriptor(target);
+		}
+		else {
+			StringBuilder sb = new StringBuilder("(");
+			for (Expr arg : call.arguments) {
+				sb.append(JvmTypes.of(arg.getType()).getDescriptor());
+			}
+			descriptor = sb.append(")").append(JvmTypes.of(call.getType()).getDescriptor()).toString();
+		}
+		markLine(callee.name);
+		emit(new Insn.Invoke(Opcodes.INVOKESTATIC, holders.getOrDefault(funcName, className), funcName, descriptor));
+	}
+
+	private void generateMethodCall(Get callee, List<Expr> arguments) {
+		String owner = callee.object.getType().name();
+		String name = callee.name.getLexeme();
+		SceneDecl target = null;
+		for (SceneDecl m : setupOf(owner).methods) {
+			if (m.name.getLexeme().equals(name)) {
+				target = m;
+				break;
+			}
+		}
+		if (target == null) {
+			throw new RuntimeException("Undefined method: " + owner + "." + name);
+		}
+		generateExpression(callee.object);
+		for (Expr arg : arguments) {
+			generateExpression(arg);
+		}
+		markLine(callee.name);
+		emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, owner, name, JvmTypes.descriptor(target)));
+	}
+
+	// Arguments go into fresh slots above the caller's frame; every cut jumps to the end block, with its value on the stack when valueNeeded.
+	private void generateInlineCall(SceneDecl scene, List<Expr> arguments, boolean valueNeeded) {
+		for (Expr arg : arguments) {
+			generateExpression(arg);
+		}
+		int base = frameTop;
+		for (int i = scene.params.size() - 1; i >= 0; i--) {
+			Param param = scene.params.get(i);
+			emit(new Insn.Store(JvmTypes.of(param.type), base + param.binding.slot()));
+		}
+		int savedBase = slotBase;
+		int savedTop = frameTop;
+		slotBase = base;
+		frameTop = base + scene.frameSize;
+
+		Type calleeReturn = JvmTypes.of(scene.returnType);
+		BasicBlock end = new BasicBlock();
+		inlineEnds.push(end);
+		inlineValueNeeded.push(valueNeeded);
+		generateBlock(scene.body);
+		if (valueNeeded && !calleeReturn.equals(Type.VOID_TYPE)) {
+			pushDefaultValue(calleeReturn);
+		}
+		fallInto(end);
+		inlineEnds.pop();
+		inlineValueNeeded.pop();
+		slotBase = savedBase;
+		frameTop = savedTop;
+	}
+
+	private void generateAssign(Assign assign, boolean valueNeeded) {
+		if (assign.op.getType() != TokenType.EQUAL) {
+			generateCompoundAssignment(assign.target, assign.op, assign.value, JvmTypes.of(assign.getType()), valueNeeded);
+			return;
+		}
+		if (assign.target instanceof Index indexExpr) {
+			Type elementType = JvmTypes.of(indexExpr.getType());
+			generateExpression(indexExpr.array);
+			generateExpression(indexExpr.index);
+			generateExpression(assign.value);
+			if (valueNeeded) {
+				op(elementType.getSize() == 2 ? Opcodes.DUP2_X2 : Opcodes.DUP_X2);
+			}
+			op(elementType.getOpcode(Opcodes.IASTORE));
+			return;
+		}
+
+		if (assign.target instanceof Variable target) {
+			Binding binding = assign.binding != null ? assign.binding : bindingOf(target);
+			if (binding.kind() == Binding.Kind.FIELD) {
+				emit(new Insn.Load(Type.getObjectType(binding.owner()), 0));
+			}
+			generateExpression(assign.value);
+			storeBinding(binding, valueNeeded);
+		}
+		else if (valueNeeded) {
+			generateExpression(assign.value);
+		}
+		else {
+			generateEffect(assign.value);
+		}
+	}
+
+	private void generateGet(Get get) {
+		ResolvedType objectType = get.object.getType();
+		generateExpression(get.object);
+		if (objectType.dimensions() > 0 && get.name.getLexeme().equals("length")) {
+			op(Opcodes.ARRAYLENGTH);
+			return;
+		}
+		String owner = objectType.name();
+		emit(new Insn.Field(Opcodes.GETFIELD, owner, get.name.getLexeme(), fieldDescriptor(owner, get.name)));
+	}
+
+	private void generateSet(Set set, boolean valueNeeded) {
+		if (set.op.getType() != TokenType.EQUAL) {
+			generateCompoundAssignment(set, set.op, set.value, JvmTypes.of(set.getType()), valueNeeded);
+			return;
+		}
+		String owner = set.object.getType().name();
+		String descriptor = fieldDescriptor(owner, set.name);
+		generateExpression(set.object);
+		generateExpression(set.value);
+		if (valueNeeded) {
+			op(Type.getType(descriptor).getSize() == 2 ? Opcodes.DUP2_X1 : Opcodes.DUP_X1);
+		}
+		emit(new Insn.Field(Opcodes.PUTFIELD, owner, set.name.getLexeme(), descriptor));
+	}
+
+	private String fieldDescriptor(String owner, Token name) {
+		for (VarDecl field : setupOf(owner).fields) {
+			if (field.name.getLexeme().equals(name.getLexeme())) {
+				return JvmTypes.of(field.type).getDescriptor();
+			}
+		}
+		throw new RuntimeException("Undefined field: " + owner + "." + name.getLexeme());
+	}
+
+	private SetupDecl setupOf(String name) {
+		SetupDecl setup = setups.get(name);
+		if (setup == null) {
+			throw new RuntimeException("Undefined setup: " + name);
+		}
+		return setup;
+	}
+
+	private void generateActionNew(ActionNew actionNew) {
+		ResolvedType type = actionNew.getType();
+		if (type.dimensions() == 0) {
+			SetupDecl setup = setupOf(type.name());
+			emit(new Insn.TypeOp(Opcodes.NEW, type.name()));
+			op(Opcodes.DUP);
+			if (actionNew.args != null) {
+				for (Expr arg : actionNew.args) {
+					generateExpression(arg);
+				}
+			}
+			emit(new Insn.Invoke(Opcodes.INVOKESPECIAL, type.name(), "<init>", JvmTypes.descriptor(setup.ctor)));
+			return;
+		}
+		if (actionNew.arrayInitializer != null && !actionNew.arrayInitializer.isEmpty()) {
+			generateArrayWithInitializer(type, actionNew.arrayInitializer);
+			return;
+		}
+		List<Expr> sizes = actionNew.args;
+		if (sizes == null || sizes.isEmpty()) {
+			sizes = new ArrayList<>();
+			for (Token capacityToken : actionNew.type.arrayCapacities) {
+				if (capacityToken != null) {
+					Literal literal = new Literal(capacityToken.getLiteral());
+					literal.setType(ResolvedType.INT);
+					sizes.add(literal);
+				}
+			}
+		}
+		if (sizes.isEmpty()) {
+			throw new RuntimeException("Array dimensions must be specified");
+		}
+		for (Expr size : sizes) {
+			generateExpression(size);
+		}
+		if (type.dimensions() == 1) {
+			newArray(JvmTypes.base(type.name()));
+		}
+		else {
+			emit(new Insn.MultiNewArray(JvmTypes.of(type).getDescriptor(), type.dimensions()));
+		}
+	}
+
+	private void newArray(Type elementType) {
+		if (elementType.getSort() == Type.OBJECT || elementType.getSort() == Type.ARRAY) {
+			emit(new Insn.TypeOp(Opcodes.ANEWARRAY, elementType.getInternalName()));
+		}
+		else {
+			emit(new Insn.NewArray(getArrayTypeCode(elementType)));
+		}
+	}
+
+	private void generateArrayWithInitializer(ResolvedType type, List<Expr> elements) {
+		Type elementType = JvmTypes.of(type.name(), type.dimensions() - 1);
+		Object[] values = ConstantArrays.values(elements, elementType);
+		if (values != null) {
+			generateConstantArray(elementType, values);
+			return;
+		}
+		push(elements.size());
+		newArray(elementType);
+		for (int i = 0; i < elements.size(); i++) {
+			op(Opcodes.DUP);
+			push(i);
+			generateExpression(elements.get(i));
+			op(elementType.getOpcode(Opcodes.IASTORE));
+		}
+	}
+
+	// Decoded once into a static template of the method's class, then cloned on every evaluation, so a table built
+	// inside a loop costs one array copy per iteration.
+	private void generateConstantArray(Type elementType, Object[] values) {
+		List<String> chunks = ConstantArrays.chunks(ConstantArrays.encode(values));
+		if (elementType.getSort() == Type.CHAR) {
+			pushChunks(chunks);
+			emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, "java/lang/String", "toCharArray", "()[C"));
+			return;
+		}
+		String arrayType = "[" + elementType.getDescriptor();
+		// <init> and <clinit> become $init and $clinit, which no scene of the script can be called.
+		String owner = method.name.startsWith("<") ? "$" + method.name.substring(1, method.name.length() - 1) : method.name;
+		String template = owner + ConstantArrays.TEMPLATE + templates++;
+		BasicBlock decode = new BasicBlock();
+		BasicBlock cached = new BasicBlock();
+		emit(new Insn.Field(Opcodes.GETSTATIC, method.owner, template, arrayType));
+		op(Opcodes.DUP);
+		branch(Opcodes.IFNONNULL, cached, decode);
+		start(decode);
+		op(Opcodes.POP);
+		pushChunks(chunks);
+		push(values.length);
+		emit(new Insn.Invoke(Opcodes.INVOKESTATIC, method.owner, ConstantArrays.decoderName(elementType),
+			ConstantArrays.decoderDescriptor(elementType)));
+		op(Opcodes.DUP);
+		emit(new Insn.Field(Opcodes.PUTSTATIC, method.owner, template, arrayType));
+		fallInto(cached);
+		emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, arrayType, "clone", "()Ljava/lang/Object;"));
+		emit(new Insn.TypeOp(Opcodes.CHECKCAST, arrayType));
+	}
+
+	private void pushChunks(List<String> chunks) {
+		for (int i = 0; i < chunks.size(); i++) {
+			push(chunks.get(i));
+			if (i > 0) {
+				emit(new Insn.Invoke(Opcodes.INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"));
+			}
+		}
+	}
+
+	private int getArrayTypeCode(Type baseType) {
+		return switch (baseType.getSort()) {
+			case Type.INT -> Opcodes.T_INT;
+			case Type.DOUBLE -> Opcodes.T_DOUBLE;
+			case Type.BOOLEAN -> Opcodes.T_BOOLEAN;
+			case Type.CHAR -> Opcodes.T_CHAR;
+			default -> throw new RuntimeException("Cannot create array of type: " + baseType);
+		};
+	}
+
+	// ---------- Helpers ----------
+
+	private void convertToBoolean(ResolvedType type) {
+		if (type == null || !type.equals(ResolvedType.INT)) {
+			return;
+		}
+		BasicBlock nonZero = new BasicBlock();
+		BasicBlock zero = new BasicBlock();
+		BasicBlock end = new BasicBlock();
+		op(Opcodes.DUP);
+		branch(Opcodes.IFNE, nonZero, zero);
+		start(zero);
+		op(Opcodes.POP);
+		push(0);
+		jump(end);
+		start(nonZero);
+		op(Opcodes.POP);
+		push(1);
+		fallInto(end);
+	}
+
+	private void pushDefaultValue(Type type) {
+		switch (type.getSort()) {
+			case Type.INT, Type.BOOLEAN, Type.CHAR -> push(0);
+			case Type.DOUBLE -> push(0.0);
+			default -> push(null);
+		}
+	}
+
+	private void popValue(ResolvedType type) {
+		if (type == null || type.equals(ResolvedType.SCRAP)) {
+			return;
+		}
+		op(type.equals(ResolvedType.DOUBLE) ? Opcodes.POP2 : Opcodes.POP);
+	}
+}
@@ -0,0 +1,337 @@
+package com.lazar.absolutecinema.generator;
+
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.util.Printer;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+// Prints emitted classes in Jasmin syntax while ASM reads them back, so the text always matches the bytecode
+// including its real limits. The generator emits no annotations, attributes or inner classes; those visits print nothing.
+final class JasminPrinter extends Printer {
+	private final Map<Label, String> labels = new HashMap<>();
+	private boolean fieldsOpen;
+	private int limitsAt;
+
+	private JasminPrinter() {
+		super(Opcodes.ASM9);
+	}
+
+	static void write(byte[] classBytes, Writer out) {
+		PrintWriter writer = new PrintWriter(out);
+		new ClassReader(classBytes).accept(new TraceClassVisitor(null, new JasminPrinter(), writer),
+			ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		writer.flush();
+	}
+
+	// ---------- Classes ----------
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		text.add(".class " + access(access) + name + "\n");
+		text.add(".super " + superName + "\n\n");
+	}
+
+	@Override
+	public Printer visitField(int access, String name, String descriptor, String signature, Object value) {
+		text.add(".field " + access(access) + name + " " + descriptor + "\n");
+		fieldsOpen = true;
+		return this;
+	}
+
+	@Override
+	public Printer visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		closeFields();
+		JasminPrinter method = new JasminPrinter();
+		method.text.add(".method " + access(access) + name + descriptor + "\n");
+		method.limitsAt = method.text.size();
+		text.add(method.getText());
+		return method;
+	}
+
+	@Override
+	public void visitClassEnd() {
+		closeFields();
+	}
+
+	private void closeFields() {
+		if (fieldsOpen) {
+			text.add("\n");
+			fieldsOpen = false;
+		}
+	}
+
+	// ---------- Instructions ----------
+
+	@Override
+	public void visitInsn(int opcode) {
+		instruction(opcode);
+		end();
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		instruction(opcode).append(' ');
+		if (opcode == Opcodes.NEWARRAY) {
+			stringBuilder.append(TYPES[operand].substring(2).toLowerCase());
+		}
+		else {
+			stringBuilder.append(operand);
+		}
+		end();
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int varIndex) {
+		instruction(opcode).append(' ').append(varIndex);
+		end();
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		instruction(opcode).append(' ').append(type);
+		end();
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+		instruction(opcode).append(' ').append(owner).append('/').append(name).append(' ').append(descriptor);
+		end();
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+		instruction(opcode).append(' ').append(owner).append('/').append(name).append(descriptor);
+		end();
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+		Object... bootstrapMethodArguments) {
+		instruction(Opcodes.INVOKEDYNAMIC).append(' ').append(name).append(descriptor);
+		for (Object argument : bootstrapMethodArguments) {
+			stringBuilder.append(' ');
+			constant(argument);
+		}
+		end();
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		instruction(opcode).append(' ').append(label(label));
+		end();
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		stringBuilder.setLength(0);
+		stringBuilder.append("  ").append(label(label)).append(":\n");
+		text.add(stringBuilder.toString());
+	}
+
+	@Override
+	public void visitLdcInsn(Object value) {
+		instruction(Opcodes.LDC);
+		if (value instanceof Double || value instanceof Long) {
+			stringBuilder.append("2_w");
+		}
+		stringBuilder.append(' ');
+		constant(value);
+		end();
+	}
+
+	@Override
+	public void visitIincInsn(int varIndex, int increment) {
+		instruction(Opcodes.IINC).append(' ').append(varIndex).append(' ').append(increment);
+		end();
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... targets) {
+		instruction(Opcodes.TABLESWITCH).append(' ').append(min).append('\n');
+		cases(targets, null, dflt);
+		end();
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] targets) {
+		instruction(Opcodes.LOOKUPSWITCH).append('\n');
+		cases(targets, keys, dflt);
+		end();
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+		instruction(Opcodes.MULTIANEWARRAY).append(' ').append(descriptor).append(' ').append(numDimensions);
+		end();
+	}
+
+	@Override
+	public void visitMaxs(int maxStack, int maxLocals) {
+		text.add(limitsAt, "    .limit stack " + maxStack + "\n    .limit locals " + maxLocals + "\n");
+	}
+
+	@Override
+	public void visitMethodEnd() {
+		text.add(".end method\n\n");
+	}
+
+	private StringBuilder instruction(int opcode) {
+		stringBuilder.setLength(0);
+		return stringBuilder.append("    ").append(OPCODES[opcode].toLowerCase());
+	}
+
+	private void end() {
+		text.add(stringBuilder.append('\n').toString());
+	}
+
+	private void constant(Object constant) {
+		if (constant instanceof String s) {
+			stringBuilder.append('"').append(s.replace("\\", "\\\\").replace("\"", "\\\"")
+				.replace("\n", "\\n").replace("\t", "\\t")
+				.replace("\u0001", "\\u0001").replace("\u0002", "\\u0002")).append('"');
+		}
+		else {
+			stringBuilder.append(constant);
+		}
+	}
+
+	private void cases(Label[] targets, int[] keys, Label dflt) {
+		for (int i = 0; i < targets.length; i++) {
+			stringBuilder.append("        ");
+			if (keys != null) {
+				stringBuilder.append(keys[i]).append(" : ");
+			}
+			stringBuilder.append(label(targets[i])).append('\n');
+		}
+		stringBuilder.append("        default : ").append(label(dflt));
+	}
+
+	private String label(Label label) {
+		return labels.computeIfAbsent(label, l -> "L" + labels.size());
+	}
+
+	private static String access(int access) {
+		StringBuilder sb = new StringBuilder();
+		if ((access & Opcodes.ACC_PUBLIC) != 0) {
+			sb.append("public ");
+		}
+		if ((access & Opcodes.ACC_PRIVATE) != 0) {
+			sb.append("private ");
+		}
+		if ((access & Opcodes.ACC_PROTECTED) != 0) {
+			sb.append("protected ");
+		}
+		if ((access & Opcodes.ACC_STATIC) != 0) {
+			sb.append("static ");
+		}
+		if ((access & Opcodes.ACC_FINAL) != 0) {
+			sb.append("final ");
+		}
+		return sb.toString();
+	}
+
+	// ---------- Not emitted ----------
+
+	@Override
+	public void visitSource(String source, String debug) {
+	}
+
+	@Override
+	public void visitOuterClass(String owner, String name, String descriptor) {
+	}
+
+	@Override
+	public Printer visitClassAnnotation(String descriptor, boolean visible) {
+		return this;
+	}
+
+	@Override
+	public void visitClassAttribute(Attribute attribute) {
+	}
+
+	@Override
+	public void visitInnerClass(String name, String outerName, String innerName, int access) {
+	}
+
+	@Override
+	public void visit(String name, Object value) {
+	}
+
+	@Override
+	public void visitEnum(String name, String descriptor, String value) {
+	}
+
+	@Override
+	public Printer visitAnnotation(String name, String descriptor) {
+		return this;
+	}
+
+	@Override
+	public Printer visitArray(String name) {
+		return this;
+	}
+
+	@Override
+	public void visitAnnotationEnd() {
+	}
+
+	@Override
+	public Printer visitFieldAnnotation(String descriptor, boolean visible) {
+		return this;
+	}
+
+	@Override
+	public void visitFieldAttribute(Attribute attribute) {
+	}
+
+	@Override
+	public void visitFieldEnd() {
+	}
+
+	@Override
+	public Printer visitAnnotationDefault() {
+		return this;
+	}
+
+	@Override
+	public Printer visitMethodAnnotation(String descriptor, boolean visible) {
+		return this;
+	}
+
+	@Override
+	public Printer visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+		return this;
+	}
+
+	@Override
+	public void visitMethodAttribute(Attribute attribute) {
+	}
+
+	@Override
+	public void visitCode() {
+	}
+
+	@Override
+	public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+	}
+
+	@Override
+	public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+	}
+
+	@Override
+	public void visitLineNumber(int line, Label start) {
+	}
+}
@@ -0,0 +1,65 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.parser.ast.ConstructorDecl;
+import com.lazar.absolutecinema.parser.ast.LType;
+import com.lazar.absolutecinema.parser.ast.Param;
+import com.lazar.absolutecinema.parser.ast.SceneDecl;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+import org.objectweb.asm.Type;
+
+import java.util.List;
+
+final class JvmTypes {
+	private JvmTypes() {
+	}
+
+	static Type of(LType ltype) {
+		if (ltype == null) {
+			return Type.VOID_TYPE;
+		}
+		return of(ltype.name.getLexeme(), ltype.dimension);
+	}
+
+	static Type of(ResolvedType rtype) {
+		if (rtype == null) {
+			return Type.VOID_TYPE;
+		}
+		return of(rtype.name(), rtype.dimensions());
+	}
+
+	static Type of(String typeName, int dimensions) {
+		Type baseType = base(typeName);
+		if (dimensions > 0) {
+			return Type.getType("[".repeat(dimensions) + baseType.getDescriptor());
+		}
+		return baseType;
+	}
+
+	static Type base(String typeName) {
+		return switch (typeName) {
+			case "int" -> Type.INT_TYPE;
+			case "double" -> Type.DOUBLE_TYPE;
+			case "string" -> Type.getType(String.class);
+			case "bool" -> Type.BOOLEAN_TYPE;
+			case "char" -> Type.CHAR_TYPE;
+			case "scrap" -> Type.VOID_TYPE;
+			default -> Type.getObjectType(typeName);
+		};
+	}
+
+	static String descriptor(SceneDecl scene) {
+		return descriptor(scene.params, of(scene.returnType));
+	}
+
+	static String descriptor(ConstructorDecl ctor) {
+		return descriptor(ctor != null ? ctor.params : List.of(), Type.VOID_TYPE);
+	}
+
+	private static String descriptor(List<Param> params, Type returnType) {
+		StringBuilder descriptor = new StringBuilder("(");
+		for (Param param : params) {
+			descriptor.append(of(param.type).getDescriptor());
+		}
+		return descriptor.append(")").append(returnType.getDescriptor()).toString();
+	}
+}
@@ -0,0 +1,345 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+import com.lazar.absolutecinema.semantic.Binding;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+
+import java.util.*;
+
+// Splits scenes whose bodies would compile past the size limit into chains of helper scenes at top-level statement
+// boundaries. Each link runs some statements and ends by calling the next with every local the rest still reads,
+// passed in the slot it already has, so the statements compile exactly as before; slots in between get unnamed int
+// arguments. Helpers are static scenes on Main named after the scene with $1, $2, ... appended; the helpers of a
+// setup method take its this first. Sizes are estimated from the tree, on the high side. A single statement over the
+// limit stays whole, and so does a rest that would need more than 255 argument slots.
+final class MethodSplitter {
+	// HotSpot leaves methods over 8000 bytes of bytecode to the interpreter (see -XX:-DontCompileHugeMethods).
+	static final int DEFAULT_LIMIT = 8000;
+	private static final int MAX_ARGUMENT_SLOTS = 255;
+
+	private final int limit;
+	private final Map<String, SceneDecl> scenes;
+	private int inlined = 0;
+
+	MethodSplitter(int limit, Map<String, SceneDecl> scenes) {
+		this.limit = limit;
+		this.scenes = scenes;
+	}
+
+	// A local in scope at a statement boundary; a null name is a filler for a slot nothing reads.
+	private record Local(String name, int slot, ResolvedType type) {
+	}
+
+	// Returns the scene to build in place of the given one and adds the helpers it calls to scenes.
+	SceneDecl split(SceneDecl scene, SetupDecl owner) {
+		List<Node> statements = scene.body.statements;
+		int n = statements.size();
+		int[] sizes = new int[n];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			sizes[i] = estimate(statements.get(i));
+			total += sizes[i];
+		}
+		// A self tail call only becomes a jump inside the scene's own method; from a helper it would recurse for real.
+		if (total <= limit || owner == null && selfTailCall(scene.body, scene.name.getLexeme())) {
+			return scene;
+		}
+		// reads[i]: the local slots statement i and the ones after it read.
+		BitSet[] reads = new BitSet[n + 1];
+		reads[n] = new BitSet();
+		for (int i = n - 1; i >= 0; i--) {
+			reads[i] = (BitSet) reads[i + 1].clone();
+			readSlots(statements.get(i), reads[i]);
+		}
+
+		ResolvedType ownerType = owner != null ? new ResolvedType(owner.name.getLexeme(), 0) : null;
+		List<Local> scope = new ArrayList<>();
+		if (owner != null) {
+			scope.add(new Local("this", 0, ownerType));
+		}
+		for (Param param : scene.params) {
+			scope.add(new Local(param.name.getLexeme(), param.binding.slot(), param.binding.type()));
+		}
+		List<Integer> cuts = new ArrayList<>();
+		List<List<Local>> passes = new ArrayList<>();
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			int call = 5 + 3 * scope.size();
+			if (size > 0 && size + sizes[i] + call > limit) {
+				List<Local> passed = passed(scope, reads[i], owner != null);
+				if (passed != null) {
+					cuts.add(i);
+					passes.add(passed);
+					size = 0;
+				}
+			}
+			size += sizes[i];
+			if (statements.get(i) instanceof Var var) {
+				scope.add(new Local(var.decl.name.getLexeme(), var.decl.binding.slot(), var.decl.binding.type()));
+			}
+		}
+		if (cuts.isEmpty()) {
+			return scene;
+		}
+		cuts.add(n);
+
+		String base = (owner != null ? owner.name.getLexeme() + "$" : "") + scene.name.getLexeme();
+		ResolvedType returnType = new ResolvedType(scene.returnType.name.getLexeme(), scene.returnType.dimension);
+		SceneDecl first = null;
+		int from = 0;
+		for (int link = 0; link < cuts.size(); link++) {
+			List<Node> body = new ArrayList<>(statements.subList(from, cuts.get(link)));
+			if (link + 1 < cuts.size()) {
+				body.add(call(token(base + "$" + (link + 1)), passes.get(link), returnType, ownerType));
+			}
+			SceneDecl decl = link == 0
+				? new SceneDecl(scene.name, scene.params, scene.returnType, new Block(body), scene.isMethod)
+				: new SceneDecl(token(base + "$" + link), params(passes.get(link - 1)), scene.returnType, new Block(body), false);
+			decl.frameSize = scene.frameSize;
+			if (link == 0) {
+				decl.inline = scene.inline;
+				first = decl;
+			}
+			else {
+				scenes.put(decl.name.getLexeme(), decl);
+			}
+			from = cuts.get(link);
+		}
+		return first;
+	}
+
+	// The arguments of a link that starts here: the locals in scope that are read later, fillers up to the last one.
+	private static List<Local> passed(List<Local> scope, BitSet reads, boolean method) {
+		Map<Integer, Local> bySlot = new HashMap<>();
+		int end = 0;
+		for (Local local : scope) {
+			if (reads.get(local.slot()) || method && local.slot() == 0) {
+				bySlot.put(local.slot(), local);
+				end = Math.max(end, local.slot() + Binding.slotSize(local.type()));
+			}
+		}
+		if (end > MAX_ARGUMENT_SLOTS) {
+			return null;
+		}
+		List<Local> passed = new ArrayList<>();
+		for (int slot = 0; slot < end; ) {
+			Local local = bySlot.getOrDefault(slot, new Local(null, slot, ResolvedType.INT));
+			passed.add(local);
+			slot += Binding.slotSize(local.type());
+		}
+		return passed;
+	}
+
+	private static List<Param> params(List<Local> passed) {
+		List<Param> params = new ArrayList<>();
+		for (Local local : passed) {
+			Token name = token(local.name() != null ? local.name() : "$" + local.slot());
+			Param param = new Param(name, new LType(token(local.type().name()), local.type().dimensions()));
+			param.binding = Binding.local(local.slot(), local.name(), local.type());
+			params.add(param);
+		}
+		return params;
+	}
+
+	private static Node call(Token helper, List<Local> passed, ResolvedType returnType, ResolvedType ownerType) {
+		List<Expr> args = new ArrayList<>();
+		for (Local local : passed) {
+			Expr arg;
+			if (local.name() == null) {
+				arg = new Literal(0);
+			}
+			else if (ownerType != null && local.slot() == 0) {
+				arg = new This(new Token(TokenType.AT, "@", null, 0, 0));
+			}
+			else {
+				Variable variable = new Variable(token(local.name()));
+				variable.binding = Binding.local(local.slot(), local.name(), local.type());
+				arg = variable;
+			}
+			arg.setType(local.type());
+			args.add(arg);
+		}
+		Call call = new Call(new Variable(helper), args);
+		call.setType(returnType);
+		if (returnType.equals(ResolvedType.SCRAP)) {
+			return new ExprStmt(call);
+		}
+		return new Return(new Token(TokenType.CUT, "cut", null, 0, 0), call);
+	}
+
+	private static Token token(String lexeme) {
+		return new Token(TokenType.IDENTIFIER, lexeme, null, 0, 0);
+	}
+
+	private static boolean selfTailCall(Node node, String name) {
+		return switch (node) {
+			case Block b -> b.statements.stream().anyMatch(s -> selfTailCall(s, name));
+			case If i -> selfTailCall(i.ifBranch.block, name)
+				|| i.elifBranchList.stream().anyMatch(b -> selfTailCall(b.block, name))
+				|| i.elseBranch != null && selfTailCall(i.elseBranch.block, name);
+			case While w -> selfTailCall(w.body, name);
+			case For f -> selfTailCall(f.body, name);
+			case Return r -> {
+				Expr value = r.value;
+				while (value instanceof Grouping g) {
+					value = g.expr;
+				}
+				yield value instanceof Call c && c.callee instanceof Variable v && v.name.getLexeme().equals(name);
+			}
+			case null, default -> false;
+		};
+	}
+
+	private static void readSlots(Node node, BitSet slots) {
+		switch (node) {
+			case null -> {
+			}
+			case Block b -> b.statements.forEach(s -> readSlots(s, slots));
+			case Var v -> readSlots(v.decl.initializer, slots);
+			case ExprStmt s -> readSlots(s.expr, slots);
+			case If i -> {
+				readSlots(i.ifBranch.cond, slots);
+				readSlots(i.ifBranch.block, slots);
+				for (Branch b : i.elifBranchList) {
+					readSlots(b.cond, slots);
+					readSlots(b.block, slots);
+				}
+				if (i.elseBranch != null) {
+					readSlots(i.elseBranch.block, slots);
+				}
+			}
+			case While w -> {
+				readSlots(w.condition, slots);
+				readSlots(w.body, slots);
+			}
+			case For f -> {
+				readSlots(f.initializer, slots);
+				readSlots(f.condition, slots);
+				readSlots(f.increment, slots);
+				readSlots(f.body, slots);
+			}
+			case Return r -> readSlots(r.value, slots);
+			case Variable v -> {
+				if (v.binding != null && v.binding.isLocal()) {
+					slots.set(v.binding.slot());
+				}
+			}
+			case This t -> slots.set(0);
+			case Assign a -> {
+				if (a.binding != null && a.binding.isLocal()) {
+					slots.set(a.binding.slot());
+				}
+				readSlots(a.target, slots);
+				readSlots(a.value, slots);
+			}
+			case Binary b -> {
+				readSlots(b.left, slots);
+				readSlots(b.right, slots);
+			}
+			case Logical l -> {
+				readSlots(l.left, slots);
+				readSlots(l.right, slots);
+			}
+			case Unary u -> readSlots(u.right, slots);
+			case Grouping g -> readSlots(g.expr, slots);
+			case Postfix p -> readSlots(p.target, slots);
+			case Get g -> readSlots(g.object, slots);
+			case Set s -> {
+				readSlots(s.object, slots);
+				readSlots(s.value, slots);
+			}
+			case Index i -> {
+				readSlots(i.array, slots);
+				readSlots(i.index, slots);
+			}
+			case Call c -> {
+				readSlots(c.callee, slots);
+				c.arguments.forEach(a -> readSlots(a, slots));
+			}
+			case ActionNew a -> {
+				if (a.args != null) {
+					a.args.forEach(e -> readSlots(e, slots));
+				}
+				if (a.arrayInitializer != null) {
+					a.arrayInitializer.forEach(e -> readSlots(e, slots));
+				}
+			}
+			case ArrayLiteral a -> a.elements.forEach(e -> readSlots(e, slots));
+			default -> {
+			}
+		}
+	}
+
+	// Roughly the bytes a node compiles to, rounded up: branches and materialized conditions cost the most, and a call
+	// the inliner marked costs its callee's body as well.
+	int estimate(Node node) {
+		return switch (node) {
+			case null -> 0;
+			case Block b -> sum(b.statements);
+			case Var v -> 3 + estimate(v.decl.initializer);
+			case ExprStmt s -> 1 + estimate(s.expr);
+			case If i -> {
+				int size = 6 + estimate(i.ifBranch.cond) + estimate(i.ifBranch.block);
+				for (Branch b : i.elifBranchList) {
+					size += 6 + estimate(b.cond) + estimate(b.block);
+				}
+				yield size + (i.elseBranch != null ? estimate(i.elseBranch.block) : 0);
+			}
+			case While w -> 6 + estimate(w.condition) + estimate(w.body);
+			case For f -> 6 + estimate(f.initializer) + estimate(f.condition) + estimate(f.increment) + estimate(f.body);
+			case Return r -> 1 + estimate(r.value);
+			case Literal l -> l.value instanceof Integer || l.value instanceof Boolean || l.value == null ? 2 : 3;
+			case Variable v -> 4;
+			case This t -> 1;
+			case Assign a -> 4 + (a.target instanceof Variable ? 0 : estimate(a.target)) + estimate(a.value);
+			case Binary b -> operatorSize(b) + estimate(b.left) + estimate(b.right);
+			case Logical l -> 8 + estimate(l.left) + estimate(l.right);
+			case Unary u -> 4 + estimate(u.right);
+			case Grouping g -> estimate(g.expr);
+			case Postfix p -> 4 + (p.target instanceof Variable ? 0 : estimate(p.target));
+			case Get g -> 3 + estimate(g.object);
+			case Set s -> 4 + estimate(s.object) + estimate(s.value);
+			case Index i -> 1 + estimate(i.array) + estimate(i.index);
+			case Call c -> 4 + (c.callee instanceof Get g ? estimate(g.object) : inlinedSize(c.callee)) + sum(c.arguments);
+			case ActionNew a when a.arrayInitializer != null && a.getType() != null && ConstantArrays.values(a.arrayInitializer,
+				JvmTypes.of(a.getType().name(), a.getType().dimensions() - 1)) != null -> 32;
+			case ActionNew a -> 8 + sum(a.args) + (a.arrayInitializer != null ? 4 * a.arrayInitializer.size() : 0)
+				+ sum(a.arrayInitializer);
+			case ArrayLiteral a -> 4 + 4 * a.elements.size() + sum(a.elements);
+			default -> 4;
+		};
+	}
+
+	// A comparison is materialized with two branches; strings are compared by hash switch and equals.
+	private static int operatorSize(Binary b) {
+		return switch (b.op.getType()) {
+			case EQUAL_EQUAL, BANG_EQUAL -> ResolvedType.STRING.equals(b.left.getType()) ? 16 : 9;
+			case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> 9;
+			default -> 5;
+		};
+	}
+
+	private int inlinedSize(Expr callee) {
+		SceneDecl target = callee instanceof Variable v ? scenes.get(v.name.getLexeme()) : null;
+		if (target == null || !target.inline || inlined == IrBuilder.MAX_INLINE_DEPTH) {
+			return 0;
+		}
+		inlined++;
+		int size = 4 * target.params.size() + estimate(target.body);
+		inlined--;
+		return size;
+	}
+
+	private int sum(List<? extends Node> nodes) {
+		int size = 0;
+		if (nodes != null) {
+			for (Node node : nodes) {
+				size += estimate(node);
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,250 @@
+package com.lazar.absolutecinema.generator;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Local rewrites over a lowered method, repeated until nothing changes. Labels that no jump refers to are looked
+// through; a jump target ends every pattern, since control can enter there with a different history. Labels that
+// only bound a variable's range are kept in place but never stop a rewrite, and neither do line numbers.
+final class Peephole {
+	private final InsnList insns;
+	private final MethodNode method;
+	private final Set<LabelNode> targets = new HashSet<>();
+	private final Set<LabelNode> anchors = new HashSet<>();
+
+	private Peephole(MethodNode method) {
+		this.method = method;
+		this.insns = method.instructions;
+	}
+
+	static void optimize(MethodNode method) {
+		Peephole peephole = new Peephole(method);
+		while (peephole.pass()) {
+		}
+	}
+
+	private boolean pass() {
+		collectTargets();
+		boolean changed = false;
+		AbstractInsnNode insn = insns.getFirst();
+		while (insn != null) {
+			AbstractInsnNode resume = insn.getPrevious();
+			if (rewrite(insn)) {
+				changed = true;
+				insn = resume != null ? resume : insns.getFirst();
+			}
+			else {
+				insn = insn.getNext();
+			}
+		}
+		return changed;
+	}
+
+	private void collectTargets() {
+		targets.clear();
+		anchors.clear();
+		for (AbstractInsnNode insn : insns) {
+			switch (insn) {
+				case JumpInsnNode jump -> targets.add(jump.label);
+				case TableSwitchInsnNode table -> {
+					targets.add(table.dflt);
+					targets.addAll(table.labels);
+				}
+				case LookupSwitchInsnNode lookup -> {
+					targets.add(lookup.dflt);
+					targets.addAll(lookup.labels);
+				}
+				default -> {
+				}
+			}
+		}
+		if (method.localVariables != null) {
+			for (LocalVariableNode local : method.localVariables) {
+				anchors.add(local.start);
+				anchors.add(local.end);
+			}
+		}
+		if (method.tryCatchBlocks != null) {
+			for (TryCatchBlockNode block : method.tryCatchBlocks) {
+				targets.add(block.start);
+				targets.add(block.end);
+				targets.add(block.handler);
+			}
+		}
+	}
+
+	private boolean rewrite(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		if (opcode < 0) {
+			return false;
+		}
+		if (isUnconditional(opcode) && removeUnreachableAfter(insn)) {
+			return true;
+		}
+		if (insn instanceof JumpInsnNode jump && (threadJump(jump) || dropJumpToNext(jump))) {
+			return true;
+		}
+		AbstractInsnNode next = following(insn);
+		if (next == null) {
+			return false;
+		}
+		int nextOpcode = next.getOpcode();
+
+		// push constant; if<cond>  =>  goto or nothing
+		Integer constant = intConstant(insn);
+		if (constant != null && nextOpcode >= Opcodes.IFEQ && nextOpcode <= Opcodes.IFLE) {
+			foldBranch(insn, (JumpInsnNode) next, taken(nextOpcode, constant));
+			return true;
+		}
+		if (opcode == Opcodes.ACONST_NULL && (nextOpcode == Opcodes.IFNULL || nextOpcode == Opcodes.IFNONNULL)) {
+			foldBranch(insn, (JumpInsnNode) next, nextOpcode == Opcodes.IFNULL);
+			return true;
+		}
+		// xstore n; xload n  =>  dup; xstore n
+		if (insn instanceof VarInsnNode store && next instanceof VarInsnNode load && isStore(opcode)
+			&& nextOpcode == opcode - (Opcodes.ISTORE - Opcodes.ILOAD) && store.var == load.var) {
+			insns.insertBefore(store, new InsnNode(opcode == Opcodes.DSTORE || opcode == Opcodes.LSTORE ? Opcodes.DUP2 : Opcodes.DUP));
+			insns.remove(load);
+			return true;
+		}
+		// dup; pop  =>  nothing, and likewise for any push without side effects followed by a pop of its size
+		if (nextOpcode == Opcodes.POP && (opcode == Opcodes.DUP || isPlainPush(insn, 1))
+			|| nextOpcode == Opcodes.POP2 && (opcode == Opcodes.DUP2 || isPlainPush(insn, 2))) {
+			insns.remove(insn);
+			insns.remove(next);
+			return true;
+		}
+		return false;
+	}
+
+	// Anything between an unconditional transfer and the next referenced label can never execute.
+	private boolean removeUnreachableAfter(AbstractInsnNode insn) {
+		boolean removed = false;
+		AbstractInsnNode next = insn.getNext();
+		while (next != null && !(next instanceof LabelNode label && targets.contains(label))) {
+			AbstractInsnNode after = next.getNext();
+			if (!(next instanceof LabelNode label && anchors.contains(label))) {
+				insns.remove(next);
+				removed = true;
+			}
+			next = after;
+		}
+		return removed;
+	}
+
+	// A jump to a goto takes the final target directly; a goto to a return becomes that return.
+	private boolean threadJump(JumpInsnNode jump) {
+		Set<LabelNode> seen = new HashSet<>();
+		LabelNode target = jump.label;
+		AbstractInsnNode at = realAfter(target);
+		while (at != null && at.getOpcode() == Opcodes.GOTO && seen.add(target)) {
+			target = ((JumpInsnNode) at).label;
+			at = realAfter(target);
+		}
+		if (target != jump.label && !seen.contains(target)) {
+			jump.label = target;
+			return true;
+		}
+		if (jump.getOpcode() == Opcodes.GOTO && at != null && isReturn(at.getOpcode())) {
+			insns.set(jump, new InsnNode(at.getOpcode()));
+			return true;
+		}
+		return false;
+	}
+
+	private boolean dropJumpToNext(JumpInsnNode jump) {
+		for (AbstractInsnNode next = jump.getNext(); next instanceof LabelNode || next instanceof LineNumberNode; next = next.getNext()) {
+			if (next == jump.label) {
+				if (jump.getOpcode() == Opcodes.GOTO) {
+					insns.remove(jump);
+				}
+				else {
+					// Both outcomes continue at the same place; only the operands have to go.
+					insns.set(jump, new InsnNode(jump.getOpcode() >= Opcodes.IF_ICMPEQ && jump.getOpcode() <= Opcodes.IF_ACMPNE
+						? Opcodes.POP2 : Opcodes.POP));
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void foldBranch(AbstractInsnNode push, JumpInsnNode branch, boolean taken) {
+		insns.remove(push);
+		if (taken) {
+			insns.set(branch, new JumpInsnNode(Opcodes.GOTO, branch.label));
+		}
+		else {
+			insns.remove(branch);
+		}
+	}
+
+	private AbstractInsnNode following(AbstractInsnNode insn) {
+		AbstractInsnNode next = insn.getNext();
+		while (next != null && next.getOpcode() < 0) {
+			if (next instanceof LabelNode label && targets.contains(label) || !(next instanceof LabelNode || next instanceof LineNumberNode)) {
+				return null;
+			}
+			next = next.getNext();
+		}
+		return next;
+	}
+
+	private static AbstractInsnNode realAfter(LabelNode label) {
+		AbstractInsnNode next = label.getNext();
+		while (next != null && next.getOpcode() < 0) {
+			next = next.getNext();
+		}
+		return next;
+	}
+
+	private static Integer intConstant(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+			return opcode - Opcodes.ICONST_0;
+		}
+		if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+			return ((IntInsnNode) insn).operand;
+		}
+		return null;
+	}
+
+	private static boolean taken(int opcode, int value) {
+		return switch (opcode) {
+			case Opcodes.IFEQ -> value == 0;
+			case Opcodes.IFNE -> value != 0;
+			case Opcodes.IFLT -> value < 0;
+			case Opcodes.IFGE -> value >= 0;
+			case Opcodes.IFGT -> value > 0;
+			default -> value <= 0;
+		};
+	}
+
+	private static boolean isPlainPush(AbstractInsnNode insn, int size) {
+		int opcode = insn.getOpcode();
+		if (size == 1) {
+			return opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.ICONST_5
+				|| opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH
+				|| opcode == Opcodes.ILOAD || opcode == Opcodes.ALOAD
+				|| insn instanceof LdcInsnNode ldc && (ldc.cst instanceof Integer || ldc.cst instanceof String);
+		}
+		return opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1 || opcode == Opcodes.DLOAD
+			|| insn instanceof LdcInsnNode ldc && ldc.cst instanceof Double;
+	}
+
+	private static boolean isStore(int opcode) {
+		return opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE;
+	}
+
+	private static boolean isReturn(int opcode) {
+		return opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN;
+	}
+
+	private static boolean isUnconditional(int opcode) {
+		return opcode == Opcodes.GOTO || isReturn(opcode) || opcode == Opcodes.ATHROW
+			|| opcode == Opcodes.TABLESWITCH || opcode == Opcodes.LOOKUPSWITCH;
+	}
+}
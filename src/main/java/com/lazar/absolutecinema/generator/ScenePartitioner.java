@@ -0,0 +1,139 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+
+import java.util.*;
+
+// Moves the scenes out of the main class into holder classes of at most perClass scenes each, placed along the call
+// graph: breadth first from the earliest scene not yet placed, through its callees and then its callers, moving on to
+// a fresh holder whenever one is full. Scenes that call each other mostly end up in the same class, and the JVM loads
+// and verifies a holder only when one of its scenes first runs. The entrance stays in the main class with the globals.
+final class ScenePartitioner {
+	private ScenePartitioner() {
+	}
+
+	// order lists the scenes as they appear in the source, helpers right after the scene they were split from.
+	static Map<String, String> partition(List<String> order, Map<String, SceneDecl> scenes, int perClass, String mainClass) {
+		List<String> movable = order.stream().filter(name -> !name.equals("entrance")).toList();
+		Map<String, java.util.Set<String>> callees = new HashMap<>();
+		Map<String, java.util.Set<String>> callers = new HashMap<>();
+		for (String name : movable) {
+			callees.put(name, new TreeSet<>());
+			callers.put(name, new TreeSet<>());
+		}
+		for (String name : movable) {
+			calls(scenes.get(name).body, callee -> {
+				if (callees.containsKey(callee) && !callee.equals(name)) {
+					callees.get(name).add(callee);
+					callers.get(callee).add(name);
+				}
+			});
+		}
+
+		Map<String, String> holders = new HashMap<>();
+		Deque<String> queue = new ArrayDeque<>();
+		String holder = null;
+		int classes = 0;
+		int placed = perClass;
+		int next = 0;
+		while (true) {
+			while (!queue.isEmpty() && holders.containsKey(queue.peek())) {
+				queue.poll();
+			}
+			if (queue.isEmpty()) {
+				while (next < movable.size() && holders.containsKey(movable.get(next))) {
+					next++;
+				}
+				if (next == movable.size()) {
+					break;
+				}
+				queue.add(movable.get(next));
+			}
+			if (placed == perClass) {
+				holder = mainClass + "$Scenes" + ++classes;
+				placed = 0;
+			}
+			String scene = queue.poll();
+			holders.put(scene, holder);
+			placed++;
+			queue.addAll(callees.get(scene));
+			queue.addAll(callers.get(scene));
+		}
+		return holders;
+	}
+
+	private static void calls(Node node, java.util.function.Consumer<String> found) {
+		switch (node) {
+			case null -> {
+			}
+			case Block b -> b.statements.forEach(s -> calls(s, found));
+			case Var v -> calls(v.decl.initializer, found);
+			case ExprStmt s -> calls(s.expr, found);
+			case If i -> {
+				calls(i.ifBranch.cond, found);
+				calls(i.ifBranch.block, found);
+				for (Branch b : i.elifBranchList) {
+					calls(b.cond, found);
+					calls(b.block, found);
+				}
+				if (i.elseBranch != null) {
+					calls(i.elseBranch.block, found);
+				}
+			}
+			case While w -> {
+				calls(w.condition, found);
+				calls(w.body, found);
+			}
+			case For f -> {
+				calls(f.initializer, found);
+				calls(f.condition, found);
+				calls(f.increment, found);
+				calls(f.body, found);
+			}
+			case Return r -> calls(r.value, found);
+			case Call c -> {
+				if (c.callee instanceof Variable v) {
+					found.accept(v.name.getLexeme());
+				}
+				calls(c.callee, found);
+				c.arguments.forEach(a -> calls(a, found));
+			}
+			case Assign a -> {
+				calls(a.target, found);
+				calls(a.value, found);
+			}
+			case Binary b -> {
+				calls(b.left, found);
+				calls(b.right, found);
+			}
+			case Logical l -> {
+				calls(l.left, found);
+				calls(l.right, found);
+			}
+			case Unary u -> calls(u.right, found);
+			case Grouping g -> calls(g.expr, found);
+			case Postfix p -> calls(p.target, found);
+			case Get g -> calls(g.object, found);
+			case Set s -> {
+				calls(s.object, found);
+				calls(s.value, found);
+			}
+			case Index i -> {
+				calls(i.array, found);
+				calls(i.index, found);
+			}
+			case ActionNew a -> {
+				if (a.args != null) {
+					a.args.forEach(e -> calls(e, found));
+				}
+				if (a.arrayInitializer != null) {
+					a.arrayInitializer.forEach(e -> calls(e, found));
+				}
+			}
+			case ArrayLiteral a -> a.elements.forEach(e -> calls(e, found));
+			default -> {
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.lazar.absolutecinema.generator;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Computes stack map frames and exact limits for a finished method, so the class writer never has to load classes
+// to merge types. Setups are final classes directly under Object, which is all the hierarchy the merges need.
+final class StackMaps {
+	private static final Type OBJECT = Type.getObjectType("java/lang/Object");
+	private static final int INITIAL_STACK = 8;
+	private static final int MAX_STACK = 65535;
+
+	private StackMaps() {
+	}
+
+	static void compute(String owner, MethodNode method, Set<String> setups) {
+		Analyzer<BasicValue> analyzer = new Analyzer<>(new Verifier(owner, setups)) {
+			@Override
+			protected Frame<BasicValue> newFrame(int numLocals, int numStack) {
+				return new InitializingFrame(numLocals, numStack);
+			}
+
+			@Override
+			protected Frame<BasicValue> newFrame(Frame<? extends BasicValue> frame) {
+				InitializingFrame copy = new InitializingFrame(frame.getLocals(), frame.getMaxStackSize());
+				copy.init(frame);
+				return copy;
+			}
+		};
+		method.maxLocals = maxLocals(method);
+		method.maxStack = INITIAL_STACK;
+		Frame<BasicValue>[] frames;
+		while (true) {
+			try {
+				frames = analyzer.analyze(owner, method);
+				break;
+			}
+			catch (AnalyzerException e) {
+				// Every frame is allocated at the assumed height, so start small and grow only when a push overflows.
+				if (!(e.getCause() instanceof IndexOutOfBoundsException) || method.maxStack >= MAX_STACK) {
+					throw new RuntimeException("Frame computation failed in " + owner + "." + method.name + ": " + e.getMessage(), e);
+				}
+				method.maxStack *= 2;
+			}
+		}
+		method.maxStack = maxStack(frames);
+
+		Set<LabelNode> targets = new HashSet<>();
+		for (AbstractInsnNode insn : method.instructions) {
+			if (insn instanceof JumpInsnNode jump) {
+				targets.add(jump.label);
+			}
+			else if (insn instanceof TableSwitchInsnNode table) {
+				targets.add(table.dflt);
+				targets.addAll(table.labels);
+			}
+			else if (insn instanceof LookupSwitchInsnNode lookup) {
+				targets.add(lookup.dflt);
+				targets.addAll(lookup.labels);
+			}
+		}
+		for (TryCatchBlockNode block : method.tryCatchBlocks) {
+			targets.add(block.handler);
+		}
+
+		AbstractInsnNode[] insns = method.instructions.toArray();
+		List<AbstractInsnNode> framed = new ArrayList<>();
+		List<Frame<BasicValue>> states = new ArrayList<>();
+		boolean targeted = false;
+		for (int i = 0; i < insns.length; i++) {
+			AbstractInsnNode insn = insns[i];
+			if (insn.getOpcode() < 0) {
+				targeted |= insn instanceof LabelNode label && targets.contains(label);
+				continue;
+			}
+			if (frames[i] == null) {
+				// Never reached, so it has no state to describe; the verifier would reject it without a frame.
+				method.instructions.remove(insn);
+			}
+			else if (targeted) {
+				framed.add(insn);
+				states.add(frames[i]);
+			}
+			targeted = false;
+		}
+		for (int i = 0; i < framed.size(); i++) {
+			insertFrame(method.instructions, framed.get(i), states.get(i));
+		}
+	}
+
+	static int maxLocals(MethodNode method) {
+		int max = Type.getArgumentsAndReturnSizes(method.desc) >> 2;
+		if ((method.access & Opcodes.ACC_STATIC) != 0) {
+			max--;
+		}
+		for (AbstractInsnNode insn : method.instructions) {
+			if (insn instanceof VarInsnNode var) {
+				int size = var.getOpcode() == Opcodes.LLOAD || var.getOpcode() == Opcodes.DLOAD
+					|| var.getOpcode() == Opcodes.LSTORE || var.getOpcode() == Opcodes.DSTORE ? 2 : 1;
+				max = Math.max(max, var.var + size);
+			}
+			else if (insn instanceof IincInsnNode iinc) {
+				max = Math.max(max, iinc.var + 1);
+			}
+		}
+		return max;
+	}
+
+	private static int maxStack(Frame<BasicValue>[] frames) {
+		int max = 0;
+		for (Frame<BasicValue> frame : frames) {
+			if (frame != null) {
+				int size = 0;
+				for (int i = 0; i < frame.getStackSize(); i++) {
+					size += frame.getStack(i).getSize();
+				}
+				max = Math.max(max, size);
+			}
+		}
+		return max;
+	}
+
+	private static void insertFrame(InsnList insns, AbstractInsnNode before, Frame<BasicValue> state) {
+		List<Object> locals = new ArrayList<>();
+		for (int i = 0; i < state.getLocals(); i++) {
+			BasicValue value = state.getLocal(i);
+			locals.add(frameType(insns, value));
+			if (value.getSize() == 2) {
+				i++;
+			}
+		}
+		while (!locals.isEmpty() && locals.getLast() == Opcodes.TOP) {
+			locals.removeLast();
+		}
+		List<Object> stack = new ArrayList<>();
+		for (int i = 0; i < state.getStackSize(); i++) {
+			stack.add(frameType(insns, state.getStack(i)));
+		}
+		insns.insertBefore(before, new FrameNode(Opcodes.F_NEW, locals.size(), locals.toArray(), stack.size(), stack.toArray()));
+	}
+
+	private static Object frameType(InsnList insns, BasicValue value) {
+		if (value instanceof Uninitialized uninitialized) {
+			return uninitialized.label(insns);
+		}
+		Type type = value.getType();
+		if (type == null) {
+			return Opcodes.TOP;
+		}
+		return switch (type.getSort()) {
+			case Type.BOOLEAN, Type.CHAR, Type.BYTE, Type.SHORT, Type.INT -> Opcodes.INTEGER;
+			case Type.FLOAT -> Opcodes.FLOAT;
+			case Type.LONG -> Opcodes.LONG;
+			case Type.DOUBLE -> Opcodes.DOUBLE;
+			default -> type.getInternalName().equals("null") ? Opcodes.NULL : type.getInternalName();
+		};
+	}
+
+	// The result of NEW before its constructor has run; frames must name it by the label of the allocation.
+	private static final class Uninitialized extends BasicValue {
+		private final TypeInsnNode allocation;
+
+		Uninitialized(TypeInsnNode allocation) {
+			super(Type.getObjectType(allocation.desc));
+			this.allocation = allocation;
+		}
+
+		LabelNode label(InsnList insns) {
+			if (allocation.getPrevious() instanceof LabelNode label) {
+				return label;
+			}
+			LabelNode label = new LabelNode();
+			insns.insertBefore(allocation, label);
+			return label;
+		}
+
+		@Override
+		public boolean equals(Object value) {
+			return value instanceof Uninitialized other && other.allocation == allocation;
+		}
+
+		@Override
+		public int hashCode() {
+			return allocation.hashCode();
+		}
+	}
+
+	private static final class InitializingFrame extends Frame<BasicValue> {
+		InitializingFrame(int numLocals, int numStack) {
+			super(numLocals, numStack);
+		}
+
+		@Override
+		public void execute(AbstractInsnNode insn, Interpreter<BasicValue> interpreter) throws AnalyzerException {
+			BasicValue created = null;
+			if (insn instanceof MethodInsnNode call && call.getOpcode() == Opcodes.INVOKESPECIAL && call.name.equals("<init>")) {
+				BasicValue receiver = getStack(getStackSize() - 1 - Type.getArgumentCount(call.desc));
+				if (receiver instanceof Uninitialized) {
+					created = receiver;
+				}
+			}
+			super.execute(insn, interpreter);
+			if (created != null) {
+				BasicValue initialized = interpreter.newValue(created.getType());
+				for (int i = 0; i < getLocals(); i++) {
+					if (created.equals(getLocal(i))) {
+						setLocal(i, initialized);
+					}
+				}
+				for (int i = 0; i < getStackSize(); i++) {
+					if (created.equals(getStack(i))) {
+						setStack(i, initialized);
+					}
+				}
+			}
+		}
+	}
+
+	private static final class Verifier extends SimpleVerifier {
+		private final Set<String> setups;
+
+		Verifier(String owner, Set<String> setups) {
+			super(Opcodes.ASM9, Type.getObjectType(owner), OBJECT, List.of(), false);
+			this.setups = setups;
+		}
+
+		@Override
+		public BasicValue newOperation(AbstractInsnNode insn) throws AnalyzerException {
+			if (insn.getOpcode() == Opcodes.NEW) {
+				return new Uninitialized((TypeInsnNode) insn);
+			}
+			return super.newOperation(insn);
+		}
+
+		@Override
+		protected boolean isInterface(Type type) {
+			return !isSetup(type) && super.isInterface(type);
+		}
+
+		@Override
+		protected Type getSuperClass(Type type) {
+			return isSetup(type) ? OBJECT : super.getSuperClass(type);
+		}
+
+		@Override
+		protected boolean isAssignableFrom(Type type1, Type type2) {
+			if (type1.equals(type2) || type1.equals(OBJECT) && type2.getSort() >= Type.ARRAY) {
+				return true;
+			}
+			if (isSetup(type1) || isSetup(type2)) {
+				return false;
+			}
+			return super.isAssignableFrom(type1, type2);
+		}
+
+		private boolean isSetup(Type type) {
+			Type element = type.getSort() == Type.ARRAY ? type.getElementType() : type;
+			return element.getSort() == Type.OBJECT && setups.contains(element.getInternalName());
+		}
+	}
+}
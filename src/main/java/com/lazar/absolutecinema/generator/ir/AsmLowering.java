@@ -0,0 +1,197 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class AsmLowering {
+	private static final Handle CONCAT_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC,
+		"java/lang/invoke/StringConcatFactory", "makeConcatWithConstants",
+		"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+		false);
+
+	private final MethodVisitor mv;
+	private final Map<BasicBlock, Label> labels = new HashMap<>();
+	private final Map<BasicBlock, Map<Integer, Label>> marks = new HashMap<>();
+	private final Map<Label, Integer> lines = new HashMap<>();
+
+	private AsmLowering(MethodVisitor mv) {
+		this.mv = mv;
+	}
+
+	// Emits the reachable blocks in layout order, turning jumps to the following block into fall-through.
+	public static void lower(IrMethod method, MethodVisitor mv) {
+		new AsmLowering(mv).lower(method);
+	}
+
+	private void lower(IrMethod method) {
+		for (LocalVariable local : method.locals) {
+			mark(local.startBlock, local.startIndex);
+			mark(local.endBlock, local.endIndex);
+		}
+		for (LineNumber line : method.lines) {
+			lines.put(mark(line.block(), line.index()), line.line());
+		}
+		List<BasicBlock> layout = method.reachableBlocks();
+		int next = 0;
+		for (BasicBlock block : method.blocks) {
+			if (next == layout.size() || layout.get(next) != block) {
+				// Skipped blocks emit no code, only the variable boundaries placed inside them.
+				for (Label mark : marks.getOrDefault(block, Map.of()).values()) {
+					mv.visitLabel(mark);
+				}
+				continue;
+			}
+			next++;
+			mv.visitLabel(label(block));
+			for (int i = 0; i < block.insns.size(); i++) {
+				visitMark(block, i);
+				emit(block.insns.get(i));
+			}
+			visitMark(block, block.insns.size());
+			terminate(block.terminator, next < layout.size() ? layout.get(next) : null);
+			visitMark(block, LocalVariable.AFTER_BLOCK);
+		}
+		for (LocalVariable local : method.locals) {
+			mv.visitLocalVariable(local.name, local.descriptor, null, mark(local.startBlock, local.startIndex),
+				mark(local.endBlock, local.endIndex), local.slot);
+		}
+	}
+
+	private Label mark(BasicBlock block, int index) {
+		return marks.computeIfAbsent(block, b -> new TreeMap<>()).computeIfAbsent(index, i -> new Label());
+	}
+
+	private void visitMark(BasicBlock block, int index) {
+		Map<Integer, Label> blockMarks = marks.get(block);
+		if (blockMarks != null && blockMarks.containsKey(index)) {
+			Label mark = blockMarks.get(index);
+			mv.visitLabel(mark);
+			if (lines.containsKey(mark)) {
+				mv.visitLineNumber(lines.get(mark), mark);
+			}
+		}
+	}
+
+	private Label label(BasicBlock block) {
+		return labels.computeIfAbsent(block, b -> new Label());
+	}
+
+	private void emit(Insn insn) {
+		switch (insn) {
+			case Insn.Const c -> push(c.value());
+			case Insn.Op o -> mv.visitInsn(o.opcode());
+			case Insn.Load l -> mv.visitVarInsn(l.type().getOpcode(Opcodes.ILOAD), l.slot());
+			case Insn.Store s -> mv.visitVarInsn(s.type().getOpcode(Opcodes.ISTORE), s.slot());
+			case Insn.Iinc i -> mv.visitIincInsn(i.slot(), i.increment());
+			case Insn.Field f -> mv.visitFieldInsn(f.opcode(), f.owner(), f.name(), f.descriptor());
+			case Insn.Invoke m -> mv.visitMethodInsn(m.opcode(), m.owner(), m.name(), m.descriptor(), false);
+			case Insn.Concat c -> {
+				Object[] arguments = new Object[c.constants().size() + 1];
+				arguments[0] = c.recipe();
+				for (int i = 0; i < c.constants().size(); i++) {
+					arguments[i + 1] = c.constants().get(i);
+				}
+				mv.visitInvokeDynamicInsn("makeConcatWithConstants", c.descriptor(), CONCAT_BOOTSTRAP, arguments);
+			}
+			case Insn.TypeOp t -> mv.visitTypeInsn(t.opcode(), t.type());
+			case Insn.NewArray a -> mv.visitIntInsn(Opcodes.NEWARRAY, a.typeCode());
+			case Insn.MultiNewArray a -> mv.visitMultiANewArrayInsn(a.descriptor(), a.dimensions());
+		}
+	}
+
+	private void push(Object value) {
+		if (value == null) {
+			mv.visitInsn(Opcodes.ACONST_NULL);
+		}
+		else if (value instanceof Integer i) {
+			if (i >= -1 && i <= 5) {
+				mv.visitInsn(Opcodes.ICONST_0 + i);
+			}
+			else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+				mv.visitIntInsn(Opcodes.BIPUSH, i);
+			}
+			else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+				mv.visitIntInsn(Opcodes.SIPUSH, i);
+			}
+			else {
+				mv.visitLdcInsn(i);
+			}
+		}
+		else if (value instanceof Double d) {
+			if (Double.doubleToRawLongBits(d) == 0L) {
+				mv.visitInsn(Opcodes.DCONST_0);
+			}
+			else if (d == 1.0) {
+				mv.visitInsn(Opcodes.DCONST_1);
+			}
+			else {
+				mv.visitLdcInsn(d);
+			}
+		}
+		else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	private void terminate(Terminator terminator, BasicBlock next) {
+		switch (terminator) {
+			case Terminator.Goto g -> {
+				if (g.target() != next) {
+					mv.visitJumpInsn(Opcodes.GOTO, label(g.target()));
+				}
+			}
+			case Terminator.Branch b -> {
+				if (b.target() == next) {
+					mv.visitJumpInsn(invert(b.opcode()), label(b.next()));
+				}
+				else {
+					mv.visitJumpInsn(b.opcode(), label(b.target()));
+					if (b.next() != next) {
+						mv.visitJumpInsn(Opcodes.GOTO, label(b.next()));
+					}
+				}
+			}
+			case Terminator.Switch s -> lowerSwitch(s);
+			case Terminator.Return r -> mv.visitInsn(r.type().getOpcode(Opcodes.IRETURN));
+		}
+	}
+
+	// Picks the denser encoding the way javac does, weighing time three times as much as space.
+	private void lowerSwitch(Terminator.Switch s) {
+		List<Integer> keys = s.keys();
+		long lo = keys.getFirst();
+		long hi = keys.getLast();
+		long tableCost = 4 + (hi - lo + 1) + 3 * 3;
+		long lookupCost = 3 + 2L * keys.size() + 3L * keys.size();
+		if (tableCost <= lookupCost) {
+			Label[] table = new Label[(int) (hi - lo + 1)];
+			Arrays.fill(table, label(s.dflt()));
+			for (int i = 0; i < keys.size(); i++) {
+				table[(int) (keys.get(i) - lo)] = label(s.targets().get(i));
+			}
+			mv.visitTableSwitchInsn((int) lo, (int) hi, label(s.dflt()), table);
+		}
+		else {
+			Label[] targets = new Label[keys.size()];
+			for (int i = 0; i < targets.length; i++) {
+				targets[i] = label(s.targets().get(i));
+			}
+			mv.visitLookupSwitchInsn(label(s.dflt()), keys.stream().mapToInt(Integer::intValue).toArray(), targets);
+		}
+	}
+
+	static int invert(int opcode) {
+		if (opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL) {
+			return opcode == Opcodes.IFNULL ? Opcodes.IFNONNULL : Opcodes.IFNULL;
+		}
+		return ((opcode - Opcodes.IFEQ) ^ 1) + Opcodes.IFEQ;
+	}
+}
@@ -0,0 +1,19 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BasicBlock {
+	public int id = -1;
+	public final List<Insn> insns = new ArrayList<>();
+	public Terminator terminator;
+
+	public List<BasicBlock> successors() {
+		return terminator == null ? List.of() : terminator.successors();
+	}
+
+	@Override
+	public String toString() {
+		return "b" + id;
+	}
+}
@@ -0,0 +1,99 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.util.Printer;
+
+import java.util.List;
+
+// Straight-line stack instructions. Typed through their opcode or the JVM type they carry.
+public sealed interface Insn {
+	static String mnemonic(int opcode) {
+		return Printer.OPCODES[opcode].toLowerCase();
+	}
+
+	// Integer, Double, String or null; lowered to the shortest push form.
+	record Const(Object value) implements Insn {
+		@Override
+		public String toString() {
+			if (value == null) {
+				return "const null";
+			}
+			if (value instanceof String s) {
+				return "const \"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+			}
+			return "const " + value;
+		}
+	}
+
+	record Op(int opcode) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(opcode);
+		}
+	}
+
+	record Load(Type type, int slot) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(type.getOpcode(Opcodes.ILOAD)) + " " + slot;
+		}
+	}
+
+	record Store(Type type, int slot) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(type.getOpcode(Opcodes.ISTORE)) + " " + slot;
+		}
+	}
+
+	record Iinc(int slot, int increment) implements Insn {
+		@Override
+		public String toString() {
+			return "iinc " + slot + " " + increment;
+		}
+	}
+
+	record Field(int opcode, String owner, String name, String descriptor) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(opcode) + " " + owner + "." + name + " " + descriptor;
+		}
+	}
+
+	record Invoke(int opcode, String owner, String name, String descriptor) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(opcode) + " " + owner + "." + name + descriptor;
+		}
+	}
+
+	// One invokedynamic through StringConcatFactory: \1 in the recipe takes the next operand, \2 the next constant.
+	record Concat(String recipe, String descriptor, List<Object> constants) implements Insn {
+		@Override
+		public String toString() {
+			return "concat " + descriptor + " \"" + recipe.replace("\1", "\\1").replace("\2", "\\2").replace("\n", "\\n") + "\"";
+		}
+	}
+
+	record TypeOp(int opcode, String type) implements Insn {
+		@Override
+		public String toString() {
+			return mnemonic(opcode) + " " + type;
+		}
+	}
+
+	record NewArray(int typeCode) implements Insn {
+		@Override
+		public String toString() {
+			return "newarray " + Printer.TYPES[typeCode].substring(2).toLowerCase();
+		}
+	}
+
+	record MultiNewArray(String descriptor, int dimensions) implements Insn {
+		@Override
+		public String toString() {
+			return "multianewarray " + descriptor + " " + dimensions;
+		}
+	}
+}
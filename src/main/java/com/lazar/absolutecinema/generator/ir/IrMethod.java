@@ -0,0 +1,75 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import java.util.*;
+
+public final class IrMethod {
+	public final String owner;
+	public final String name;
+	public final String descriptor;
+	public final int access;
+	// Layout order: blocks are appended when code generation starts filling them, the first one is the entry.
+	public final List<BasicBlock> blocks = new ArrayList<>();
+	public final List<LocalVariable> locals = new ArrayList<>();
+	public final List<LineNumber> lines = new ArrayList<>();
+
+	public IrMethod(String owner, String name, String descriptor, int access) {
+		this.owner = owner;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.access = access;
+	}
+
+	public void place(BasicBlock block) {
+		block.id = blocks.size();
+		blocks.add(block);
+	}
+
+	public BasicBlock entry() {
+		return blocks.get(0);
+	}
+
+	// Retargets edges that lead into empty blocks ending in a goto, so those blocks drop out of the layout.
+	public void threadJumps() {
+		for (BasicBlock b : blocks) {
+			switch (b.terminator) {
+				case Terminator.Goto g -> b.terminator = new Terminator.Goto(skipEmpty(g.target()));
+				case Terminator.Branch br ->
+					b.terminator = new Terminator.Branch(br.opcode(), skipEmpty(br.target()), skipEmpty(br.next()));
+				case Terminator.Switch sw -> b.terminator = new Terminator.Switch(sw.keys(),
+					sw.targets().stream().map(IrMethod::skipEmpty).toList(), skipEmpty(sw.dflt()));
+				case null, default -> {
+				}
+			}
+		}
+	}
+
+	private static BasicBlock skipEmpty(BasicBlock block) {
+		Set<BasicBlock> seen = new HashSet<>();
+		while (block.insns.isEmpty() && block.terminator instanceof Terminator.Goto g && seen.add(block)) {
+			block = g.target();
+		}
+		return block;
+	}
+
+	// Blocks reachable from the entry, in layout order. Dead code after a cut or a jump never reaches the class file.
+	public List<BasicBlock> reachableBlocks() {
+		Set<BasicBlock> seen = new HashSet<>();
+		Deque<BasicBlock> work = new ArrayDeque<>();
+		work.push(entry());
+		seen.add(entry());
+		while (!work.isEmpty()) {
+			for (BasicBlock succ : work.pop().successors()) {
+				if (seen.add(succ)) {
+					work.push(succ);
+				}
+			}
+		}
+		List<BasicBlock> result = new ArrayList<>();
+		for (BasicBlock b : blocks) {
+			if (seen.contains(b)) {
+				result.add(b);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,53 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class IrPrinter {
+	private IrPrinter() {
+	}
+
+	public static String print(List<IrMethod> methods) {
+		StringBuilder sb = new StringBuilder();
+		for (IrMethod method : methods) {
+			print(sb, method);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	public static String print(IrMethod method) {
+		StringBuilder sb = new StringBuilder();
+		print(sb, method);
+		return sb.toString();
+	}
+
+	private static void print(StringBuilder sb, IrMethod method) {
+		List<BasicBlock> blocks = method.reachableBlocks();
+		Map<BasicBlock, List<BasicBlock>> preds = new HashMap<>();
+		for (BasicBlock b : blocks) {
+			for (BasicBlock succ : b.successors()) {
+				preds.computeIfAbsent(succ, k -> new ArrayList<>()).add(b);
+			}
+		}
+		sb.append(method.owner).append('.').append(method.name).append(method.descriptor).append(" {\n");
+		for (BasicBlock b : blocks) {
+			sb.append(b).append(':');
+			List<BasicBlock> from = preds.get(b);
+			if (from != null) {
+				sb.append("  ; preds ");
+				for (int i = 0; i < from.size(); i++) {
+					sb.append(i > 0 ? ", " : "").append(from.get(i));
+				}
+			}
+			sb.append('\n');
+			for (Insn insn : b.insns) {
+				sb.append("    ").append(insn).append('\n');
+			}
+			sb.append("    ").append(b.terminator).append('\n');
+		}
+		sb.append("}\n");
+	}
+}
@@ -0,0 +1,5 @@
+package com.lazar.absolutecinema.generator.ir;
+
+// A LineNumberTable entry: code from this position in the layout on comes from the given source line.
+public record LineNumber(int line, BasicBlock block, int index) {
+}
@@ -0,0 +1,24 @@
+package com.lazar.absolutecinema.generator.ir;
+
+// A source variable for the LocalVariableTable. Its range runs from a position in the layout, after the store that
+// initializes it, to the position where its scope closes. A position is an instruction index inside a placed block;
+// AFTER_BLOCK marks the point behind the block's terminator.
+public final class LocalVariable {
+	public static final int AFTER_BLOCK = Integer.MAX_VALUE;
+
+	public final String name;
+	public final String descriptor;
+	public final int slot;
+	public final BasicBlock startBlock;
+	public final int startIndex;
+	public BasicBlock endBlock;
+	public int endIndex;
+
+	public LocalVariable(String name, String descriptor, int slot, BasicBlock startBlock, int startIndex) {
+		this.name = name;
+		this.descriptor = descriptor;
+		this.slot = slot;
+		this.startBlock = startBlock;
+		this.startIndex = startIndex;
+	}
+}
@@ -0,0 +1,67 @@
+package com.lazar.absolutecinema.generator.ir;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public sealed interface Terminator {
+	List<BasicBlock> successors();
+
+	record Goto(BasicBlock target) implements Terminator {
+		@Override
+		public List<BasicBlock> successors() {
+			return List.of(target);
+		}
+
+		@Override
+		public String toString() {
+			return "goto " + target;
+		}
+	}
+
+	// Consumes the operands of a conditional jump opcode; continues at next when the condition is false.
+	record Branch(int opcode, BasicBlock target, BasicBlock next) implements Terminator {
+		@Override
+		public List<BasicBlock> successors() {
+			return List.of(target, next);
+		}
+
+		@Override
+		public String toString() {
+			return Insn.mnemonic(opcode) + " " + target + " else " + next;
+		}
+	}
+
+	// Consumes an int and continues at the target of the matching key, or at dflt; keys are ascending and distinct.
+	record Switch(List<Integer> keys, List<BasicBlock> targets, BasicBlock dflt) implements Terminator {
+		@Override
+		public List<BasicBlock> successors() {
+			List<BasicBlock> successors = new ArrayList<>(targets);
+			successors.add(dflt);
+			return successors;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("switch");
+			for (int i = 0; i < keys.size(); i++) {
+				sb.append(i == 0 ? " " : ", ").append(keys.get(i)).append(" -> ").append(targets.get(i));
+			}
+			return sb.append(" else ").append(dflt).toString();
+		}
+	}
+
+	record Return(Type type) implements Terminator {
+		@Override
+		public List<BasicBlock> successors() {
+			return List.of();
+		}
+
+		@Override
+		public String toString() {
+			return Insn.mnemonic(type.getOpcode(Opcodes.IRETURN));
+		}
+	}
+}
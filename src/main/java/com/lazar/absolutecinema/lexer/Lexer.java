@@ -1,5 +1,8 @@
 package com.lazar.absolutecinema.lexer;
 
+import com.lazar.absolutecinema.diagnostics.Diagnostic;
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +34,8 @@ public class Lexer {
 	}
 
 	private final String source;
+	private final Diagnostics diagnostics;
+	private final boolean ownsDiagnostics;
 	private final List<Token> tokens = new ArrayList<>();
 	private int start = 0;
 	private int current = 0;
@@ -38,7 +43,17 @@ public class Lexer {
 	private int column = 1;
 
 	public Lexer(String source) {
+		this(source, new Diagnostics(), true);
+	}
+
+	public Lexer(String source, Diagnostics diagnostics) {
+		this(source, diagnostics, false);
+	}
+
+	private Lexer(String source, Diagnostics diagnostics, boolean ownsDiagnostics) {
 		this.source = source != null ? source : "";
+		this.diagnostics = diagnostics;
+		this.ownsDiagnostics = ownsDiagnostics;
 	}
 
 	public List<Token> lex() {
@@ -47,6 +62,9 @@ public class Lexer {
 			scanToken();
 		}
 		tokens.add(new Token(TokenType.EOF, "", null, line, column));
+		if (ownsDiagnostics) {
+			diagnostics.throwIfErrors();
+		}
 		return tokens;
 	}
 
@@ -185,7 +203,14 @@ public class Lexer {
 			add(TokenType.DOUBLE_LITERAL, Double.parseDouble(source.substring(start, current)));
 		}
 		else {
-			add(TokenType.INT_LITERAL, Integer.parseInt(source.substring(start, current)));
+			String text = source.substring(start, current);
+			try {
+				add(TokenType.INT_LITERAL, Integer.parseInt(text));
+			}
+			catch (NumberFormatException e) {
+				error("Integer literal out of range: " + text);
+				add(TokenType.INT_LITERAL, 0);
+			}
 		}
 	}
 
@@ -193,7 +218,7 @@ public class Lexer {
 		StringBuilder sb = new StringBuilder();
 		while (!isAtEnd() && peek() != '"') {
 			char c = advance();
-			if (c == '\\') {
+			if (c == '\\' && !isAtEnd()) {
 				char e = advance();
 				switch (e) {
 					case 'n' -> sb.append('\n');
@@ -210,14 +235,19 @@ public class Lexer {
 		}
 		if (isAtEnd()) {
 			error("Unterminated string");
+			return;
 		}
 		advance();
 		add(TokenType.STRING_LITERAL, sb.toString());
 	}
 
 	private void character() {
+		if (isAtEnd()) {
+			error("Unterminated char literal");
+			return;
+		}
 		char value = advance();
-		if (value == '\\') {
+		if (value == '\\' && !isAtEnd()) {
 			char e = advance();
 			value = switch (e) {
 				case 'n' -> '\n';
@@ -230,6 +260,7 @@ public class Lexer {
 		}
 		if (peek() != '\'') {
 			error("Unterminated char literal");
+			return;
 		}
 		advance();
 		add(TokenType.CHAR_LITERAL, value);
@@ -291,6 +322,7 @@ public class Lexer {
 	}
 
 	private void error(String message) {
-		throw new RuntimeException("LEXER ERROR at line " + line + ": " + message);
+		diagnostics.report(Diagnostic.Stage.LEXER, "LEXER ERROR at line " + line + ": " + message, line,
+			column - (current - start));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,380 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConstantFolder implements DeclVisitor<Void>, StmtVisitor<Node>, ExprVisitor<Expr> {
+
+	public void fold(Program program) {
+		for (int i = 0; i < program.items.size(); i++) {
+			Node item = program.items.get(i);
+			if (item instanceof VarDecl d) {
+				program.items.set(i, foldVarDecl(d));
+			}
+			else if (item instanceof Decl d) {
+				d.accept(this);
+			}
+		}
+	}
+
+	@Override
+	public Void visitSetup(SetupDecl d) {
+		for (int i = 0; i < d.fields.size(); i++) {
+			d.fields.set(i, foldVarDecl(d.fields.get(i)));
+		}
+		if (d.ctor != null) {
+			foldBlock(d.ctor.body);
+		}
+		for (SceneDecl method : d.methods) {
+			method.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitScene(SceneDecl d) {
+		if (d.body != null) {
+			foldBlock(d.body);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVar(VarDecl d) {
+		return null;
+	}
+
+	private VarDecl foldVarDecl(VarDecl d) {
+		if (d.initializer == null) {
+			return d;
+		}
+		Expr init = fold(d.initializer);
+		if (init == d.initializer) {
+			return d;
+		}
+		VarDecl folded = new VarDecl(d.name, d.type, init);
+		folded.binding = d.binding;
+		return folded;
+	}
+
+	private Block foldBlock(Block b) {
+		List<Node> folded = new ArrayList<>(b.statements.size());
+		for (Node n : b.statements) {
+			Node r = ((Stmt) n).accept(this);
+			if (r != null) {
+				folded.add(r);
+			}
+		}
+		b.statements.clear();
+		b.statements.addAll(folded);
+		return b;
+	}
+
+	private Stmt foldStmt(Stmt s) {
+		Node r = s.accept(this);
+		return r != null ? (Stmt) r : new Block(new ArrayList<>());
+	}
+
+	@Override
+	public Node visitBlock(Block s) {
+		return foldBlock(s);
+	}
+
+	@Override
+	public Node visitVar(Var s) {
+		VarDecl d = foldVarDecl(s.decl);
+		return d == s.decl ? s : new Var(d);
+	}
+
+	@Override
+	public Node visitExpr(ExprStmt s) {
+		Expr e = fold(s.expr);
+		if (e instanceof Literal) {
+			return null;
+		}
+		return e == s.expr ? s : new ExprStmt(e);
+	}
+
+	@Override
+	public Node visitIf(If s) {
+		List<Branch> branches = new ArrayList<>();
+		branches.add(s.ifBranch);
+		branches.addAll(s.elifBranchList);
+		List<Branch> live = new ArrayList<>();
+		Block elseBlock = null;
+		boolean taken = false;
+		for (Branch b : branches) {
+			Expr cond = fold(b.cond);
+			if (isBool(cond, false)) {
+				continue;
+			}
+			Block block = foldBlock(b.block);
+			if (isBool(cond, true)) {
+				elseBlock = block;
+				taken = true;
+				break;
+			}
+			live.add(new Branch(live.isEmpty() ? ConditionalType.IF : ConditionalType.ELIF, cond, block));
+		}
+		if (!taken && s.elseBranch != null && s.elseBranch.block != null) {
+			elseBlock = foldBlock(s.elseBranch.block);
+		}
+		if (live.isEmpty()) {
+			return elseBlock;
+		}
+		return new If(live.get(0), new ArrayList<>(live.subList(1, live.size())), new Branch(ConditionalType.ELSE, null, elseBlock));
+	}
+
+	@Override
+	public Node visitWhile(While s) {
+		Expr cond = fold(s.condition);
+		if (isBool(cond, false)) {
+			return null;
+		}
+		return new While(cond, foldStmt(s.body));
+	}
+
+	@Override
+	public Node visitFor(For s) {
+		Node init = s.initializer instanceof Stmt st ? st.accept(this) : s.initializer;
+		Expr cond = s.condition != null ? fold(s.condition) : null;
+		if (cond != null && isBool(cond, false)) {
+			return init;
+		}
+		Expr increment = s.increment != null ? fold(s.increment) : null;
+		return new For(init, cond, increment, foldStmt(s.body));
+	}
+
+	@Override
+	public Node visitReturn(Return s) {
+		if (s.value == null) {
+			return s;
+		}
+		Expr value = fold(s.value);
+		return value == s.value ? s : new Return(s.keyword, value);
+	}
+
+	@Override
+	public Node visitBreak(Break s) {
+		return s;
+	}
+
+	@Override
+	public Node visitContinue(Continue s) {
+		return s;
+	}
+
+	private Expr fold(Expr e) {
+		return e.accept(this);
+	}
+
+	private void foldAll(List<Expr> list) {
+		if (list == null) {
+			return;
+		}
+		for (int i = 0; i < list.size(); i++) {
+			list.set(i, fold(list.get(i)));
+		}
+	}
+
+	private static <T extends Expr> T typed(T e, ResolvedType type) {
+		e.setType(type);
+		return e;
+	}
+
+	private static Literal literal(Object value, ResolvedType type) {
+		return typed(new Literal(value), type);
+	}
+
+	private static boolean isBool(Expr e, boolean value) {
+		return e instanceof Literal l && l.value instanceof Boolean b && b == value;
+	}
+
+	@Override
+	public Expr visitLiteral(Literal e) {
+		return e;
+	}
+
+	@Override
+	public Expr visitVariable(Variable e) {
+		return e;
+	}
+
+	@Override
+	public Expr visitAssign(Assign e) {
+		Expr value = fold(e.value);
+		Expr target = e.target instanceof Index ? fold(e.target) : e.target;
+		if (value == e.value && target == e.target) {
+			return e;
+		}
+		Assign folded = typed(new Assign(target, e.op, value), e.getType());
+		folded.binding = e.binding;
+		return folded;
+	}
+
+	@Override
+	public Expr visitBinary(Binary e) {
+		Expr left = fold(e.left);
+		Expr right = fold(e.right);
+		if (left instanceof Literal l && right instanceof Literal r) {
+			Object value = evaluate(e.op.getLexeme(), l.value, r.value, e.getType());
+			if (value != null) {
+				return literal(value, e.getType());
+			}
+		}
+		if (left == e.left && right == e.right) {
+			return e;
+		}
+		return typed(new Binary(left, e.op, right), e.getType());
+	}
+
+	private static Object evaluate(String op, Object l, Object r, ResolvedType type) {
+		if (type.equals(ResolvedType.STRING)) {
+			return isPrintable(l) && isPrintable(r) ? String.valueOf(l) + r : null;
+		}
+		if (l instanceof Integer a && r instanceof Integer b) {
+			return switch (op) {
+				case "+" -> a + b;
+				case "-" -> a - b;
+				case "*" -> a * b;
+				case "/" -> b == 0 ? null : a / b;
+				case "%" -> b == 0 ? null : a % b;
+				case "<" -> a < b;
+				case "<=" -> a <= b;
+				case ">" -> a > b;
+				case ">=" -> a >= b;
+				case "==" -> a.intValue() == b.intValue();
+				case "!=" -> a.intValue() != b.intValue();
+				default -> null;
+			};
+		}
+		if ((l instanceof Integer || l instanceof Double) && (r instanceof Integer || r instanceof Double)) {
+			double a = ((Number) l).doubleValue();
+			double b = ((Number) r).doubleValue();
+			// Comparisons are emitted so that NaN fails every one but !=, exactly as Java's operators do.
+			return switch (op) {
+				case "+" -> a + b;
+				case "-" -> a - b;
+				case "*" -> a * b;
+				case "/" -> a / b;
+				case "%" -> a % b;
+				case "<" -> a < b;
+				case "<=" -> a <= b;
+				case ">" -> a > b;
+				case ">=" -> a >= b;
+				case "==" -> a == b;
+				case "!=" -> a != b;
+				default -> null;
+			};
+		}
+		return null;
+	}
+
+	private static boolean isPrintable(Object value) {
+		return value instanceof String || value instanceof Integer || value instanceof Double || value instanceof Boolean;
+	}
+
+	@Override
+	public Expr visitLogical(Logical e) {
+		Expr left = fold(e.left);
+		Expr right = fold(e.right);
+		boolean and = e.op.getLexeme().equals("&&");
+		if (isBool(left, !and)) {
+			return literal(!and, ResolvedType.BOOL);
+		}
+		if (isBool(left, and) || isBool(right, and)) {
+			return isBool(left, and) ? right : left;
+		}
+		if (left == e.left && right == e.right) {
+			return e;
+		}
+		return typed(new Logical(left, e.op, right), e.getType());
+	}
+
+	@Override
+	public Expr visitUnary(Unary e) {
+		Expr right = fold(e.right);
+		if (right instanceof Literal l && l.value != null) {
+			Object value = switch (e.op.getLexeme()) {
+				case "-" -> l.value instanceof Integer i ? (Object) (-i) : l.value instanceof Double d ? (Object) (-d) : null;
+				case "+" -> l.value instanceof Integer || l.value instanceof Double ? l.value : null;
+				case "!" -> l.value instanceof Boolean b ? !b : null;
+				case "int" -> l.value instanceof Double d ? (int) d.doubleValue() : null;
+				case "double" -> l.value instanceof Integer i ? (double) i : null;
+				default -> null;
+			};
+			if (value != null) {
+				return literal(value, e.getType());
+			}
+		}
+		return right == e.right ? e : typed(new Unary(e.op, right), e.getType());
+	}
+
+	@Override
+	public Expr visitGrouping(Grouping e) {
+		Expr inner = fold(e.expr);
+		if (inner instanceof Literal) {
+			return inner;
+		}
+		return inner == e.expr ? e : typed(new Grouping(inner), e.getType());
+	}
+
+	@Override
+	public Expr visitCall(Call e) {
+		foldAll(e.arguments);
+		return e;
+	}
+
+	@Override
+	public Expr visitGet(Get e) {
+		Expr object = fold(e.object);
+		return object == e.object ? e : typed(new Get(object, e.name), e.getType());
+	}
+
+	@Override
+	public Expr visitSet(Set e) {
+		Expr object = fold(e.object);
+		Expr value = fold(e.value);
+		if (object == e.object && value == e.value) {
+			return e;
+		}
+		return typed(new Set(object, e.name, e.op, value), e.getType());
+	}
+
+	@Override
+	public Expr visitIndex(Index e) {
+		Expr array = fold(e.array);
+		Expr index = fold(e.index);
+		if (array == e.array && index == e.index) {
+			return e;
+		}
+		return typed(new Index(array, index), e.getType());
+	}
+
+	@Override
+	public Expr visitPostfix(Postfix e) {
+		return e;
+	}
+
+	@Override
+	public Expr visitThis(This e) {
+		return e;
+	}
+
+	@Override
+	public Expr visitActionNew(ActionNew e) {
+		foldAll(e.args);
+		foldAll(e.arrayInitializer);
+		return e;
+	}
+
+	@Override
+	public Expr visitArrayLiteral(ArrayLiteral e) {
+		foldAll(e.elements);
+		return e;
+	}
+}
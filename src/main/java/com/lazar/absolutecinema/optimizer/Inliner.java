@@ -0,0 +1,271 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+
+import java.util.*;
+
+public class Inliner implements StmtVisitor<Void>, ExprVisitor<Void> {
+	public static final int MAX_INLINE_SIZE = 40;
+
+	private final Map<String, SceneDecl> scenes = new HashMap<>();
+	private final Map<String, List<String>> callees = new HashMap<>();
+	private List<String> currentCallees;
+	private int size;
+
+	private final Map<String, Integer> index = new HashMap<>();
+	private final Map<String, Integer> lowLink = new HashMap<>();
+	private final Deque<String> stack = new ArrayDeque<>();
+	private final java.util.Set<String> onStack = new HashSet<>();
+	private final java.util.Set<String> recursive = new HashSet<>();
+
+	public List<String> mark(Program program) {
+		Map<String, Integer> sizes = new HashMap<>();
+		for (Node item : program.items) {
+			if (item instanceof SceneDecl scene && scene.body != null) {
+				scenes.put(scene.name.getLexeme(), scene);
+				currentCallees = new ArrayList<>();
+				size = 0;
+				scene.body.accept(this);
+				callees.put(scene.name.getLexeme(), currentCallees);
+				sizes.put(scene.name.getLexeme(), size);
+			}
+		}
+		for (String name : scenes.keySet()) {
+			if (!index.containsKey(name)) {
+				strongConnect(name);
+			}
+		}
+		List<String> inlined = new ArrayList<>();
+		for (SceneDecl scene : scenes.values()) {
+			String name = scene.name.getLexeme();
+			scene.inline = !name.equals("entrance") && !recursive.contains(name) && sizes.get(name) <= MAX_INLINE_SIZE;
+			if (scene.inline) {
+				inlined.add(name);
+			}
+		}
+		return inlined;
+	}
+
+	private void strongConnect(String name) {
+		index.put(name, index.size());
+		lowLink.put(name, index.get(name));
+		stack.push(name);
+		onStack.add(name);
+		for (String callee : callees.get(name)) {
+			if (!scenes.containsKey(callee)) {
+				continue;
+			}
+			if (!index.containsKey(callee)) {
+				strongConnect(callee);
+				lowLink.put(name, Math.min(lowLink.get(name), lowLink.get(callee)));
+			}
+			else if (onStack.contains(callee)) {
+				lowLink.put(name, Math.min(lowLink.get(name), index.get(callee)));
+			}
+		}
+		if (lowLink.get(name).equals(index.get(name))) {
+			List<String> component = new ArrayList<>();
+			String member;
+			do {
+				member = stack.pop();
+				onStack.remove(member);
+				component.add(member);
+			}
+			while (!member.equals(name));
+			if (component.size() > 1 || callees.get(name).contains(name)) {
+				recursive.addAll(component);
+			}
+		}
+	}
+
+	private void stmt(Node n) {
+		size++;
+		if (n instanceof Var v) {
+			expr(v.decl.initializer);
+		}
+		else if (n instanceof Stmt s) {
+			s.accept(this);
+		}
+	}
+
+	private void expr(Expr e) {
+		if (e != null) {
+			size++;
+			e.accept(this);
+		}
+	}
+
+	@Override
+	public Void visitBlock(Block s) {
+		for (Node n : s.statements) {
+			stmt(n);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVar(Var s) {
+		expr(s.decl.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitExpr(ExprStmt s) {
+		expr(s.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitIf(If s) {
+		expr(s.ifBranch.cond);
+		s.ifBranch.block.accept(this);
+		for (Branch b : s.elifBranchList) {
+			expr(b.cond);
+			b.block.accept(this);
+		}
+		if (s.elseBranch != null && s.elseBranch.block != null) {
+			s.elseBranch.block.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhile(While s) {
+		expr(s.condition);
+		stmt(s.body);
+		return null;
+	}
+
+	@Override
+	public Void visitFor(For s) {
+		if (s.initializer != null) {
+			stmt(s.initializer);
+		}
+		expr(s.condition);
+		expr(s.increment);
+		stmt(s.body);
+		return null;
+	}
+
+	@Override
+	public Void visitReturn(Return s) {
+		expr(s.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBreak(Break s) {
+		return null;
+	}
+
+	@Override
+	public Void visitContinue(Continue s) {
+		return null;
+	}
+
+	@Override
+	public Void visitLiteral(Literal e) {
+		return null;
+	}
+
+	@Override
+	public Void visitVariable(Variable e) {
+		return null;
+	}
+
+	@Override
+	public Void visitAssign(Assign e) {
+		expr(e.target);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinary(Binary e) {
+		expr(e.left);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitLogical(Logical e) {
+		expr(e.left);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitUnary(Unary e) {
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGrouping(Grouping e) {
+		expr(e.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitCall(Call e) {
+		if (e.callee instanceof Variable v) {
+			currentCallees.add(v.name.getLexeme());
+		}
+		else {
+			expr(e.callee);
+		}
+		for (Expr arg : e.arguments) {
+			expr(arg);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGet(Get e) {
+		expr(e.object);
+		return null;
+	}
+
+	@Override
+	public Void visitSet(Set e) {
+		expr(e.object);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitIndex(Index e) {
+		expr(e.array);
+		expr(e.index);
+		return null;
+	}
+
+	@Override
+	public Void visitPostfix(Postfix e) {
+		expr(e.target);
+		return null;
+	}
+
+	@Override
+	public Void visitThis(This e) {
+		return null;
+	}
+
+	@Override
+	public Void visitActionNew(ActionNew e) {
+		if (e.args != null) {
+			e.args.forEach(this::expr);
+		}
+		if (e.arrayInitializer != null) {
+			e.arrayInitializer.forEach(this::expr);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitArrayLiteral(ArrayLiteral e) {
+		e.elements.forEach(this::expr);
+		return null;
+	}
+}
@@ -0,0 +1,601 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+import com.lazar.absolutecinema.semantic.Binding;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+
+import java.util.*;
+
+// Hoists loop-invariant expressions into locals assigned just before the loop, and turns products of a counter and a
+// constant inside a counting loop's body into a running sum. The new locals take slots above the frame the semantic
+// analyzer sized, so inlined callees and sibling scopes never share them.
+public class LoopOptimizer {
+	private int frameSize;
+	private int temps;
+	private int rewritten;
+
+	public int optimize(Program program) {
+		for (Node item : program.items) {
+			if (item instanceof SceneDecl scene) {
+				optimize(scene);
+			}
+			else if (item instanceof SetupDecl setup) {
+				if (setup.ctor != null) {
+					frameSize = setup.ctor.frameSize;
+					optimizeBlock(setup.ctor.body);
+					setup.ctor.frameSize = frameSize;
+				}
+				for (SceneDecl method : setup.methods) {
+					optimize(method);
+				}
+			}
+		}
+		return rewritten;
+	}
+
+	private void optimize(SceneDecl scene) {
+		if (scene.body != null) {
+			frameSize = scene.frameSize;
+			optimizeBlock(scene.body);
+			scene.frameSize = frameSize;
+		}
+	}
+
+	private void optimizeBlock(Block block) {
+		block.statements.replaceAll(n -> n instanceof Stmt s ? optimize(s) : n);
+	}
+
+	// Outer loops go first, so an expression invariant in a whole nest leaves it in one step.
+	private Stmt optimize(Stmt s) {
+		if (s instanceof Block b) {
+			optimizeBlock(b);
+		}
+		else if (s instanceof If i) {
+			optimizeBlock(i.ifBranch.block);
+			for (Branch b : i.elifBranchList) {
+				optimizeBlock(b.block);
+			}
+			if (i.elseBranch != null && i.elseBranch.block != null) {
+				optimizeBlock(i.elseBranch.block);
+			}
+		}
+		else if (s instanceof While w) {
+			return optimizeWhile(w);
+		}
+		else if (s instanceof For f) {
+			return optimizeFor(f);
+		}
+		return s;
+	}
+
+	private Stmt optimizeWhile(While w) {
+		Effects effects = new Effects();
+		effects.scan(w.condition);
+		effects.scan(w.body);
+		List<Node> preheader = new ArrayList<>();
+		Hoister hoister = new Hoister(effects, preheader);
+		Expr cond = hoister.expr(w.condition, true);
+		Stmt body = optimize(hoister.stmt(w.body));
+		While loop = cond == w.condition && body == w.body ? w : new While(cond, body);
+		return preheader.isEmpty() ? loop : block(preheader, loop);
+	}
+
+	private Stmt optimizeFor(For f) {
+		Effects effects = new Effects();
+		effects.scan(f.condition);
+		effects.scan(f.body);
+		Counter counter = counter(f.increment);
+		boolean counting = counter != null && !effects.writes(counter.binding);
+		effects.scan(f.increment);
+
+		List<Node> preheader = new ArrayList<>();
+		Hoister hoister = new Hoister(effects, preheader);
+		Expr cond = f.condition != null ? hoister.expr(f.condition, true) : null;
+		Expr increment = f.increment != null ? hoister.expr(f.increment, false) : null;
+		Stmt body = hoister.stmt(f.body);
+		if (counting) {
+			Reducer reducer = new Reducer(counter, preheader);
+			body = reducer.stmt(body);
+			if (!reducer.steps.isEmpty()) {
+				List<Node> statements = new ArrayList<>(reducer.steps);
+				statements.add(body);
+				body = new Block(statements);
+			}
+		}
+		body = optimize(body);
+		if (preheader.isEmpty()) {
+			return cond == f.condition && increment == f.increment && body == f.body
+				? f : new For(f.initializer, cond, increment, body);
+		}
+		// The initializer moves in front of the new locals, which may read what it declares.
+		if (f.initializer != null) {
+			preheader.addFirst(f.initializer);
+		}
+		return block(preheader, new For(null, cond, increment, body));
+	}
+
+	private static Block block(List<Node> preheader, Stmt loop) {
+		List<Node> statements = new ArrayList<>(preheader);
+		statements.add(loop);
+		return new Block(statements);
+	}
+
+	private Variable newLocal(Expr init, List<Node> preheader) {
+		ResolvedType type = init.getType();
+		Token name = token(TokenType.IDENTIFIER, "loop$" + temps++, init);
+		VarDecl decl = new VarDecl(name, new LType(token(TokenType.IDENTIFIER, type.name(), init), type.dimensions()), init);
+		decl.binding = Binding.local(frameSize, name.getLexeme(), type);
+		frameSize += decl.binding.size();
+		preheader.add(new Var(decl));
+		rewritten++;
+		return reference(decl);
+	}
+
+	private static Variable reference(VarDecl decl) {
+		Variable v = new Variable(decl.name);
+		v.binding = decl.binding;
+		v.resolvedDecl = decl;
+		v.setType(decl.binding.type());
+		return v;
+	}
+
+	private static Token token(TokenType type, String lexeme, Expr near) {
+		int line = near instanceof Binary b ? b.op.getLine() : near instanceof Variable v ? v.name.getLine() : 0;
+		return new Token(type, lexeme, null, line, 0);
+	}
+
+	private static <T extends Expr> T typed(T e, ResolvedType type) {
+		e.setType(type);
+		return e;
+	}
+
+	private static Literal literal(int value) {
+		return typed(new Literal(value), ResolvedType.INT);
+	}
+
+	// ---------- Invariance ----------
+
+	// What a loop may change on each iteration. A call can write any global or field, so it clobbers them all.
+	private static final class Effects {
+		private final java.util.Set<Integer> slots = new HashSet<>();
+		private final java.util.Set<String> globals = new HashSet<>();
+		private final java.util.Set<String> fields = new HashSet<>();
+		private boolean calls;
+
+		boolean writes(Binding binding) {
+			return slots.contains(binding.slot());
+		}
+
+		void scan(Node n) {
+			if (n instanceof Block b) {
+				b.statements.forEach(this::scan);
+			}
+			else if (n instanceof Var v) {
+				write(v.decl.binding);
+				scan(v.decl.initializer);
+			}
+			else if (n instanceof ExprStmt s) {
+				scan(s.expr);
+			}
+			else if (n instanceof If i) {
+				scan(i.ifBranch.cond);
+				scan(i.ifBranch.block);
+				for (Branch b : i.elifBranchList) {
+					scan(b.cond);
+					scan(b.block);
+				}
+				if (i.elseBranch != null) {
+					scan(i.elseBranch.block);
+				}
+			}
+			else if (n instanceof While w) {
+				scan(w.condition);
+				scan(w.body);
+			}
+			else if (n instanceof For f) {
+				scan(f.initializer);
+				scan(f.condition);
+				scan(f.increment);
+				scan(f.body);
+			}
+			else if (n instanceof Return r) {
+				scan(r.value);
+			}
+			else if (n instanceof Assign a) {
+				write(a.target);
+				write(a.binding);
+				scanTarget(a.target);
+				scan(a.value);
+			}
+			else if (n instanceof Set s) {
+				fields.add(s.name.getLexeme());
+				scan(s.object);
+				scan(s.value);
+			}
+			else if (n instanceof Postfix p) {
+				write(p.target);
+				scanTarget(p.target);
+			}
+			else if (n instanceof Unary u) {
+				if (u.op.getType() == TokenType.PLUS_PLUS || u.op.getType() == TokenType.MINUS_MINUS) {
+					write(u.right);
+				}
+				scan(u.right);
+			}
+			else if (n instanceof Call c) {
+				if (!(c.callee instanceof Variable v && (v.name.getLexeme().equals("project") || v.name.getLexeme().equals("capture")))) {
+					calls = true;
+				}
+				scan(c.callee);
+				c.arguments.forEach(this::scan);
+			}
+			else if (n instanceof ActionNew a) {
+				// Building a setup runs its field initializers and constructor.
+				calls |= a.getType() != null && a.getType().dimensions() == 0;
+				scanAll(a.args);
+				scanAll(a.arrayInitializer);
+			}
+			else if (n instanceof Binary b) {
+				scan(b.left);
+				scan(b.right);
+			}
+			else if (n instanceof Logical l) {
+				scan(l.left);
+				scan(l.right);
+			}
+			else if (n instanceof Grouping g) {
+				scan(g.expr);
+			}
+			else if (n instanceof Get g) {
+				scan(g.object);
+			}
+			else if (n instanceof Index i) {
+				scan(i.array);
+				scan(i.index);
+			}
+			else if (n instanceof ArrayLiteral a) {
+				scanAll(a.elements);
+			}
+		}
+
+		private void scanAll(List<Expr> list) {
+			if (list != null) {
+				list.forEach(this::scan);
+			}
+		}
+
+		private void scanTarget(Expr target) {
+			if (target instanceof Get g) {
+				scan(g.object);
+			}
+			else if (target instanceof Index i) {
+				scan(i.array);
+				scan(i.index);
+			}
+		}
+
+		private void write(Expr target) {
+			if (target instanceof Variable v && v.binding != null) {
+				write(v.binding);
+			}
+			else if (target instanceof Get g) {
+				fields.add(g.name.getLexeme());
+			}
+		}
+
+		private void write(Binding binding) {
+			if (binding == null) {
+				return;
+			}
+			switch (binding.kind()) {
+				case LOCAL -> {
+					for (int i = 0; i < binding.size(); i++) {
+						slots.add(binding.slot() + i);
+					}
+				}
+				case STATIC -> globals.add(binding.name());
+				case FIELD -> fields.add(binding.name());
+			}
+		}
+
+		// Only reads of values the loop leaves alone; anything that calls out, allocates or stores is excluded.
+		boolean invariant(Expr e) {
+			return switch (e) {
+				case Literal l -> true;
+				case This t -> true;
+				case Variable v -> v.binding != null && switch (v.binding.kind()) {
+					case LOCAL -> !slots.contains(v.binding.slot());
+					case STATIC -> !calls && !globals.contains(v.binding.name());
+					case FIELD -> !calls && !fields.contains(v.binding.name());
+				};
+				case Binary b -> invariant(b.left) && invariant(b.right)
+					&& (!ResolvedType.STRING.equals(b.getType()) || printsPlainly(b.left) && printsPlainly(b.right));
+				case Logical l -> invariant(l.left) && invariant(l.right);
+				case Unary u -> u.op.getType() != TokenType.PLUS_PLUS && u.op.getType() != TokenType.MINUS_MINUS && invariant(u.right);
+				case Grouping g -> invariant(g.expr);
+				case Get g -> g.object.getType() != null && invariant(g.object)
+					&& (g.object.getType().dimensions() > 0 || !calls && !fields.contains(g.name.getLexeme()));
+				default -> false;
+			};
+		}
+
+		// Concatenating a setup would call its toString, which a scene of that name overrides.
+		private static boolean printsPlainly(Expr e) {
+			ResolvedType type = e.getType();
+			return type != null && type.dimensions() == 0 && (type.isNumeric() || type.equals(ResolvedType.STRING)
+				|| type.equals(ResolvedType.BOOL) || type.equals(ResolvedType.CHAR) || type.equals(ResolvedType.NULL));
+		}
+	}
+
+	// Whether evaluating e can throw: integer division by a variable, or dereferencing something other than @.
+	private static boolean canThrow(Expr e) {
+		return switch (e) {
+			case Literal l -> false;
+			case This t -> false;
+			case Variable v -> false;
+			case Binary b -> canThrow(b.left) || canThrow(b.right) || (b.op.getType() == TokenType.SLASH || b.op.getType() == TokenType.PERCENT)
+				&& ResolvedType.INT.equals(b.getType()) && !(b.right instanceof Literal r && r.value instanceof Integer d && d != 0);
+			case Logical l -> canThrow(l.left) || canThrow(l.right);
+			case Unary u -> canThrow(u.right);
+			case Grouping g -> canThrow(g.expr);
+			case Get g -> !(g.object instanceof This);
+			default -> true;
+		};
+	}
+
+	// ---------- Rewriting ----------
+
+	// Rebuilds statements and expressions bottom-up, keeping every node the replacement leaves untouched. mayThrow
+	// tells replace whether a throwing expression would still throw first if evaluated ahead of the loop.
+	private abstract static class Rewriter {
+		abstract Expr replace(Expr e, boolean mayThrow);
+
+		Stmt stmt(Stmt s) {
+			if (s instanceof Block b) {
+				b.statements.replaceAll(n -> n instanceof Stmt st ? stmt(st) : n);
+				return b;
+			}
+			if (s instanceof Var v) {
+				if (v.decl.initializer == null) {
+					return v;
+				}
+				Expr init = expr(v.decl.initializer, false);
+				if (init == v.decl.initializer) {
+					return v;
+				}
+				VarDecl decl = new VarDecl(v.decl.name, v.decl.type, init);
+				decl.binding = v.decl.binding;
+				return new Var(decl);
+			}
+			if (s instanceof ExprStmt e) {
+				Expr expr = expr(e.expr, false);
+				return expr == e.expr ? e : new ExprStmt(expr);
+			}
+			if (s instanceof If i) {
+				Branch ifBranch = branch(i.ifBranch);
+				List<Branch> elifs = new ArrayList<>();
+				for (Branch b : i.elifBranchList) {
+					elifs.add(branch(b));
+				}
+				if (i.elseBranch != null && i.elseBranch.block != null) {
+					stmt(i.elseBranch.block);
+				}
+				return ifBranch == i.ifBranch && elifs.equals(i.elifBranchList) ? i : new If(ifBranch, elifs, i.elseBranch);
+			}
+			if (s instanceof While w) {
+				Expr cond = expr(w.condition, false);
+				Stmt body = stmt(w.body);
+				return cond == w.condition && body == w.body ? w : new While(cond, body);
+			}
+			if (s instanceof For f) {
+				Node init = f.initializer instanceof Stmt st ? stmt(st) : f.initializer;
+				Expr cond = f.condition != null ? expr(f.condition, false) : null;
+				Expr increment = f.increment != null ? expr(f.increment, false) : null;
+				Stmt body = stmt(f.body);
+				return init == f.initializer && cond == f.condition && increment == f.increment && body == f.body
+					? f : new For(init, cond, increment, body);
+			}
+			if (s instanceof Return r && r.value != null) {
+				Expr value = expr(r.value, false);
+				return value == r.value ? r : new Return(r.keyword, value);
+			}
+			return s;
+		}
+
+		private Branch branch(Branch b) {
+			stmt(b.block);
+			Expr cond = expr(b.cond, false);
+			return cond == b.cond ? b : new Branch(b.conditionalType, cond, b.block);
+		}
+
+		Expr expr(Expr e, boolean mayThrow) {
+			Expr replaced = replace(e, mayThrow);
+			if (replaced != null) {
+				return replaced;
+			}
+			switch (e) {
+				case Binary b -> {
+					Expr left = expr(b.left, mayThrow);
+					Expr right = expr(b.right, mayThrow && !risky(b.left));
+					return left == b.left && right == b.right ? e : typed(new Binary(left, b.op, right), e.getType());
+				}
+				case Logical l -> {
+					Expr left = expr(l.left, mayThrow);
+					Expr right = expr(l.right, false);
+					return left == l.left && right == l.right ? e : typed(new Logical(left, l.op, right), e.getType());
+				}
+				case Unary u -> {
+					Expr right = expr(u.right, mayThrow);
+					return right == u.right ? e : typed(new Unary(u.op, right), e.getType());
+				}
+				case Grouping g -> {
+					Expr inner = expr(g.expr, mayThrow);
+					return inner == g.expr ? e : typed(new Grouping(inner), e.getType());
+				}
+				case Get g -> {
+					Expr object = expr(g.object, mayThrow);
+					return object == g.object ? e : typed(new Get(object, g.name), e.getType());
+				}
+				case Index i -> {
+					Expr array = expr(i.array, mayThrow);
+					Expr index = expr(i.index, mayThrow && !risky(i.array));
+					return array == i.array && index == i.index ? e : typed(new Index(array, index), e.getType());
+				}
+				case Assign a -> {
+					Expr target = a.target instanceof Variable ? a.target : expr(a.target, false);
+					Expr value = expr(a.value, false);
+					if (target == a.target && value == a.value) {
+						return e;
+					}
+					Assign assign = typed(new Assign(target, a.op, value), e.getType());
+					assign.binding = a.binding;
+					return assign;
+				}
+				case Set s -> {
+					Expr object = expr(s.object, false);
+					Expr value = expr(s.value, false);
+					return object == s.object && value == s.value ? e : typed(new Set(object, s.name, s.op, value), e.getType());
+				}
+				case Call c -> {
+					if (c.callee instanceof Get g) {
+						Expr object = expr(g.object, false);
+						if (object != g.object) {
+							Call call = typed(new Call(typed(new Get(object, g.name), g.getType()), c.arguments), e.getType());
+							call.arguments.replaceAll(arg -> expr(arg, false));
+							return call;
+						}
+					}
+					c.arguments.replaceAll(arg -> expr(arg, false));
+					return e;
+				}
+				case ActionNew n -> {
+					if (n.args != null) {
+						n.args.replaceAll(arg -> expr(arg, false));
+					}
+					if (n.arrayInitializer != null) {
+						n.arrayInitializer.replaceAll(arg -> expr(arg, false));
+					}
+					return e;
+				}
+				case ArrayLiteral a -> {
+					a.elements.replaceAll(element -> expr(element, false));
+					return e;
+				}
+				default -> {
+					return e;
+				}
+			}
+		}
+
+		private static boolean risky(Expr e) {
+			return SideEffects.of(e) || canThrow(e);
+		}
+	}
+
+	private final class Hoister extends Rewriter {
+		private final Effects effects;
+		private final List<Node> preheader;
+
+		Hoister(Effects effects, List<Node> preheader) {
+			this.effects = effects;
+			this.preheader = preheader;
+		}
+
+		// The condition runs at least once, so a throwing expression evaluated first in it may still move ahead of
+		// the loop; anywhere else it might never have run.
+		@Override
+		Expr replace(Expr e, boolean mayThrow) {
+			if (!worthHoisting(e) || !effects.invariant(e) || !mayThrow && canThrow(e)) {
+				return null;
+			}
+			return newLocal(e, preheader);
+		}
+
+		private static boolean worthHoisting(Expr e) {
+			ResolvedType type = e.getType();
+			if (type == null || type.equals(ResolvedType.NULL) || type.equals(ResolvedType.SCRAP)) {
+				return false;
+			}
+			return switch (e) {
+				case Binary b -> true;
+				case Logical l -> true;
+				case Get g -> true;
+				case Unary u -> worthHoisting(u.right);
+				default -> false;
+			};
+		}
+	}
+
+	private record Counter(Binding binding, int step) {
+	}
+
+	// An int local the increment moves by a constant, as in i++, --i or i += 4.
+	private static Counter counter(Expr increment) {
+		Expr target = null;
+		int step = 0;
+		if (increment instanceof Postfix p) {
+			target = p.target;
+			step = p.op.getType() == TokenType.PLUS_PLUS ? 1 : -1;
+		}
+		else if (increment instanceof Unary u && (u.op.getType() == TokenType.PLUS_PLUS || u.op.getType() == TokenType.MINUS_MINUS)) {
+			target = u.right;
+			step = u.op.getType() == TokenType.PLUS_PLUS ? 1 : -1;
+		}
+		else if (increment instanceof Assign a && a.value instanceof Literal l && l.value instanceof Integer k
+			&& (a.op.getType() == TokenType.PLUS_EQUAL || a.op.getType() == TokenType.MINUS_EQUAL)) {
+			target = a.target;
+			step = a.op.getType() == TokenType.PLUS_EQUAL ? k : -k;
+		}
+		if (target instanceof Variable v && v.binding != null && v.binding.isLocal() && v.binding.type().equals(ResolvedType.INT)) {
+			return new Counter(v.binding, step);
+		}
+		return null;
+	}
+
+	// The body runs with the counter at its start value or one step further than last time, so i * c there equals a
+	// local that starts one step behind and advances by step * c at the top of the body. Int arithmetic wraps the same
+	// way both ways round.
+	private final class Reducer extends Rewriter {
+		private final Counter counter;
+		private final List<Node> preheader;
+		private final Map<Integer, Variable> products = new HashMap<>();
+		private final List<Node> steps = new ArrayList<>();
+
+		Reducer(Counter counter, List<Node> preheader) {
+			this.counter = counter;
+			this.preheader = preheader;
+		}
+
+		@Override
+		Expr replace(Expr e, boolean mayThrow) {
+			if (!(e instanceof Binary b) || b.op.getType() != TokenType.STAR || !ResolvedType.INT.equals(b.getType())) {
+				return null;
+			}
+			Integer factor = isCounter(b.left) ? constant(b.right) : isCounter(b.right) ? constant(b.left) : null;
+			if (factor == null || factor == 0 || factor == 1) {
+				return null;
+			}
+			return products.computeIfAbsent(factor, c -> {
+				int delta = c * counter.step;
+				Token minus = new Token(TokenType.MINUS, "-", null, b.op.getLine(), b.op.getColumn());
+				Variable product = newLocal(typed(new Binary(b, minus, literal(delta)), ResolvedType.INT), preheader);
+				Token plusEqual = new Token(TokenType.PLUS_EQUAL, "+=", null, b.op.getLine(), b.op.getColumn());
+				Assign advance = typed(new Assign(product, plusEqual, literal(delta)), ResolvedType.INT);
+				advance.binding = product.binding;
+				steps.add(new ExprStmt(advance));
+				return product;
+			});
+		}
+
+		private boolean isCounter(Expr e) {
+			return e instanceof Variable v && counter.binding.equals(v.binding);
+		}
+
+		private static Integer constant(Expr e) {
+			return e instanceof Literal l && l.value instanceof Integer i ? i : null;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.parser.ast.Program;
+
+import java.util.List;
+
+public class Optimizer {
+	public List<String> pruneUnreachable(Program program) {
+		return new Reachability().prune(program);
+	}
+
+	public Program optimize(Program program) {
+		return optimize(program, true);
+	}
+
+	// Instrumented builds leave every scene a call of its own, so the report can count it.
+	public Program optimize(Program program, boolean inline) {
+		new ConstantFolder().fold(program);
+		new LoopOptimizer().optimize(program);
+		if (inline) {
+			new Inliner().mark(program);
+		}
+		return program;
+	}
+}
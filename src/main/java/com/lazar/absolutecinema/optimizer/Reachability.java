@@ -0,0 +1,345 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+
+import java.util.*;
+
+public class Reachability implements DeclVisitor<Void>, StmtVisitor<Void>, ExprVisitor<Void> {
+	private final Map<String, SceneDecl> scenes = new HashMap<>();
+	private final Map<String, SetupDecl> setups = new HashMap<>();
+	private final Map<String, VarDecl> globals = new HashMap<>();
+	private final java.util.Set<Decl> reachable = new HashSet<>();
+	private final java.util.Set<SceneDecl> reachableMethods = new HashSet<>();
+	private final java.util.Set<String> calledMethods = new HashSet<>();
+	private final Deque<Decl> worklist = new ArrayDeque<>();
+
+	public List<String> prune(Program program) {
+		List<Decl> duplicates = new ArrayList<>();
+		for (Node item : program.items) {
+			Decl previous = null;
+			if (item instanceof SceneDecl d) {
+				previous = scenes.putIfAbsent(d.name.getLexeme(), d);
+			}
+			else if (item instanceof SetupDecl d) {
+				previous = setups.putIfAbsent(d.name.getLexeme(), d);
+			}
+			else if (item instanceof VarDecl d) {
+				previous = globals.putIfAbsent(d.name.getLexeme(), d);
+			}
+			if (previous != null) {
+				duplicates.add(previous);
+				duplicates.add((Decl) item);
+			}
+		}
+		if (!scenes.containsKey("entrance")) {
+			return List.of();
+		}
+		markDecl(scenes.get("entrance"));
+		duplicates.forEach(this::markDecl);
+		for (VarDecl global : globals.values()) {
+			if (global.initializer != null && SideEffects.of(global.initializer)) {
+				markDecl(global);
+			}
+		}
+		while (!worklist.isEmpty()) {
+			worklist.pop().accept(this);
+		}
+
+		List<String> removed = new ArrayList<>();
+		program.items.removeIf(item -> {
+			if (item instanceof Decl d && !reachable.contains(d)) {
+				removed.add(describe(d));
+				return true;
+			}
+			return false;
+		});
+		for (Node item : program.items) {
+			if (item instanceof SetupDecl setup) {
+				setup.methods.removeIf(m -> {
+					if (!reachableMethods.contains(m)) {
+						removed.add("method:" + setup.name.getLexeme() + "." + m.name.getLexeme());
+						return true;
+					}
+					return false;
+				});
+			}
+		}
+		return removed;
+	}
+
+	private static String describe(Decl d) {
+		return switch (d) {
+			case SceneDecl s -> "scene:" + s.name.getLexeme();
+			case SetupDecl s -> "setup:" + s.name.getLexeme();
+			case VarDecl v -> "var:" + v.name.getLexeme();
+			default -> d.toString();
+		};
+	}
+
+	private void markDecl(Decl d) {
+		if (d != null && reachable.add(d)) {
+			worklist.push(d);
+		}
+	}
+
+	private void markMethod(SceneDecl m) {
+		if (reachableMethods.add(m)) {
+			worklist.push(m);
+		}
+	}
+
+	private void markName(String name) {
+		markDecl(scenes.get(name));
+		markDecl(globals.get(name));
+	}
+
+	private void markType(Token name) {
+		if (name != null && name.getType() == TokenType.IDENTIFIER) {
+			markDecl(setups.get(name.getLexeme()));
+		}
+	}
+
+	private void markType(LType type) {
+		if (type != null) {
+			markType(type.name);
+		}
+	}
+
+	private void params(List<Param> params) {
+		for (Param p : params) {
+			markType(p.type);
+		}
+	}
+
+	private void node(Node n) {
+		if (n instanceof Decl d) {
+			d.accept(this);
+		}
+		else if (n instanceof Stmt s) {
+			s.accept(this);
+		}
+	}
+
+	private void expr(Expr e) {
+		if (e != null) {
+			e.accept(this);
+		}
+	}
+
+	private void exprs(List<Expr> list) {
+		if (list != null) {
+			for (Expr e : list) {
+				expr(e);
+			}
+		}
+	}
+
+	@Override
+	public Void visitSetup(SetupDecl d) {
+		for (VarDecl field : d.fields) {
+			field.accept(this);
+		}
+		if (d.ctor != null) {
+			params(d.ctor.params);
+			d.ctor.body.accept(this);
+		}
+		for (SceneDecl method : d.methods) {
+			if (calledMethods.contains(method.name.getLexeme())) {
+				markMethod(method);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitScene(SceneDecl d) {
+		params(d.params);
+		markType(d.returnType);
+		if (d.body != null) {
+			d.body.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVar(VarDecl d) {
+		markType(d.type);
+		expr(d.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitBlock(Block s) {
+		for (Node n : s.statements) {
+			node(n);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVar(Var s) {
+		return s.decl.accept(this);
+	}
+
+	@Override
+	public Void visitExpr(ExprStmt s) {
+		expr(s.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitIf(If s) {
+		expr(s.ifBranch.cond);
+		s.ifBranch.block.accept(this);
+		for (Branch b : s.elifBranchList) {
+			expr(b.cond);
+			b.block.accept(this);
+		}
+		if (s.elseBranch != null && s.elseBranch.block != null) {
+			s.elseBranch.block.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhile(While s) {
+		expr(s.condition);
+		s.body.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFor(For s) {
+		node(s.initializer);
+		expr(s.condition);
+		expr(s.increment);
+		s.body.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitReturn(Return s) {
+		expr(s.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBreak(Break s) {
+		return null;
+	}
+
+	@Override
+	public Void visitContinue(Continue s) {
+		return null;
+	}
+
+	@Override
+	public Void visitLiteral(Literal e) {
+		return null;
+	}
+
+	@Override
+	public Void visitVariable(Variable e) {
+		markName(e.name.getLexeme());
+		return null;
+	}
+
+	@Override
+	public Void visitAssign(Assign e) {
+		expr(e.target);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinary(Binary e) {
+		expr(e.left);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitLogical(Logical e) {
+		expr(e.left);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitUnary(Unary e) {
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGrouping(Grouping e) {
+		expr(e.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitCall(Call e) {
+		if (e.callee instanceof Get g && calledMethods.add(g.name.getLexeme())) {
+			for (SetupDecl setup : setups.values()) {
+				if (reachable.contains(setup)) {
+					for (SceneDecl method : setup.methods) {
+						if (method.name.getLexeme().equals(g.name.getLexeme())) {
+							markMethod(method);
+						}
+					}
+				}
+			}
+		}
+		expr(e.callee);
+		exprs(e.arguments);
+		return null;
+	}
+
+	@Override
+	public Void visitGet(Get e) {
+		expr(e.object);
+		return null;
+	}
+
+	@Override
+	public Void visitSet(Set e) {
+		expr(e.object);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitIndex(Index e) {
+		expr(e.array);
+		expr(e.index);
+		return null;
+	}
+
+	@Override
+	public Void visitPostfix(Postfix e) {
+		expr(e.target);
+		return null;
+	}
+
+	@Override
+	public Void visitThis(This e) {
+		return null;
+	}
+
+	@Override
+	public Void visitActionNew(ActionNew e) {
+		markType(e.type.name);
+		exprs(e.args);
+		exprs(e.arrayInitializer);
+		return null;
+	}
+
+	@Override
+	public Void visitArrayLiteral(ArrayLiteral e) {
+		exprs(e.elements);
+		return null;
+	}
+}
@@ -0,0 +1,44 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+
+import java.util.List;
+
+final class SideEffects {
+	private SideEffects() {
+	}
+
+	static boolean of(Expr e) {
+		return switch (e) {
+			case null -> false;
+			case Literal l -> false;
+			case Variable v -> false;
+			case This t -> false;
+			case Call c -> true;
+			case Assign a -> true;
+			case Set s -> true;
+			case Postfix p -> true;
+			case Unary u -> u.op.getLexeme().equals("++") || u.op.getLexeme().equals("--") || of(u.right);
+			case Binary b -> of(b.left) || of(b.right);
+			case Logical l -> of(l.left) || of(l.right);
+			case Grouping g -> of(g.expr);
+			case Get g -> of(g.object);
+			case Index i -> of(i.array) || of(i.index);
+			case ActionNew n -> n.args != null || any(n.arrayInitializer);
+			case ArrayLiteral a -> any(a.elements);
+			default -> true;
+		};
+	}
+
+	private static boolean any(List<Expr> list) {
+		if (list != null) {
+			for (Expr e : list) {
+				if (of(e)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
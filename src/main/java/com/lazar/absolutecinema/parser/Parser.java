@@ -1,5 +1,7 @@
 package com.lazar.absolutecinema.parser;
 
+import com.lazar.absolutecinema.diagnostics.Diagnostic;
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
 import com.lazar.absolutecinema.lexer.Token;
 import com.lazar.absolutecinema.lexer.TokenType;
 import com.lazar.absolutecinema.parser.ast.*;
@@ -10,15 +12,29 @@ import java.util.List;
 
 public final class Parser {
 	private final List<Token> tokens;
+	private final Diagnostics diagnostics;
+	private final boolean ownsDiagnostics;
 	private int current = 0;
+	private boolean panicMode = false;
 
 	public Parser(List<Token> tokens) {
+		this(tokens, new Diagnostics(), true);
+	}
+
+	public Parser(List<Token> tokens, Diagnostics diagnostics) {
+		this(tokens, diagnostics, false);
+	}
+
+	private Parser(List<Token> tokens, Diagnostics diagnostics, boolean ownsDiagnostics) {
 		this.tokens = tokens != null ? tokens : Collections.emptyList();
+		this.diagnostics = diagnostics;
+		this.ownsDiagnostics = ownsDiagnostics;
 	}
 
 	public Program parseProgram() {
 		List<Node> items = new ArrayList<>();
 		while (!isAtEnd()) {
+			int start = current;
 			if (match(TokenType.SEMICOLON)) {
 				continue;
 			}
@@ -34,6 +50,12 @@ public final class Parser {
 			else {
 				error(peek(), "Invalid top level statement. Expected 'setup', 'scene', or 'var'.");
 			}
+			if (panicMode) {
+				recover(start, TokenType.SETUP, TokenType.SCENE, TokenType.VAR);
+			}
+		}
+		if (ownsDiagnostics) {
+			diagnostics.throwIfErrors();
 		}
 		return new Program(items);
 	}
@@ -57,6 +79,7 @@ public final class Parser {
 		ConstructorDecl ctor = null;
 		List<SceneDecl> methods = new ArrayList<>();
 		while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+			int start = current;
 			if (match(TokenType.VAR)) {
 				Token fname = consume(TokenType.IDENTIFIER, "Expected field name.");
 				consume(TokenType.COLON, "Expected ':' after field name.");
@@ -84,6 +107,9 @@ public final class Parser {
 			else {
 				error(peek(), "Expected field, constructor, or scene method in setup: '" + name.getLexeme() + "'.");
 			}
+			if (panicMode) {
+				recover(start, TokenType.VAR, TokenType.SCENE, TokenType.RIGHT_BRACE);
+			}
 		}
 		consume(TokenType.RIGHT_BRACE, "Expected '}' after setup body.");
 		return new SetupDecl(name, fields, ctor, methods);
@@ -133,6 +159,7 @@ public final class Parser {
 		consume(TokenType.LEFT_BRACE, "Expected '{' to start block.");
 		List<Node> items = new ArrayList<>();
 		while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+			int start = current;
 			if (match(TokenType.VAR)) {
 				items.add(new Var(parseLocalVarDecl()));
 			}
@@ -147,6 +174,9 @@ public final class Parser {
 			else {
 				items.add(statement());
 			}
+			if (panicMode) {
+				recoverStatement(start);
+			}
 		}
 		consume(TokenType.RIGHT_BRACE, "Expected '}' after block.");
 		return new Block(items);
@@ -155,12 +185,16 @@ public final class Parser {
 	private Block parseBlockFromAlreadyConsumedBrace() {
 		List<Node> items = new ArrayList<>();
 		while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+			int start = current;
 			if (match(TokenType.VAR)) {
 				items.add(new Var(parseLocalVarDecl()));
 			}
 			else {
 				items.add(statement());
 			}
+			if (panicMode) {
+				recoverStatement(start);
+			}
 		}
 		consume(TokenType.RIGHT_BRACE, "Expected '}' after block.");
 		return new Block(items);
@@ -281,7 +315,8 @@ public final class Parser {
 
 	private Expr assignment() {
 		Expr expr = or();
-		if (match(TokenType.EQUAL, TokenType.PLUS_EQUAL, TokenType.MINUS_EQUAL)) {
+		if (match(TokenType.EQUAL, TokenType.PLUS_EQUAL, TokenType.MINUS_EQUAL,
+			TokenType.STAR_EQUAL, TokenType.SLASH_EQUAL, TokenType.PERCENT_EQUAL)) {
 			Token op = previous();
 			Expr value = assignment();
 			if (expr instanceof Variable || expr instanceof Get || expr instanceof Index) {
@@ -577,19 +612,42 @@ public final class Parser {
 	}
 
 	private void error(Token token, String message) {
+		if (panicMode) {
+			return;
+		}
+		panicMode = true;
 		String where = token.getType() == TokenType.EOF ? " at end" : " at '" + token.getLexeme() + "'";
-		throw new ParseError("PARSER ERROR" + where + ": " + message + " (line: " + token.getLine() + ", col: " + token.getColumn() + ")");
+		diagnostics.report(Diagnostic.Stage.PARSER,
+			"PARSER ERROR" + where + ": " + message + " (line: " + token.getLine() + ", col: " + token.getColumn() + ")",
+			token.getLine(), token.getColumn());
 	}
 
-	private void synchronizeTo(TokenType stopAt) {
-		while (!isAtEnd() && !check(stopAt)) {
+	private void recover(int start, TokenType... stopAt) {
+		panicMode = false;
+		if (current == start) {
 			advance();
 		}
+		synchronizeTo(stopAt);
+	}
+
+	private void recoverStatement(int start) {
+		if (current > start && (previous().getType() == TokenType.SEMICOLON || previous().getType() == TokenType.RIGHT_BRACE)) {
+			panicMode = false;
+			return;
+		}
+		recover(start, TokenType.SEMICOLON, TokenType.RIGHT_BRACE, TokenType.VAR, TokenType.IF,
+			TokenType.KEEP_ROLLING_IF, TokenType.KEEP_ROLLING_DURING, TokenType.CUT);
+		match(TokenType.SEMICOLON);
 	}
 
-	private static final class ParseError extends RuntimeException {
-		ParseError(String msg) {
-			super(msg);
+	private void synchronizeTo(TokenType... stopAt) {
+		while (!isAtEnd()) {
+			for (TokenType t : stopAt) {
+				if (check(t)) {
+					return;
+				}
+			}
+			advance();
 		}
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.lazar.absolutecinema.parser.ast;
 
 import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.semantic.Binding;
 import com.lazar.absolutecinema.semantic.ResolvedType;
 
 public final class Assign implements Expr {
@@ -8,6 +9,7 @@ public final class Assign implements Expr {
 	public final Token op;
 	public final Expr value;
 	private ResolvedType resolvedType;
+	public Binding binding;
 
 	public Assign(Expr target, Token op, Expr value) {
 		this.target = target;
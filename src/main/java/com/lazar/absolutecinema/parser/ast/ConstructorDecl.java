@@ -8,6 +8,7 @@ public final class ConstructorDecl implements Node {
 	public final Token name;
 	public final List<Param> params;
 	public final Block body;
+	public int frameSize;
 
 	public ConstructorDecl(Token name, List<Param> params, Block body) {
 		this.name = name;
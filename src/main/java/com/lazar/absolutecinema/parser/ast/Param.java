@@ -1,10 +1,12 @@
 package com.lazar.absolutecinema.parser.ast;
 
 import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.semantic.Binding;
 
 public final class Param implements Node{
 	public final Token name;
 	public final LType type;
+	public Binding binding;
 
 	public Param(Token name, LType type) {
 		this.name = name;
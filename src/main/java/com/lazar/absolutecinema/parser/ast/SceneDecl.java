@@ -10,6 +10,8 @@ public final class SceneDecl implements Decl {
 	public final LType returnType;
 	public final Block body;
 	public final boolean isMethod;
+	public int frameSize;
+	public boolean inline;
 
 	public SceneDecl(Token name, List<Param> params, LType returnType, Block body, boolean isMethod) {
 		this.name = name;
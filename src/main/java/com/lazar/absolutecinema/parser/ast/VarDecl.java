@@ -1,11 +1,13 @@
 package com.lazar.absolutecinema.parser.ast;
 
 import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.semantic.Binding;
 
 public final class VarDecl implements Decl {
 	public final Token name;
 	public final LType type;
 	public final Expr initializer;
+	public Binding binding;
 
 	public VarDecl(Token name, LType type, Expr initializer) {
 		this.name = name;
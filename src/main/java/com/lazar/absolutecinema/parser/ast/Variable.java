@@ -1,12 +1,14 @@
 package com.lazar.absolutecinema.parser.ast;
 
 import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.semantic.Binding;
 import com.lazar.absolutecinema.semantic.ResolvedType;
 
 public final class Variable implements Expr {
 	public final Token name;
 	private ResolvedType resolvedType;
 	public Node resolvedDecl; 
+	public Binding binding;
 
 	public Variable(Token name) {
 		this.name = name;
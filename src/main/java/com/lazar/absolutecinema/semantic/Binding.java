@@ -0,0 +1,33 @@
+package com.lazar.absolutecinema.semantic;
+
+public record Binding(Kind kind, int slot, String owner, String name, ResolvedType type) {
+	public enum Kind {
+		LOCAL,
+		STATIC,
+		FIELD
+	}
+
+	public static Binding local(int slot, String name, ResolvedType type) {
+		return new Binding(Kind.LOCAL, slot, null, name, type);
+	}
+
+	public static Binding staticField(String name, ResolvedType type) {
+		return new Binding(Kind.STATIC, -1, null, name, type);
+	}
+
+	public static Binding field(String owner, String name, ResolvedType type) {
+		return new Binding(Kind.FIELD, -1, owner, name, type);
+	}
+
+	public boolean isLocal() {
+		return kind == Kind.LOCAL;
+	}
+
+	public int size() {
+		return slotSize(type);
+	}
+
+	public static int slotSize(ResolvedType type) {
+		return type.equals(ResolvedType.DOUBLE) ? 2 : 1;
+	}
+}
@@ -0,0 +1,342 @@
+package com.lazar.absolutecinema.semantic;
+
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.parser.ast.Set;
+
+import java.util.List;
+
+final class DeclFingerprint implements DeclVisitor<Void>, StmtVisitor<Void>, ExprVisitor<Void> {
+	private long hash = 0xcbf29ce484222325L;
+	private final StringBuilder text = new StringBuilder();
+
+	// The hash rules out most changes at a glance; only equal text means the declaration is unchanged.
+	record Fingerprint(long hash, String text) {
+		boolean matches(Fingerprint other) {
+			return other != null && hash == other.hash && text.equals(other.text);
+		}
+	}
+
+	static Fingerprint of(Decl decl) {
+		DeclFingerprint fingerprint = new DeclFingerprint();
+		decl.accept(fingerprint);
+		return new Fingerprint(fingerprint.hash, fingerprint.text.toString());
+	}
+
+	// Tokens as kind and lexeme, each lexeme prefixed with its length so no two sequences spell the same text.
+	static Fingerprint of(List<Token> tokens, int start, int end) {
+		DeclFingerprint fingerprint = new DeclFingerprint();
+		for (int i = start; i < end; i++) {
+			Token t = tokens.get(i);
+			fingerprint.mix(t.getType().ordinal());
+			fingerprint.mix(t.getLexeme());
+		}
+		return new Fingerprint(fingerprint.hash, fingerprint.text.toString());
+	}
+
+	private void mix(int value) {
+		hash ^= value;
+		hash *= 0x100000001b3L;
+		text.append(value).append(';');
+	}
+
+	private void mix(String s) {
+		hash ^= s.hashCode();
+		hash *= 0x100000001b3L;
+		text.append(s.length()).append(':').append(s);
+	}
+
+	private void mix(Token t) {
+		if (t == null) {
+			mix(0);
+		}
+		else {
+			mix(t.getLexeme());
+		}
+	}
+
+	private void mix(LType t) {
+		if (t == null) {
+			mix(0);
+			return;
+		}
+		mix(t.name);
+		mix(t.dimension);
+	}
+
+	private void node(Node n) {
+		if (n == null) {
+			mix("null");
+		}
+		else if (n instanceof Decl d) {
+			d.accept(this);
+		}
+		else if (n instanceof Stmt s) {
+			s.accept(this);
+		}
+	}
+
+	private void expr(Expr e) {
+		if (e == null) {
+			mix("null");
+		}
+		else {
+			e.accept(this);
+		}
+	}
+
+	private void exprs(List<Expr> list) {
+		if (list == null) {
+			mix("null");
+			return;
+		}
+		mix(list.size());
+		for (Expr e : list) {
+			expr(e);
+		}
+	}
+
+	private void params(List<Param> params) {
+		mix(params.size());
+		for (Param p : params) {
+			mix(p.name);
+			mix(p.type);
+		}
+	}
+
+	@Override
+	public Void visitSetup(SetupDecl d) {
+		mix("setup");
+		mix(d.name);
+		for (VarDecl field : d.fields) {
+			field.accept(this);
+		}
+		if (d.ctor != null) {
+			mix("ctor");
+			params(d.ctor.params);
+			d.ctor.body.accept(this);
+		}
+		for (SceneDecl method : d.methods) {
+			method.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitScene(SceneDecl d) {
+		mix("scene");
+		mix(d.name);
+		params(d.params);
+		mix(d.returnType);
+		node(d.body);
+		return null;
+	}
+
+	@Override
+	public Void visitVar(VarDecl d) {
+		mix("var");
+		mix(d.name);
+		mix(d.type);
+		expr(d.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitBlock(Block s) {
+		mix("{");
+		for (Node n : s.statements) {
+			node(n);
+		}
+		mix("}");
+		return null;
+	}
+
+	@Override
+	public Void visitVar(Var s) {
+		return s.decl.accept(this);
+	}
+
+	@Override
+	public Void visitExpr(ExprStmt s) {
+		mix("expr");
+		expr(s.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitIf(If s) {
+		mix("if");
+		expr(s.ifBranch.cond);
+		node(s.ifBranch.block);
+		for (Branch b : s.elifBranchList) {
+			mix("elif");
+			expr(b.cond);
+			node(b.block);
+		}
+		mix("else");
+		node(s.elseBranch != null ? s.elseBranch.block : null);
+		return null;
+	}
+
+	@Override
+	public Void visitWhile(While s) {
+		mix("while");
+		expr(s.condition);
+		node(s.body);
+		return null;
+	}
+
+	@Override
+	public Void visitFor(For s) {
+		mix("for");
+		node(s.initializer);
+		expr(s.condition);
+		expr(s.increment);
+		node(s.body);
+		return null;
+	}
+
+	@Override
+	public Void visitReturn(Return s) {
+		mix("cut");
+		expr(s.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBreak(Break s) {
+		mix("break");
+		return null;
+	}
+
+	@Override
+	public Void visitContinue(Continue s) {
+		mix("continue");
+		return null;
+	}
+
+	@Override
+	public Void visitLiteral(Literal e) {
+		mix("lit");
+		mix(e.value == null ? "null" : e.value.getClass().getSimpleName());
+		mix(String.valueOf(e.value));
+		return null;
+	}
+
+	@Override
+	public Void visitVariable(Variable e) {
+		mix("id");
+		mix(e.name);
+		return null;
+	}
+
+	@Override
+	public Void visitAssign(Assign e) {
+		mix("assign");
+		expr(e.target);
+		mix(e.op);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitBinary(Binary e) {
+		mix("binary");
+		expr(e.left);
+		mix(e.op);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitLogical(Logical e) {
+		mix("logical");
+		expr(e.left);
+		mix(e.op);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitUnary(Unary e) {
+		mix("unary");
+		mix(e.op);
+		expr(e.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGrouping(Grouping e) {
+		mix("(");
+		expr(e.expr);
+		mix(")");
+		return null;
+	}
+
+	@Override
+	public Void visitCall(Call e) {
+		mix("call");
+		expr(e.callee);
+		exprs(e.arguments);
+		return null;
+	}
+
+	@Override
+	public Void visitGet(Get e) {
+		mix("get");
+		expr(e.object);
+		mix(e.name);
+		return null;
+	}
+
+	@Override
+	public Void visitSet(Set e) {
+		mix("set");
+		expr(e.object);
+		mix(e.name);
+		mix(e.op);
+		expr(e.value);
+		return null;
+	}
+
+	@Override
+	public Void visitIndex(Index e) {
+		mix("index");
+		expr(e.array);
+		expr(e.index);
+		return null;
+	}
+
+	@Override
+	public Void visitPostfix(Postfix e) {
+		mix("postfix");
+		expr(e.target);
+		mix(e.op);
+		return null;
+	}
+
+	@Override
+	public Void visitThis(This e) {
+		mix("@");
+		return null;
+	}
+
+	@Override
+	public Void visitActionNew(ActionNew e) {
+		mix("action");
+		mix(e.type.name);
+		for (Token capacity : e.type.arrayCapacities) {
+			mix(capacity);
+		}
+		exprs(e.args);
+		exprs(e.arrayInitializer);
+		return null;
+	}
+
+	@Override
+	public Void visitArrayLiteral(ArrayLiteral e) {
+		mix("array");
+		exprs(e.elements);
+		return null;
+	}
+}
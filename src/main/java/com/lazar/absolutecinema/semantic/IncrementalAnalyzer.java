@@ -0,0 +1,168 @@
+package com.lazar.absolutecinema.semantic;
+
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Decl;
+import com.lazar.absolutecinema.parser.ast.Node;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.semantic.DeclFingerprint.Fingerprint;
+
+import java.util.*;
+
+public class IncrementalAnalyzer {
+	private final Map<String, Entry> cache = new HashMap<>();
+
+	private record Entry(Fingerprint fingerprint, String signature, Set<String> dependencies, Decl decl) {
+	}
+
+	public record Result(Program program, List<String> checked, List<String> reused) {
+	}
+
+	public Result analyze(Program program) {
+		Map<String, Fingerprint> fingerprints = new HashMap<>();
+		for (Node item : program.items) {
+			if (item instanceof Decl d) {
+				String key = Signatures.keyOf(d);
+				Entry cached = cache.get(key);
+				fingerprints.put(key, cached != null && cached.decl == d ? cached.fingerprint : DeclFingerprint.of(d));
+			}
+		}
+		return analyze(program, fingerprints);
+	}
+
+	// Splits the token stream into top-level declarations and only parses the spans whose tokens changed.
+	// Reused declarations keep the tokens of the run that checked them, so their line numbers can be stale.
+	public Result analyze(List<Token> tokens) {
+		List<Node> items = new ArrayList<>();
+		Map<String, Fingerprint> fingerprints = new HashMap<>();
+		int start = 0;
+		while (tokens.get(start).getType() != TokenType.EOF) {
+			int end = endOfTopLevel(tokens, start);
+			Fingerprint fingerprint = DeclFingerprint.of(tokens, start, end);
+			String key = keyOf(tokens, start);
+			Entry cached = key != null ? cache.get(key) : null;
+			if (cached != null && cached.fingerprint.matches(fingerprint)) {
+				items.add(cached.decl);
+			}
+			else {
+				List<Token> span = new ArrayList<>(tokens.subList(start, end));
+				span.add(tokens.get(tokens.size() - 1));
+				for (Node item : new Parser(span).parseProgram().items) {
+					items.add(item);
+					key = Signatures.keyOf((Decl) item);
+				}
+			}
+			if (key != null) {
+				fingerprints.put(key, fingerprint);
+			}
+			start = end;
+		}
+		return analyze(new Program(items), fingerprints);
+	}
+
+	private Result analyze(Program program, Map<String, Fingerprint> fingerprints) {
+		Map<String, String> signatures = new HashMap<>();
+		for (Node item : program.items) {
+			if (item instanceof Decl d) {
+				String key = Signatures.keyOf(d);
+				Entry cached = cache.get(key);
+				boolean unchanged = cached != null && cached.fingerprint.matches(fingerprints.get(key));
+				signatures.put(key, unchanged ? cached.signature : Signatures.signatureOf(d));
+			}
+		}
+
+		Set<String> changedSignatures = new HashSet<>();
+		for (Map.Entry<String, String> e : signatures.entrySet()) {
+			Entry cached = cache.get(e.getKey());
+			if (cached == null || !cached.signature.equals(e.getValue())) {
+				changedSignatures.add(e.getKey());
+			}
+		}
+		for (String key : cache.keySet()) {
+			if (!signatures.containsKey(key)) {
+				changedSignatures.add(key);
+			}
+		}
+		cache.keySet().retainAll(signatures.keySet());
+
+		List<String> reused = new ArrayList<>();
+		List<Decl> pending = new ArrayList<>();
+		for (int i = 0; i < program.items.size(); i++) {
+			if (!(program.items.get(i) instanceof Decl d)) {
+				continue;
+			}
+			String key = Signatures.keyOf(d);
+			Entry cached = cache.get(key);
+			if (cached != null && cached.fingerprint.matches(fingerprints.get(key))
+				&& Collections.disjoint(cached.dependencies, changedSignatures)) {
+				program.items.set(i, cached.decl);
+				reused.add(key);
+			}
+			else {
+				pending.add(d);
+			}
+		}
+
+		for (Decl d : pending) {
+			cache.remove(Signatures.keyOf(d));
+		}
+
+		Diagnostics diagnostics = new Diagnostics();
+		SemanticAnalyzer analyzer = new SemanticAnalyzer(program, diagnostics);
+		analyzer.declareGlobals();
+		List<String> checked = new ArrayList<>();
+		for (Decl d : pending) {
+			String key = Signatures.keyOf(d);
+			int errors = diagnostics.count();
+			Set<String> dependencies = analyzer.analyzeTracking(d);
+			if (diagnostics.count() == errors) {
+				cache.put(key, new Entry(fingerprints.get(key), signatures.get(key), dependencies, d));
+			}
+			checked.add(key);
+		}
+		diagnostics.throwIfErrors();
+		return new Result(program, checked, reused);
+	}
+
+	public void invalidate() {
+		cache.clear();
+	}
+
+	private static int endOfTopLevel(List<Token> tokens, int start) {
+		int depth = 0;
+		int i = start;
+		do {
+			TokenType type = tokens.get(i).getType();
+			if (type == TokenType.LEFT_BRACE || type == TokenType.LEFT_PAREN || type == TokenType.LEFT_BRACKET) {
+				depth++;
+			}
+			else if (type == TokenType.RIGHT_BRACE || type == TokenType.RIGHT_PAREN || type == TokenType.RIGHT_BRACKET) {
+				depth--;
+			}
+			i++;
+		}
+		while (tokens.get(i).getType() != TokenType.EOF && (depth > 0 || !startsDeclaration(tokens.get(i))));
+		return i;
+	}
+
+	private static boolean startsDeclaration(Token token) {
+		TokenType type = token.getType();
+		return type == TokenType.SCENE || type == TokenType.SETUP || type == TokenType.VAR;
+	}
+
+	private static String keyOf(List<Token> tokens, int start) {
+		Token keyword = tokens.get(start);
+		Token name = tokens.get(start + 1);
+		if (name.getType() != TokenType.IDENTIFIER) {
+			return null;
+		}
+		return switch (keyword.getType()) {
+			case SCENE -> Signatures.sceneKey(name.getLexeme());
+			case SETUP -> Signatures.setupKey(name.getLexeme());
+			case VAR -> Signatures.varKey(name.getLexeme());
+			default -> null;
+		};
+	}
+}
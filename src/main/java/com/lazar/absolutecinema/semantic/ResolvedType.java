@@ -8,6 +8,11 @@ public record ResolvedType(String name, int dimensions) {
 	public static final ResolvedType BOOL = new ResolvedType("bool", 0);
 	public static final ResolvedType NULL = new ResolvedType("null", 0);
 	public static final ResolvedType SCRAP = new ResolvedType("scrap", 0);
+	public static final ResolvedType ERROR = new ResolvedType("<error>", 0);
+
+	public boolean isError() {
+		return this.equals(ERROR);
+	}
 
 	public boolean isNumeric() {
 		return name.equals("int") || name.equals("double");
@@ -1,5 +1,7 @@
 package com.lazar.absolutecinema.semantic;
 
+import com.lazar.absolutecinema.diagnostics.Diagnostic;
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
 import com.lazar.absolutecinema.lexer.Token;
 import com.lazar.absolutecinema.lexer.TokenType;
 import com.lazar.absolutecinema.parser.ast.*;
@@ -9,12 +11,28 @@ import java.util.*;
 
 public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, ExprVisitor<ResolvedType> {
 	private final Program program;
+	private final Diagnostics diagnostics;
+	private final boolean ownsDiagnostics;
 	private final SymbolTable symbolTable = new SymbolTable();
 	private SetupDecl currentSetup = null;
 	private SceneDecl currentScene = null;
+	private boolean inFrame = false;
+	private int nextSlot = 0;
+	private int frameSize = 0;
+	private java.util.Set<String> dependencies = null;
 
 	public SemanticAnalyzer(Program program) {
+		this(program, new Diagnostics(), true);
+	}
+
+	public SemanticAnalyzer(Program program, Diagnostics diagnostics) {
+		this(program, diagnostics, false);
+	}
+
+	private SemanticAnalyzer(Program program, Diagnostics diagnostics, boolean ownsDiagnostics) {
 		this.program = program;
+		this.diagnostics = diagnostics;
+		this.ownsDiagnostics = ownsDiagnostics;
 		registerBuiltins();
 	}
 
@@ -34,6 +52,18 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	}
 
 	public void analyze() {
+		declareGlobals();
+		for (Node item : program.items) {
+			if (item instanceof Decl d) {
+				d.accept(this);
+			}
+		}
+		if (ownsDiagnostics) {
+			diagnostics.throwIfErrors();
+		}
+	}
+
+	void declareGlobals() {
 		for (Node item : program.items) {
 			if (item instanceof SetupDecl d) {
 				symbolTable.defineSetup(d);
@@ -46,10 +76,22 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 			}
 		}
 		checkEntranceFunction();
-		for (Node item : program.items) {
-			if (item instanceof Decl d) {
-				d.accept(this);
-			}
+	}
+
+	java.util.Set<String> analyzeTracking(Decl d) {
+		dependencies = new HashSet<>();
+		try {
+			d.accept(this);
+			return dependencies;
+		}
+		finally {
+			dependencies = null;
+		}
+	}
+
+	private void dependOn(String key) {
+		if (dependencies != null) {
+			dependencies.add(key);
 		}
 	}
 
@@ -61,10 +103,10 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 			}
 		}
 		if (entranceCount == 0) {
-			throw new RuntimeException("Semantic error: No entrance function found");
+			error(0, "Semantic error: No entrance function found");
 		}
 		if (entranceCount > 1) {
-			throw new RuntimeException("Semantic error: Multiple entrance function declarations found");
+			error(0, "Semantic error: Multiple entrance function declarations found");
 		}
 	}
 
@@ -73,16 +115,27 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		currentSetup = d;
 		symbolTable.enterScope();
 		for (VarDecl field : d.fields) {
-			symbolTable.define(field.name, resolveType(field.type), field);
+			ResolvedType type = resolveType(field.type);
+			field.binding = Binding.field(d.name.getLexeme(), field.name.getLexeme(), type);
+			symbolTable.define(field.name, type, field, field.binding);
+		}
+		symbolTable.enterScope();
+		enterFrame(1);
+		for (VarDecl field : d.fields) {
+			if (field.initializer != null) {
+				ResolvedType init = field.initializer.accept(this);
+				checkTypeMatch(field.binding.type(), init, field.name, "Type mismatch in initializer");
+			}
 		}
 		if (d.ctor != null) {
-			symbolTable.enterScope();
 			for (Param p : d.ctor.params) {
-				symbolTable.define(p.name, resolveType(p.type), p);
+				defineParam(p);
 			}
 			d.ctor.body.accept(this);
-			symbolTable.exitScope();
+			d.ctor.frameSize = frameSize;
 		}
+		exitFrame();
+		symbolTable.exitScope();
 		for (SceneDecl method : d.methods) {
 			method.accept(this);
 		}
@@ -96,12 +149,15 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		SceneDecl prev = currentScene;
 		currentScene = d;
 		symbolTable.enterScope();
+		enterFrame(d.isMethod ? 1 : 0);
 		for (Param p : d.params) {
-			symbolTable.define(p.name, resolveType(p.type), p);
+			defineParam(p);
 		}
 		if (d.body != null) {
 			d.body.accept(this);
 		}
+		d.frameSize = frameSize;
+		exitFrame();
 		symbolTable.exitScope();
 		currentScene = prev;
 		return null;
@@ -112,20 +168,47 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		ResolvedType type = resolveType(d.type);
 		if (d.initializer != null) {
 			ResolvedType init = d.initializer.accept(this);
-			if (d.initializer instanceof Call call) {
-				if (call.callee instanceof Variable var && var.name.getLexeme().equals("capture")) {
-					symbolTable.define(d.name, type, d);
-					return null;
-				}
+			boolean isCapture = d.initializer instanceof Call call
+				&& call.callee instanceof Variable var && var.name.getLexeme().equals("capture");
+			if (!isCapture) {
+				checkTypeMatch(type, init, d.name, "Type mismatch in initializer");
 			}
-			checkTypeMatch(type, init, d.name, "Type mismatch in initializer");
 		}
-		symbolTable.define(d.name, type, d);
+		if (!inFrame) {
+			return null;
+		}
+		d.binding = Binding.local(allocateSlot(type), d.name.getLexeme(), type);
+		symbolTable.define(d.name, type, d, d.binding);
 		return null;
 	}
 
+	private void defineParam(Param p) {
+		ResolvedType type = resolveType(p.type);
+		p.binding = Binding.local(allocateSlot(type), p.name.getLexeme(), type);
+		symbolTable.define(p.name, type, p, p.binding);
+	}
+
+	private void enterFrame(int firstSlot) {
+		inFrame = true;
+		nextSlot = firstSlot;
+		frameSize = firstSlot;
+	}
+
+	private void exitFrame() {
+		inFrame = false;
+		nextSlot = 0;
+	}
+
+	private int allocateSlot(ResolvedType type) {
+		int slot = nextSlot;
+		nextSlot += Binding.slotSize(type);
+		frameSize = Math.max(frameSize, nextSlot);
+		return slot;
+	}
+
 	@Override
 	public Void visitBlock(Block s) {
+		int slotMark = nextSlot;
 		symbolTable.enterScope();
 		for (Node n : s.statements) {
 			if (n instanceof Decl d) {
@@ -136,6 +219,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 			}
 		}
 		symbolTable.exitScope();
+		nextSlot = slotMark;
 		return null;
 	}
 
@@ -163,20 +247,20 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public Void visitIf(If s) {
 		ResolvedType condType = s.ifBranch.cond.accept(this);
-		if (!condType.equals(ResolvedType.BOOL)) {
-			throw new RuntimeException("Semantic error: If condition must be bool, got " + condType.name()
+		if (!condType.isError() && !condType.equals(ResolvedType.BOOL)) {
+			error(getLineNumber(s.ifBranch.cond), "Semantic error: If condition must be bool, got " + condType.name()
 				+ " at line " + getLineNumber(s.ifBranch.cond));
 		}
 		s.ifBranch.block.accept(this);
 		for (Branch b : s.elifBranchList) {
 			ResolvedType elifCondType = b.cond.accept(this);
-			if (!elifCondType.equals(ResolvedType.BOOL)) {
-				throw new RuntimeException("Semantic error: Elif condition must be bool, got " + elifCondType.name()
+			if (!elifCondType.isError() && !elifCondType.equals(ResolvedType.BOOL)) {
+				error(getLineNumber(b.cond), "Semantic error: Elif condition must be bool, got " + elifCondType.name()
 					+ " at line " + getLineNumber(b.cond));
 			}
 			b.block.accept(this);
 		}
-		if (s.elseBranch != null) {
+		if (s.elseBranch != null && s.elseBranch.block != null) {
 			s.elseBranch.block.accept(this);
 		}
 		return null;
@@ -185,8 +269,8 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public Void visitWhile(While s) {
 		ResolvedType condType = s.condition.accept(this);
-		if (!condType.equals(ResolvedType.BOOL)) {
-			throw new RuntimeException("Semantic error: While condition must be bool, got " + condType.name()
+		if (!condType.isError() && !condType.equals(ResolvedType.BOOL)) {
+			error(getLineNumber(s.condition), "Semantic error: While condition must be bool, got " + condType.name()
 				+ " at line " + getLineNumber(s.condition));
 		}
 		s.body.accept(this);
@@ -195,6 +279,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 
 	@Override
 	public Void visitFor(For s) {
+		int slotMark = nextSlot;
 		symbolTable.enterScope();
 		if (s.initializer instanceof Decl d) {
 			d.accept(this);
@@ -204,8 +289,8 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		}
 		if (s.condition != null) {
 			ResolvedType condType = s.condition.accept(this);
-			if (!condType.equals(ResolvedType.BOOL)) {
-				throw new RuntimeException("Semantic error: For condition must be bool, got " + condType.name()
+			if (!condType.isError() && !condType.equals(ResolvedType.BOOL)) {
+				error(getLineNumber(s.condition), "Semantic error: For condition must be bool, got " + condType.name()
 					+ " at line " + getLineNumber(s.condition));
 			}
 		}
@@ -214,13 +299,15 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		}
 		s.body.accept(this);
 		symbolTable.exitScope();
+		nextSlot = slotMark;
 		return null;
 	}
 
 	@Override
 	public Void visitReturn(Return s) {
 		if (currentScene == null) {
-			throw new RuntimeException("'cut' outside scene at line " + s.keyword.getLine());
+			error(s.keyword.getLine(), "'cut' outside scene at line " + s.keyword.getLine());
+			return null;
 		}
 		ResolvedType actual = (s.value != null) ? s.value.accept(this) : ResolvedType.SCRAP;
 		checkTypeMatch(resolveType(currentScene.returnType), actual, s.keyword, "Return type mismatch");
@@ -252,7 +339,16 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public ResolvedType visitVariable(Variable e) {
 		SymbolTable.Symbol sym = symbolTable.resolve(e.name);
+		if (sym == null) {
+			error(e.name.getLine(), "Semantic error: Undefined symbol: " + e.name.getLexeme() + " at line " + e.name.getLine());
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
+		}
 		e.resolvedDecl = sym.declaration;
+		e.binding = sym.binding;
+		if (sym.binding != null && sym.binding.kind() == Binding.Kind.STATIC) {
+			dependOn(Signatures.varKey(sym.binding.name()));
+		}
 		e.setType(sym.type);
 		return sym.type;
 	}
@@ -261,6 +357,14 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	public ResolvedType visitAssign(Assign e) {
 		ResolvedType left = e.target.accept(this);
 		ResolvedType right = e.value.accept(this);
+		if (e.target instanceof Variable v) {
+			e.binding = v.binding;
+		}
+		if (e.op.getType() != TokenType.EQUAL) {
+			checkCompoundAssignment(left, right, e.op);
+			e.setType(left);
+			return left;
+		}
 		if (e.value instanceof Call call) {
 			if (call.callee instanceof Variable var && var.name.getLexeme().equals("capture")) {
 				e.setType(left);
@@ -282,6 +386,10 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		ResolvedType l = e.left.accept(this);
 		ResolvedType r = e.right.accept(this);
 		String op = e.op.getLexeme();
+		if (l.isError() || r.isError()) {
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
+		}
 		if (op.equals("+") &&
 			(l.equals(ResolvedType.STRING) || r.equals(ResolvedType.STRING))) {
 			e.setType(ResolvedType.STRING);
@@ -289,7 +397,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		}
 		if (op.equals("<") || op.equals("<=") || op.equals(">") || op.equals(">=")) {
 			if (!l.isNumeric() || !r.isNumeric()) {
-				throw new RuntimeException("Semantic error: Relational operator operands must be numeric, got "
+				error(e.op.getLine(), "Semantic error: Relational operator operands must be numeric, got "
 					+ l.name() + " and " + r.name() + " at line " + e.op.getLine());
 			}
 			e.setType(ResolvedType.BOOL);
@@ -297,7 +405,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		}
 		if (op.equals("==") || op.equals("!=")) {
 			if (!l.equals(r)) {
-				throw new RuntimeException("Semantic error: Equality operator operands must be of same type, got "
+				error(e.op.getLine(), "Semantic error: Equality operator operands must be of same type, got "
 					+ l.name() + " and " + r.name() + " at line " + e.op.getLine());
 			}
 			e.setType(ResolvedType.BOOL);
@@ -305,28 +413,32 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		}
 		if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/") || op.equals("%")) {
 			if (!l.isNumeric() || !r.isNumeric()) {
-				throw new RuntimeException("Semantic error: Arithmetic operator operands must be numeric, got "
+				error(e.op.getLine(), "Semantic error: Arithmetic operator operands must be numeric, got "
 					+ l.name() + " and " + r.name() + " at line " + e.op.getLine());
+				e.setType(ResolvedType.ERROR);
+				return ResolvedType.ERROR;
 			}
-			ResolvedType res = (l == ResolvedType.DOUBLE || r == ResolvedType.DOUBLE)
+			ResolvedType res = (l.equals(ResolvedType.DOUBLE) || r.equals(ResolvedType.DOUBLE))
 				? ResolvedType.DOUBLE
 				: ResolvedType.INT;
 			e.setType(res);
 			return res;
 		}
-		throw new RuntimeException("Semantic error: Unknown binary operator " + op + " at line " + e.op.getLine());
+		error(e.op.getLine(), "Semantic error: Unknown binary operator " + op + " at line " + e.op.getLine());
+		e.setType(ResolvedType.ERROR);
+		return ResolvedType.ERROR;
 	}
 
 	@Override
 	public ResolvedType visitLogical(Logical e) {
 		ResolvedType l = e.left.accept(this);
 		ResolvedType r = e.right.accept(this);
-		if (!l.equals(ResolvedType.BOOL)) {
-			throw new RuntimeException("Semantic error: Logical operator left operand must be bool, got "
+		if (!l.isError() && !l.equals(ResolvedType.BOOL)) {
+			error(e.op.getLine(), "Semantic error: Logical operator left operand must be bool, got "
 				+ l.name() + " at line " + e.op.getLine());
 		}
-		if (!r.equals(ResolvedType.BOOL)) {
-			throw new RuntimeException("Semantic error: Logical operator right operand must be bool, got "
+		if (!r.isError() && !r.equals(ResolvedType.BOOL)) {
+			error(e.op.getLine(), "Semantic error: Logical operator right operand must be bool, got "
 				+ r.name() + " at line " + e.op.getLine());
 		}
 		e.setType(ResolvedType.BOOL);
@@ -337,6 +449,9 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	public ResolvedType visitUnary(Unary e) {
 		ResolvedType t = e.right.accept(this);
 		String op = e.op.getLexeme();
+		if (op.equals("++") || op.equals("--")) {
+			checkIncrement(e.right, t, e.op);
+		}
 		if (op.equals("int") || op.equals("double")) {
 			ResolvedType targetType = new ResolvedType(op, 0);
 			if (op.equals("double") && t.equals(ResolvedType.INT)) {
@@ -350,15 +465,21 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 						return targetType;
 					}
 					else {
-						throw new RuntimeException("Semantic error: Cannot cast " + doubleVal +
+						error(e.op.getLine(), "Semantic error: Cannot cast " + doubleVal +
 							" to int: decimal part is not all zeros at line " + e.op.getLine());
+						e.setType(targetType);
+						return targetType;
 					}
 				}
 				e.setType(targetType);
 				return targetType;
 			}
-			throw new RuntimeException("Semantic error: Invalid cast from " + t.name() + " to " + op +
-				" at line " + e.op.getLine() + ". Only int to double and double to int (with zero decimal part) are allowed.");
+			if (!t.isError()) {
+				error(e.op.getLine(), "Semantic error: Invalid cast from " + t.name() + " to " + op +
+					" at line " + e.op.getLine() + ". Only int to double and double to int (with zero decimal part) are allowed.");
+			}
+			e.setType(targetType);
+			return targetType;
 		}
 		e.setType(t);
 		return t;
@@ -384,26 +505,36 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 				ret = ResolvedType.STRING;
 			}
 			else {
+				dependOn(Signatures.sceneKey(funcName));
 				SceneDecl scene = symbolTable.getScene(funcName);
 				if (scene == null) {
 					SymbolTable.Symbol sym = symbolTable.resolve(v.name);
-					if (sym.declaration instanceof VarDecl) {
-						throw new RuntimeException("Semantic error: Attempting to call non-function variable '"
+					if (sym != null && sym.declaration instanceof VarDecl) {
+						error(v.name.getLine(), "Semantic error: Attempting to call non-function variable '"
 							+ funcName + "' at line " + v.name.getLine());
 					}
-					throw new RuntimeException("Semantic error: Undefined scene: " + funcName
-						+ " at line " + v.name.getLine());
+					else {
+						error(v.name.getLine(), "Semantic error: Undefined scene: " + funcName
+							+ " at line " + v.name.getLine());
+					}
+					ret = ResolvedType.ERROR;
+				}
+				else {
+					validateArgs(scene.params, args, v.name);
+					ret = resolveType(scene.returnType);
 				}
-				validateArgs(scene.params, args, v.name);
-				ret = resolveType(scene.returnType);
 			}
 		}
 		else if (e.callee instanceof Get g) {
 			ResolvedType obj = g.object.accept(this);
-			SetupDecl setup = symbolTable.getSetup(obj.name());
+			SetupDecl setup = obj.isError() ? null : lookupSetup(obj);
 			if (setup == null) {
-				throw new RuntimeException("Semantic error: Type '" + obj.name()
-					+ "' has no methods at line " + g.name.getLine());
+				if (!obj.isError()) {
+					error(g.name.getLine(), "Semantic error: Type '" + obj.name()
+						+ "' has no methods at line " + g.name.getLine());
+				}
+				e.setType(ResolvedType.ERROR);
+				return ResolvedType.ERROR;
 			}
 			boolean found = false;
 			for (SceneDecl m : setup.methods) {
@@ -415,14 +546,16 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 				}
 			}
 			if (!found) {
-				throw new RuntimeException("Semantic error: Method '" + g.name.getLexeme()
+				error(g.name.getLine(), "Semantic error: Method '" + g.name.getLexeme()
 					+ "' not found in setup '" + obj.name()
 					+ "' at line " + g.name.getLine());
+				ret = ResolvedType.ERROR;
 			}
 		}
 		else {
-			throw new RuntimeException("Semantic error: Attempting to call non-function expression at line "
+			error(getLineNumber(e.callee), "Semantic error: Attempting to call non-function expression at line "
 				+ getLineNumber(e.callee));
+			ret = ResolvedType.ERROR;
 		}
 		e.setType(ret);
 		return ret;
@@ -431,10 +564,14 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public ResolvedType visitGet(Get e) {
 		ResolvedType obj = e.object.accept(this);
-		SetupDecl setup = symbolTable.getSetup(obj.name());
+		SetupDecl setup = obj.isError() ? null : lookupSetup(obj);
 		if (setup == null) {
-			throw new RuntimeException("Cannot access member of non-setup type '"
-				+ obj.name() + "' at line " + e.name.getLine());
+			if (!obj.isError()) {
+				error(e.name.getLine(), "Cannot access member of non-setup type '"
+					+ obj.name() + "' at line " + e.name.getLine());
+			}
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
 		}
 		for (VarDecl f : setup.fields) {
 			if (f.name.getLexeme().equals(e.name.getLexeme())) {
@@ -443,17 +580,23 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 				return t;
 			}
 		}
-		throw new RuntimeException("Field '" + e.name.getLexeme()
+		error(e.name.getLine(), "Field '" + e.name.getLexeme()
 			+ "' not found in setup '" + obj.name() + "'");
+		e.setType(ResolvedType.ERROR);
+		return ResolvedType.ERROR;
 	}
 
 	@Override
 	public ResolvedType visitSet(Set e) {
 		ResolvedType obj = e.object.accept(this);
 		ResolvedType val = e.value.accept(this);
-		SetupDecl setup = symbolTable.getSetup(obj.name());
+		SetupDecl setup = obj.isError() ? null : lookupSetup(obj);
 		if (setup == null) {
-			throw new RuntimeException("Cannot set member of non-setup type '" + obj.name() + "'");
+			if (!obj.isError()) {
+				error(e.name.getLine(), "Cannot set member of non-setup type '" + obj.name() + "'");
+			}
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
 		}
 		ResolvedType fieldT = null;
 		for (VarDecl f : setup.fields) {
@@ -463,8 +606,15 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 			}
 		}
 		if (fieldT == null) {
-			throw new RuntimeException("Field '" + e.name.getLexeme()
+			error(e.name.getLine(), "Field '" + e.name.getLexeme()
 				+ "' not found in setup '" + obj.name() + "'");
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
+		}
+		if (e.op.getType() != TokenType.EQUAL) {
+			checkCompoundAssignment(fieldT, val, e.op);
+			e.setType(fieldT);
+			return fieldT;
 		}
 		checkTypeMatch(fieldT, val, e.name, "Field assignment mismatch");
 		e.setType(val);
@@ -475,13 +625,17 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	public ResolvedType visitIndex(Index e) {
 		ResolvedType arr = e.array.accept(this);
 		ResolvedType idx = e.index.accept(this);
-		if (!idx.equals(ResolvedType.INT)) {
-			throw new RuntimeException("Semantic error: Array index must be int, got " + idx.name()
+		if (!idx.isError() && !idx.equals(ResolvedType.INT)) {
+			error(getLineNumber(e.index), "Semantic error: Array index must be int, got " + idx.name()
 				+ " at line " + getLineNumber(e.index));
 		}
 		if (arr.dimensions() <= 0) {
-			throw new RuntimeException("Semantic error: Cannot index non-array type '" + arr.name()
-				+ "' at line " + getLineNumber(e.array));
+			if (!arr.isError()) {
+				error(getLineNumber(e.array), "Semantic error: Cannot index non-array type '" + arr.name()
+					+ "' at line " + getLineNumber(e.array));
+			}
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
 		}
 		ResolvedType res = new ResolvedType(arr.name(), arr.dimensions() - 1);
 		e.setType(res);
@@ -491,6 +645,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public ResolvedType visitPostfix(Postfix e) {
 		ResolvedType t = e.target.accept(this);
+		checkIncrement(e.target, t, e.op);
 		e.setType(t);
 		return t;
 	}
@@ -498,7 +653,9 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public ResolvedType visitThis(This e) {
 		if (currentSetup == null) {
-			throw new RuntimeException("'@' used outside setup at line " + e.atToken.getLine());
+			error(e.atToken.getLine(), "'@' used outside setup at line " + e.atToken.getLine());
+			e.setType(ResolvedType.ERROR);
+			return ResolvedType.ERROR;
 		}
 		ResolvedType t = new ResolvedType(currentSetup.name.getLexeme(), 0);
 		e.setType(t);
@@ -508,13 +665,31 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	@Override
 	public ResolvedType visitActionNew(ActionNew e) {
 		ResolvedType t = new ResolvedType(e.type.name.getLexeme(), e.type.dimension);
+		if (e.type.name.getType() == TokenType.IDENTIFIER) {
+			dependOn(Signatures.setupKey(t.name()));
+		}
+		if (e.type.dimension == 0 && e.type.name.getType() == TokenType.IDENTIFIER) {
+			SetupDecl setup = lookupSetup(t);
+			List<ResolvedType> args = new ArrayList<>();
+			if (e.args != null) {
+				for (Expr arg : e.args) {
+					args.add(arg.accept(this));
+				}
+			}
+			if (setup == null) {
+				error(e.action.getLine(), "Semantic error: Undefined setup: " + t.name() + " at line " + e.action.getLine());
+			}
+			else {
+				validateArgs(setup.ctor != null ? setup.ctor.params : List.of(), args, e.type.name);
+			}
+		}
 		if (e.type.dimension > 0 && e.arrayInitializer != null) {
 			ResolvedType elem =
 				new ResolvedType(e.type.name.getLexeme(), e.type.dimension - 1);
 			for (Expr ex : e.arrayInitializer) {
 				ResolvedType it = ex.accept(this);
-				if (!elem.equals(it)) {
-					throw new RuntimeException("Array initializer element mismatch: expected "
+				if (!it.isError() && !elem.equals(it)) {
+					error(e.action.getLine(), "Array initializer element mismatch: expected "
 						+ elem.name() + " but got " + it.name());
 				}
 			}
@@ -531,8 +706,8 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		ResolvedType first = e.elements.get(0).accept(this);
 		for (int i = 1; i < e.elements.size(); i++) {
 			ResolvedType cur = e.elements.get(i).accept(this);
-			if (!first.equals(cur)) {
-				throw new RuntimeException("Array literal element type mismatch");
+			if (!first.isError() && !cur.isError() && !first.equals(cur)) {
+				error(getLineNumber(e.elements.get(i)), "Array literal element type mismatch");
 			}
 		}
 		ResolvedType t = new ResolvedType(first.name(), first.dimensions() + 1);
@@ -541,28 +716,69 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 	}
 
 	private ResolvedType resolveType(LType l) {
-		return (l == null) ? ResolvedType.SCRAP
-			: new ResolvedType(l.name.getLexeme(), l.dimension);
+		if (l == null) {
+			return ResolvedType.SCRAP;
+		}
+		ResolvedType type = new ResolvedType(l.name.getLexeme(), l.dimension);
+		if (l.name.getType() == TokenType.IDENTIFIER) {
+			dependOn(Signatures.setupKey(type.name()));
+		}
+		return type;
+	}
+
+	private SetupDecl lookupSetup(ResolvedType type) {
+		dependOn(Signatures.setupKey(type.name()));
+		return symbolTable.getSetup(type.name());
 	}
 
 	private void checkTypeMatch(ResolvedType exp, ResolvedType act, Token t, String m) {
-		if (exp != ResolvedType.NULL && act != ResolvedType.NULL && !exp.equals(act)) {
-			throw new RuntimeException("Semantic error: " + m + " at line " + t.getLine()
+		if (exp != ResolvedType.NULL && act != ResolvedType.NULL && !exp.isError() && !act.isError()
+			&& !exp.equals(act)) {
+			error(t.getLine(), "Semantic error: " + m + " at line " + t.getLine()
 				+ ". Expected " + exp.name() + " but got " + act.name());
 		}
 	}
 
+	private void checkCompoundAssignment(ResolvedType target, ResolvedType value, Token op) {
+		if (target.isError() || value.isError()) {
+			return;
+		}
+		boolean numeric = target.equals(ResolvedType.INT) && value.equals(ResolvedType.INT)
+			|| target.equals(ResolvedType.DOUBLE) && (value.equals(ResolvedType.INT) || value.equals(ResolvedType.DOUBLE));
+		boolean append = target.equals(ResolvedType.STRING) && op.getType() == TokenType.PLUS_EQUAL;
+		if (!numeric && !append) {
+			error(op.getLine(), "Semantic error: Operator " + op.getLexeme() + " cannot combine " + target.name()
+				+ " with " + value.name() + " at line " + op.getLine());
+		}
+	}
+
+	private void checkIncrement(Expr target, ResolvedType type, Token op) {
+		if (!(target instanceof Variable || target instanceof Index || target instanceof Get)) {
+			error(op.getLine(), "Semantic error: Operand of " + op.getLexeme()
+				+ " must be a variable, array element or field at line " + op.getLine());
+		}
+		else if (!type.isError() && !type.equals(ResolvedType.INT) && !type.equals(ResolvedType.DOUBLE)) {
+			error(op.getLine(), "Semantic error: Operator " + op.getLexeme() + " requires int or double but got "
+				+ type.name() + " at line " + op.getLine());
+		}
+	}
+
 	private void validateArgs(List<Param> params, List<ResolvedType> args, Token t) {
 		if (params.size() != args.size()) {
-			throw new RuntimeException("Semantic error: Parameter count mismatch for '"
+			error(t.getLine(), "Semantic error: Parameter count mismatch for '"
 				+ t.getLexeme() + "' at line " + t.getLine() + ". Expected " + params.size()
 				+ " parameters but got " + args.size());
+			return;
 		}
 		for (int i = 0; i < params.size(); i++) {
 			checkTypeMatch(resolveType(params.get(i).type), args.get(i), t, "Parameter type mismatch");
 		}
 	}
 
+	private void error(int line, String message) {
+		diagnostics.report(Diagnostic.Stage.SEMANTIC, message, line, 0);
+	}
+
 	private int getLineNumber(Expr expr) {
 		if (expr instanceof Binary b) {
 			return b.op.getLine();
@@ -594,8 +810,8 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		return 0;
 	}
 
-	private static class SymbolTable {
-		record Symbol(ResolvedType type, Node declaration) {
+	private class SymbolTable {
+		record Symbol(ResolvedType type, Node declaration, Binding binding) {
 		}
 
 		private final List<Map<String, Symbol>> scopes = new ArrayList<>();
@@ -614,20 +830,22 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 			scopes.remove(scopes.size() - 1);
 		}
 
-		void define(Token n, ResolvedType t, Node d) {
+		void define(Token n, ResolvedType t, Node d, Binding b) {
 			Map<String, Symbol> currentScope = scopes.get(scopes.size() - 1);
 			if (currentScope.containsKey(n.getLexeme())) {
-				throw new RuntimeException("Semantic error: Duplicate declaration of '" + n.getLexeme()
+				error(n.getLine(), "Semantic error: Duplicate declaration of '" + n.getLexeme()
 					+ "' in the same scope at line " + n.getLine());
+				return;
 			}
-			currentScope.put(n.getLexeme(), new Symbol(t, d));
+			currentScope.put(n.getLexeme(), new Symbol(t, d, b));
 		}
 
 		void defineSetup(SetupDecl d) {
 			String n = d.name.getLexeme();
 			if (setups.containsKey(n)) {
-				throw new RuntimeException("Semantic error: Duplicate setup declaration: " + n
+				error(d.name.getLine(), "Semantic error: Duplicate setup declaration: " + n
 					+ " at line " + d.name.getLine());
+				return;
 			}
 			setups.put(n, d);
 		}
@@ -635,16 +853,17 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 		void defineScene(SceneDecl d) {
 			String n = d.name.getLexeme();
 			if (scenes.containsKey(n)) {
-				throw new RuntimeException("Semantic error: Duplicate scene declaration: " + n
+				error(d.name.getLine(), "Semantic error: Duplicate scene declaration: " + n
 					+ " at line " + d.name.getLine());
+				return;
 			}
 			scenes.put(n, d);
 		}
 
 		void defineGlobalVar(VarDecl v) {
-			define(v.name,
-				new ResolvedType(v.type.name.getLexeme(), v.type.dimension),
-				v);
+			ResolvedType type = new ResolvedType(v.type.name.getLexeme(), v.type.dimension);
+			v.binding = Binding.staticField(v.name.getLexeme(), type);
+			define(v.name, type, v, v.binding);
 		}
 
 		Symbol resolve(Token n) {
@@ -653,8 +872,7 @@ public class SemanticAnalyzer implements DeclVisitor<Void>, StmtVisitor<Void>, E
 					return scopes.get(i).get(n.getLexeme());
 				}
 			}
-			throw new RuntimeException("Semantic error: Undefined symbol: "
-				+ n.getLexeme() + " at line " + n.getLine());
+			return null;
 		}
 
 		SetupDecl getSetup(String n) {
@@ -0,0 +1,83 @@
+package com.lazar.absolutecinema.semantic;
+
+import com.lazar.absolutecinema.parser.ast.*;
+
+import java.util.List;
+
+final class Signatures {
+	private Signatures() {
+	}
+
+	static String sceneKey(String name) {
+		return "scene:" + name;
+	}
+
+	static String setupKey(String name) {
+		return "setup:" + name;
+	}
+
+	static String varKey(String name) {
+		return "var:" + name;
+	}
+
+	static String keyOf(Decl decl) {
+		return switch (decl) {
+			case SceneDecl s -> sceneKey(s.name.getLexeme());
+			case SetupDecl s -> setupKey(s.name.getLexeme());
+			case VarDecl v -> varKey(v.name.getLexeme());
+			default -> throw new IllegalArgumentException("Unknown declaration: " + decl);
+		};
+	}
+
+	static String signatureOf(Decl decl) {
+		StringBuilder sb = new StringBuilder();
+		switch (decl) {
+			case SceneDecl s -> appendScene(sb, s);
+			case SetupDecl s -> {
+				sb.append("{");
+				for (VarDecl field : s.fields) {
+					sb.append(field.name.getLexeme()).append(':');
+					appendType(sb, field.type);
+					sb.append(';');
+				}
+				if (s.ctor != null) {
+					sb.append("ctor");
+					appendParams(sb, s.ctor.params);
+					sb.append(';');
+				}
+				for (SceneDecl method : s.methods) {
+					appendScene(sb, method);
+					sb.append(';');
+				}
+				sb.append("}");
+			}
+			case VarDecl v -> appendType(sb, v.type);
+			default -> throw new IllegalArgumentException("Unknown declaration: " + decl);
+		}
+		return sb.toString();
+	}
+
+	private static void appendScene(StringBuilder sb, SceneDecl scene) {
+		sb.append(scene.name.getLexeme());
+		appendParams(sb, scene.params);
+		sb.append(':');
+		appendType(sb, scene.returnType);
+	}
+
+	private static void appendParams(StringBuilder sb, List<Param> params) {
+		sb.append('(');
+		for (Param p : params) {
+			appendType(sb, p.type);
+			sb.append(',');
+		}
+		sb.append(')');
+	}
+
+	private static void appendType(StringBuilder sb, LType type) {
+		if (type == null) {
+			sb.append("scrap");
+			return;
+		}
+		sb.append(type.name.getLexeme()).append("[]".repeat(type.dimension));
+	}
+}
@@ -0,0 +1,102 @@
+package com.lazar.absolutecinema.util;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.lexer.TokenType;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Maps the execution samples of a JFR recording back onto the lines of the script that was compiled, as a flat
+// profile. A sample counts as self time for the line of its innermost script frame, and as total time once for every
+// script line on its stack. Record with: java -XX:StartFlightRecording=filename=run.jfr -cp <classes> Main
+public class JfrProfile {
+	public record Line(int line, long self, long total) {
+	}
+
+	public record Profile(long samples, List<Line> lines) {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: JfrProfile <recording.jfr> <script.ac>");
+			return;
+		}
+		String source = Files.readString(Path.of(args[1]), StandardCharsets.UTF_8);
+		Profile profile = read(Path.of(args[0]), scriptClasses(source));
+		print(profile, source.lines().toList(), System.out);
+	}
+
+	// The generated Main class plus one class per setup. Scene holder classes are matched by their Main$ prefix.
+	public static Set<String> scriptClasses(String source) {
+		Set<String> classes = new HashSet<>();
+		classes.add("Main");
+		List<Token> tokens = new Lexer(source).lex();
+		for (int i = 0; i + 1 < tokens.size(); i++) {
+			if (tokens.get(i).getType() == TokenType.SETUP && tokens.get(i + 1).getType() == TokenType.IDENTIFIER) {
+				classes.add(tokens.get(i + 1).getLexeme());
+			}
+		}
+		return classes;
+	}
+
+	public static Profile read(Path recording, Set<String> classes) throws IOException {
+		Map<Integer, long[]> counts = new HashMap<>();
+		long samples = 0;
+		try (RecordingFile file = new RecordingFile(recording)) {
+			while (file.hasMoreEvents()) {
+				RecordedEvent event = file.readEvent();
+				if (!event.getEventType().getName().equals("jdk.ExecutionSample") || event.getStackTrace() == null) {
+					continue;
+				}
+				samples++;
+				Set<Integer> seen = new HashSet<>();
+				for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+					int line = frame.getLineNumber();
+					if (!frame.isJavaFrame() || line <= 0 || !inScript(classes, frame.getMethod().getType().getName())) {
+						continue;
+					}
+					long[] count = counts.computeIfAbsent(line, k -> new long[2]);
+					if (seen.isEmpty()) {
+						count[0]++;
+					}
+					if (seen.add(line)) {
+						count[1]++;
+					}
+				}
+			}
+		}
+		List<Line> lines = new ArrayList<>();
+		counts.forEach((line, count) -> lines.add(new Line(line, count[0], count[1])));
+		lines.sort(Comparator.comparingLong(Line::self).reversed()
+			.thenComparing(Comparator.comparingLong(Line::total).reversed())
+			.thenComparingInt(Line::line));
+		return new Profile(samples, lines);
+	}
+
+	public static void print(Profile profile, List<String> source, PrintStream out) {
+		long inScript = profile.lines().stream().mapToLong(Line::self).sum();
+		out.printf("%d samples, %d in script code%n", profile.samples(), inScript);
+		out.printf("%7s %7s %6s  %s%n", "self", "total", "line", "source");
+		for (Line line : profile.lines()) {
+			String text = line.line() <= source.size() ? source.get(line.line() - 1).strip() : "";
+			out.printf("%6.1f%% %6.1f%% %6d  %s%n", percent(line.self(), profile.samples()),
+				percent(line.total(), profile.samples()), line.line(), text);
+		}
+	}
+
+	private static boolean inScript(Set<String> classes, String type) {
+		return classes.contains(type) || type.startsWith("Main$");
+	}
+
+	private static double percent(long count, long samples) {
+		return samples == 0 ? 0 : 100.0 * count / samples;
+	}
+}
@@ -0,0 +1,443 @@
+package com.lazar.absolutecinema.bench;
+
+import com.lazar.absolutecinema.diagnostics.Diagnostics;
+import com.lazar.absolutecinema.generator.Generator;
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.optimizer.ConstantFolder;
+import com.lazar.absolutecinema.optimizer.Inliner;
+import com.lazar.absolutecinema.optimizer.LoopOptimizer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompilerBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+	private static final Map<byte[], Method> HOT = new IdentityHashMap<>();
+
+	public static void main(String[] args) {
+		String which = args.length > 0 ? args[0] : "all";
+		if (which.equals("all") || which.equals("validation")) {
+			validation();
+		}
+		if (which.equals("all") || which.equals("inlining")) {
+			inlining();
+		}
+		if (which.equals("all") || which.equals("concat")) {
+			concatenation();
+		}
+		if (which.equals("all") || which.equals("peephole")) {
+			peephole();
+		}
+		if (which.equals("all") || which.equals("codegen")) {
+			codegen();
+		}
+		if (which.equals("all") || which.equals("loops")) {
+			loops();
+		}
+		if (which.equals("all") || which.equals("instrument")) {
+			instrumentation();
+		}
+		if (which.equals("all") || which.equals("startup")) {
+			startup();
+		}
+		if (which.equals("all") || which.equals("tables")) {
+			tables();
+		}
+	}
+
+	private static void validation() {
+		List<String> corpus = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			corpus.add(i % 2 == 0 ? semanticErrorScript(i) : syntaxErrorScript(i));
+		}
+		long[] errors = new long[1];
+		double ms = measure(() -> {
+			errors[0] = 0;
+			for (String source : corpus) {
+				Diagnostics diagnostics = new Diagnostics();
+				List<Token> tokens = new Lexer(source, diagnostics).lex();
+				Program program = new Parser(tokens, diagnostics).parseProgram();
+				if (!diagnostics.hasErrors()) {
+					new SemanticAnalyzer(program, diagnostics).analyze();
+				}
+				errors[0] += diagnostics.count();
+			}
+		});
+		report("validation", corpus.size(), ms);
+		System.out.printf("  %d diagnostics per pass (%.0f diagnostics/s)%n", errors[0], errors[0] / (ms / 1000.0));
+	}
+
+	// Each run defines the class in a fresh loader, so the calls are mostly interpreted as in a short script.
+	private static void inlining() {
+		String source = callHeavyScript();
+		byte[] plain = compile(source, false);
+		byte[] inlined = compile(source, true);
+		int runs = 20;
+		double plainMs = measure(() -> runColdly(plain, runs));
+		double inlinedMs = measure(() -> runColdly(inlined, runs));
+		System.out.printf("inlining: %.2f ms per %d cold runs without, %.2f ms with (%.2fx); %d -> %d bytes%n",
+			plainMs, runs, inlinedMs, plainMs / inlinedMs, plain.length, inlined.length);
+	}
+
+	private static void concatenation() {
+		byte[] bytes = compile(concatenationScript(), true);
+		int runs = 20;
+		double ms = measure(() -> runColdly(bytes, runs));
+		System.out.printf("concat: %.2f ms per %d cold runs; %d bytes%n", ms, runs, bytes.length);
+	}
+
+	// The sample programs read stdin, so only their size is compared; the two benchmark scripts are also run.
+	private static void peephole() {
+		int before = 0;
+		int after = 0;
+		try (DirectoryStream<Path> samples = Files.newDirectoryStream(Path.of("src/main/resources"), "*-correct-*.ac")) {
+			for (Path sample : samples) {
+				String source = Files.readString(sample);
+				before += compile(source, true, false).length;
+				after += compile(source, true, true).length;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		System.out.printf("peephole: samples %d -> %d bytes%n", before, after);
+		int runs = 20;
+		for (String source : List.of(callHeavyScript(), concatenationScript())) {
+			byte[] plain = compile(source, false, false);
+			byte[] optimized = compile(source, false, true);
+			double plainMs = measure(() -> runColdly(plain, runs));
+			double optimizedMs = measure(() -> runColdly(optimized, runs));
+			System.out.printf("  %.2f ms per %d cold runs without, %.2f ms with; %d -> %d bytes%n",
+				plainMs, runs, optimizedMs, plain.length, optimized.length);
+		}
+	}
+
+	private static void codegen() {
+		Program program = new Parser(new Lexer(largeScript(2000)).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		int[] bytes = new int[1];
+		double ms = measure(() -> bytes[0] = new Generator().generate(program).getBinaryIR().length);
+		System.out.printf("codegen: %.2f ms for 2000 scenes and a setup; %d bytes%n", ms, bytes[0]);
+	}
+
+	private static void loops() {
+		String source = loopScript();
+		byte[] plain = compile(source, false, true, false);
+		byte[] optimized = compile(source, false, true, true);
+		int runs = 20;
+		double plainMs = measure(() -> runColdly(plain, runs));
+		double optimizedMs = measure(() -> runColdly(optimized, runs));
+		System.out.printf("loops: %.2f ms per %d cold runs without, %.2f ms with (%.2fx); %d -> %d bytes%n",
+			plainMs, runs, optimizedMs, plainMs / optimizedMs, plain.length, optimized.length);
+	}
+
+	// Measured cold and warmed up; the instrumented class registers a report hook, which prints when the run exits.
+	private static void instrumentation() {
+		for (String source : List.of(callHeavyScript(), loopScript())) {
+			byte[] plain = compile(source, false, true, true, false);
+			byte[] probed = compile(source, false, true, true, true);
+			int runs = 20;
+			double plainMs = measure(() -> runColdly(plain, runs));
+			double probedMs = measure(() -> runColdly(probed, runs));
+			double plainHotMs = measure(() -> runHot(plain, runs));
+			double probedHotMs = measure(() -> runHot(probed, runs));
+			System.out.printf("instrument: %.2f ms per %d cold runs without, %.2f ms with (%.2fx); warm %.2f ms, %.2f ms (%.2fx)%n",
+				plainMs, runs, probedMs, probedMs / plainMs, plainHotMs, probedHotMs, probedHotMs / plainHotMs);
+		}
+	}
+
+	// A fresh loader per run, so every run pays for loading and verifying whatever classes the script touches.
+	private static void startup() {
+		String source = largeScript(10000);
+		for (int perClass : new int[]{0, 500, 50}) {
+			Map<String, byte[]> classes = compileClasses(source, perClass);
+			int size = classes.values().stream().mapToInt(bytes -> bytes.length).sum();
+			double ms = measure(() -> runColdly(classes));
+			System.out.printf("startup: %.2f ms per cold run with %d scenes per class (%d classes, %d bytes)%n",
+				ms, perClass, classes.size(), size);
+		}
+	}
+
+	private static void tables() {
+		String source = tableScript(5000);
+		byte[] bytes = compile(source, false);
+		int runs = 20;
+		double coldMs = measure(() -> runColdly(bytes, runs));
+		double hotMs = measure(() -> runHot(bytes, runs));
+		System.out.printf("tables: %d bytes, %.2f ms per %d cold runs, %.2f ms warm%n", bytes.length, coldMs, runs, hotMs);
+	}
+
+	// A lookup table rebuilt on every pass of a loop.
+	private static String tableScript(int size) {
+		StringBuilder sb = new StringBuilder("scene entrance(var args: string[]): scrap {\n\tvar sum: int = 0;\n");
+		sb.append("\tkeepRollingDuring (var i: int = 0; i < 200; i++) {\n");
+		sb.append("\t\tvar table: int[] = action int[").append(size).append("] {");
+		for (int i = 0; i < size; i++) {
+			sb.append(i > 0 ? ", " : "").append((i * 7919) % 100003 - 50000);
+		}
+		sb.append("};\n\t\ttable[i] = 0;\n\t\tsum = sum + table[i * 7] + table[").append(size - 1).append("];\n\t}\n");
+		sb.append("\tproject(\"\" + sum);\n}\n");
+		return sb.toString();
+	}
+
+	private static String largeScript(int scenes) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("setup Box {\n\tvar v: int;\n\tBox(var v: int) {\n\t\t@.v = v;\n\t}\n}\n");
+		for (int i = 0; i < scenes; i++) {
+			sb.append("scene s").append(i).append("(var a: int, var d: double): Box {\n");
+			sb.append("\tvar b: Box = null;\n");
+			sb.append("\tkeepRollingDuring (var i: int = 0; i < a; i++) {\n");
+			sb.append("\t\tif (i % 3 == 0 && d > 1.5 || a == ").append(i).append(") {\n");
+			sb.append("\t\t\tb = action Box(i + ").append(i).append(");\n");
+			sb.append("\t\t} elif (d < 0.5) {\n");
+			sb.append("\t\t\td += 1.5;\n");
+			sb.append("\t\t} else {\n");
+			sb.append("\t\t\tproject(\"s").append(i).append(" \" + i + \" \" + d);\n");
+			sb.append("\t\t}\n");
+			sb.append("\t}\n");
+			sb.append("\tcut b;\n");
+			sb.append("}\n");
+		}
+		sb.append("scene entrance(var args: string[]): scrap {\n\tproject(\"\" + s0(3, 2.0).v);\n}\n");
+		return sb.toString();
+	}
+
+	private static String concatenationScript() {
+		return """
+			scene row(var i: int, var price: double, var flag: bool): string {
+				cut "#" + i + " price=" + price + " flag=" + flag + " code=" + (i % 26) + ";";
+			}
+			scene entrance(var args: string[]): scrap {
+				var last: string = "";
+				var total: int = 0;
+				keepRollingDuring (var i: int = 0; i < 20000; i++) {
+					last = row(i, i * 0.25, i % 3 == 0) + " | " + last + "";
+					if (i % 100 == 0) {
+						last = "";
+						total = total + 1;
+					}
+				}
+				project(total + ": " + last);
+			}
+			""";
+	}
+
+	private static String loopScript() {
+		return """
+			var scale: int = 3;
+			scene entrance(var args: string[]): scrap {
+				var n: int = 200;
+				var rate: double = 1.5;
+				var cells: int[] = action int[4096];
+				var total: double = 0.0;
+				keepRollingDuring (var round: int = 0; round < 40; round++) {
+					keepRollingDuring (var i: int = 0; i < 1000; i++) {
+						cells[i * 4] = cells[i * 4 + 1] + i * scale;
+						keepRollingDuring (var j: int = 0; j < 3; j++) {
+							total = total + rate * n / (scale * 2 + 1) + cells[i * 4 + j];
+						}
+					}
+				}
+				project("" + total);
+			}
+			""";
+	}
+
+	private static String callHeavyScript() {
+		return """
+			scene add(var a: int, var b: int): int {
+				cut a + b;
+			}
+			scene max(var a: int, var b: int): int {
+				if (a > b) {
+					cut a;
+				}
+				cut b;
+			}
+			scene clamp(var x: int, var lo: int, var hi: int): int {
+				if (x < lo) {
+					cut lo;
+				}
+				if (x > hi) {
+					cut hi;
+				}
+				cut x;
+			}
+			scene entrance(var args: string[]): scrap {
+				var total: int = 0;
+				keepRollingDuring (var i: int = 0; i < 20000; i++) {
+					total = add(total, clamp(max(i % 7, i % 5), 1, 5));
+				}
+				project("" + total);
+			}
+			""";
+	}
+
+	private static byte[] compile(String source, boolean inline) {
+		return compile(source, inline, true);
+	}
+
+	private static byte[] compile(String source, boolean inline, boolean peephole) {
+		return compile(source, inline, peephole, false);
+	}
+
+	private static byte[] compile(String source, boolean inline, boolean peephole, boolean loops) {
+		return compile(source, inline, peephole, loops, false);
+	}
+
+	private static byte[] compile(String source, boolean inline, boolean peephole, boolean loops, boolean instrument) {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		new ConstantFolder().fold(program);
+		if (loops) {
+			new LoopOptimizer().optimize(program);
+		}
+		if (inline) {
+			new Inliner().mark(program);
+		}
+		return new Generator(peephole, null, instrument).generate(program).getBinaryIR();
+	}
+
+	private static Map<String, byte[]> compileClasses(String source, int scenesPerClass) {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		new ConstantFolder().fold(program);
+		return new Generator(true, null, false, Generator.DEFAULT_MAX_METHOD_SIZE, scenesPerClass).generate(program)
+			.getClasses();
+	}
+
+	private static void runColdly(Map<String, byte[]> classes) {
+		ClassLoader loader = new ClassLoader(CompilerBenchmark.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			loader.loadClass("Main").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			System.setOut(original);
+		}
+	}
+
+	private static void runColdly(byte[] bytes, int runs) {
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < runs; i++) {
+				load(bytes).invoke(null, (Object) new String[0]);
+			}
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			System.setOut(original);
+		}
+	}
+
+	// One class per script, so the JIT gets to compile it across runs and measures.
+	private static void runHot(byte[] bytes, int runs) {
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			Method main = HOT.computeIfAbsent(bytes, CompilerBenchmark::load);
+			for (int i = 0; i < runs; i++) {
+				main.invoke(null, (Object) new String[0]);
+			}
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			System.setOut(original);
+		}
+	}
+
+	private static Method load(byte[] bytes) {
+		ClassLoader loader = new ClassLoader(CompilerBenchmark.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				if (!name.equals("Main")) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		try {
+			return loader.loadClass("Main").getMethod("main", String[].class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String semanticErrorScript(int seed) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("scene s").append(i).append("(var a: int): int {\n");
+			sb.append("\tvar x: int = \"text").append(seed).append("\";\n");
+			sb.append("\tvar y: string = a;\n");
+			sb.append("\tif (a) { project(missing").append(i).append("); }\n");
+			sb.append("\tcut a + ").append(i).append(";\n");
+			sb.append("}\n");
+		}
+		sb.append("scene entrance(var args: string[]): scrap {\n\tproject(\"\" + s0(1, 2));\n}\n");
+		return sb.toString();
+	}
+
+	private static String syntaxErrorScript(int seed) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("scene s").append(i).append("(var a: int): int {\n");
+			sb.append("\tvar x: int = ;\n");
+			sb.append("\tvar y: int = a + ").append(seed).append(" # 1;\n");
+			sb.append("\tif (a > 1 { x = 2; }\n");
+			sb.append("\tcut a\n");
+			sb.append("}\n");
+		}
+		sb.append("scene entrance(var args: string[]): scrap {\n\tproject(\"done\");\n}\n");
+		return sb.toString();
+	}
+
+	private static double measure(Runnable task) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			task.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			task.run();
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+	}
+
+	private static void report(String name, int scripts, double ms) {
+		System.out.printf("%s: %.2f ms per pass over %d scripts (%.0f scripts/s)%n", name, ms, scripts,
+			scripts / (ms / 1000.0));
+	}
+}
@@ -0,0 +1,97 @@
+package com.lazar.absolutecinema.diagnostics;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.lexer.Token;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticsTest {
+
+	private static Diagnostics validate(String source) {
+		Diagnostics diagnostics = new Diagnostics();
+		List<Token> tokens = new Lexer(source, diagnostics).lex();
+		Program program = new Parser(tokens, diagnostics).parseProgram();
+		if (!diagnostics.hasErrors()) {
+			new SemanticAnalyzer(program, diagnostics).analyze();
+		}
+		return diagnostics;
+	}
+
+	private static List<Integer> lines(Diagnostics diagnostics) {
+		return diagnostics.getDiagnostics().stream().map(Diagnostic::line).toList();
+	}
+
+	@Test void lexerReportsEveryBadCharacter() {
+		Diagnostics diagnostics = new Diagnostics();
+		new Lexer("""
+			scene entrance(var args: string[]): scrap {
+				var a: int = 1 # 2;
+				var b: int = 3 $ 4;
+				var s: string = "open
+			""", diagnostics).lex();
+		assertEquals(3, diagnostics.count());
+		assertTrue(diagnostics.getDiagnostics().stream().allMatch(d -> d.stage() == Diagnostic.Stage.LEXER));
+		assertEquals(List.of(2, 3, 4), lines(diagnostics));
+	}
+
+	@Test void parserRecoversAtStatementBoundaries() {
+		Diagnostics diagnostics = validate("""
+			scene entrance(var args: string[]): scrap {
+				var a: int = ;
+				var b: int = 2;
+				project("x" +);
+				if (b > 1 {
+					b = 3;
+				}
+				project("done");
+			}
+			scene other(): int {
+				cut 1
+			}
+			""");
+		assertEquals(List.of(2, 4, 5, 12), lines(diagnostics));
+		assertTrue(diagnostics.getDiagnostics().stream().allMatch(d -> d.stage() == Diagnostic.Stage.PARSER));
+	}
+
+	@Test void parserRecoversAtTopLevel() {
+		Diagnostics diagnostics = validate("""
+			junk junk junk;
+			scene entrance(var args: string[]): scrap {
+				project("ok");
+			}
+			var x int = 1;
+			var y: int = 2;
+			""");
+		assertEquals(List.of(1, 5), lines(diagnostics));
+	}
+
+	@Test void semanticErrorsDoNotCascade() {
+		Diagnostics diagnostics = validate("""
+			scene entrance(var args: string[]): scrap {
+				var x: int = "hello";
+				var y: string = missing + 1;
+				var z: int = y * 2;
+				if (x) {
+					project(y);
+				}
+				undefinedScene(1);
+			}
+			""");
+		assertEquals(List.of(2, 3, 4, 5, 8), lines(diagnostics));
+		assertTrue(diagnostics.getDiagnostics().stream().allMatch(d -> d.stage() == Diagnostic.Stage.SEMANTIC));
+	}
+
+	@Test void legacyEntryPointsStillThrowWithAllMessages() {
+		CompilationException e = assertThrows(CompilationException.class,
+			() -> new Lexer("var a: int = 1 # 2 $ 3;").lex());
+		assertEquals(2, e.getDiagnostics().size());
+		assertEquals(0, e.getStackTrace().length);
+		assertThrows(RuntimeException.class, () -> new Parser(new Lexer("scene (").lex()).parseProgram());
+	}
+}
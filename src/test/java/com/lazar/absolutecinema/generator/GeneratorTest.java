@@ -0,0 +1,879 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.optimizer.Optimizer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.parser.ast.SceneDecl;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.CodeSizeEvaluator;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneratorTest {
+
+	private static Program analyze(String source) {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		return program;
+	}
+
+	private static String run(String source) throws Exception {
+		return run(analyze(source));
+	}
+
+	private static String runOptimized(String source) throws Exception {
+		return run(new Optimizer().optimize(analyze(source)));
+	}
+
+	private static String run(Program program) throws Exception {
+		return run(load(new Generator().generate(program).getClasses()));
+	}
+
+	private static ClassLoader load(Map<String, byte[]> classes) {
+		return new ClassLoader(GeneratorTest.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+	}
+
+	private static String run(ClassLoader loader) throws Exception {
+		PrintStream original = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+		try {
+			loader.loadClass("Main").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		}
+		finally {
+			System.setOut(original);
+		}
+		return out.toString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+	}
+
+	// ---------- Bindings ----------
+
+	@Test void localsAndParams() throws Exception {
+		assertEquals("7 2.5 7:5.0\n", run("""
+			scene add(var a: int, var d: double): string {
+				var r: double = d * 2.0;
+				cut a + ":" + r;
+			}
+			scene entrance(var args: string[]): scrap {
+				var x: int = 7;
+				var d: double = 2.5;
+				project(x + " " + d + " " + add(x, d));
+			}
+			"""));
+	}
+
+	@Test void globals() throws Exception {
+		assertEquals("3\n", run("""
+			var counter: int = 0;
+			scene bump(): scrap {
+				counter = counter + 1;
+			}
+			scene entrance(var args: string[]): scrap {
+				keepRollingDuring (var i: int = 0; i < 3; i++) {
+					bump();
+				}
+				project("" + counter);
+			}
+			"""));
+	}
+
+	@Test void globalInitializersRunInSourceOrderBeforeTheEntrance() throws Exception {
+		String source = """
+			var g: int = 5;
+			var s: string = "hi";
+			var d: double = 2.5;
+			var log: string = "[";
+			var traced: int = trace(g + 2);
+			var unused: int = trace(8);
+			scene trace(var n: int): int {
+				log = log + n;
+				project("init " + n);
+				cut n;
+			}
+			scene entrance(var args: string[]): scrap {
+				project(g + s + " " + d + " " + traced + " " + log);
+			}
+			""";
+		String expected = "init 7\ninit 8\n5hi 2.5 7 [78\n";
+		assertEquals(expected, run(source));
+		assertEquals(expected, runOptimized(source));
+		Program pruned = new Parser(new Lexer(source).lex()).parseProgram();
+		assertEquals(List.of(), new Optimizer().pruneUnreachable(pruned));
+		new SemanticAnalyzer(pruned).analyze();
+		assertEquals(expected, run(pruned));
+	}
+
+	@Test void concatenationFormatsEveryType() throws Exception {
+		assertEquals("n=-3 c=z ok=false d=0.1 null 7.0 [\u0001]\n", run("""
+			scene entrance(var args: string[]): scrap {
+				var n: int = -3;
+				var c: char = 'z';
+				var ok: bool = n > 0;
+				var d: double = 0.1;
+				var s: string = null;
+				project("n=" + n + " c=" + c + " ok=" + ok + " d=" + d + " " + s + " " + (n + 10.0) + " [\u0001]");
+			}
+			"""));
+	}
+
+	@Test void conditionsCompareWithoutOverflowOrNaNSurprises() throws Exception {
+		assertEquals("le lt-nan ge-nan ne-nan ok short 1\n", run("""
+			var hits: int = 0;
+			scene hit(): bool {
+				hits = hits + 1;
+				cut true;
+			}
+			scene entrance(var args: string[]): scrap {
+				var min: int = -2147483647 - 1;
+				var zero: double = 0.0;
+				var nan: double = zero / zero;
+				var out: string = "";
+				if (min <= 1) { out = out + "le"; }
+				if (!(nan < 1.0)) { out = out + " lt-nan"; }
+				if (!(nan >= 1)) { out = out + " ge-nan"; }
+				if (nan != nan) { out = out + " ne-nan"; }
+				var ok: bool = min < 0 && (1 > 2 || 2.5 >= 2);
+				if (ok) { out = out + " ok"; }
+				if ((false && hit()) || (hit() || hit())) { out = out + " short"; }
+				project(out + " " + hits);
+			}
+			"""));
+	}
+
+	@Test void compoundAssignmentsAndIncrements() throws Exception {
+		assertEquals("i=14 old=3 pre=5 d=5.25 g=6 xs=[1, 13.5] s=ab1 c=7:1\n", run("""
+			var g: int;
+			setup Cell {
+				var n: int;
+				var tag: string = "t";
+				scene bump(): int {
+					n += 5;
+					cut ++n;
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var i: int = 3;
+				var old: int = i++;
+				var pre: int = ++i;
+				i *= 3;
+				i -= 1;
+				i %= 100;
+				var d: double = 1.5;
+				d += 1;
+				d /= 2.0;
+				d *= 5;
+				--d;
+				g = 2;
+				g += g++ * 2 + 1;
+				g--;
+				var xs: double[] = action double[2];
+				xs[0]++;
+				xs[0 + 1] += 12;
+				++xs[1];
+				xs[1] += xs[0]-- - 0.5;
+				xs[0] += 1;
+				var s: string = "a";
+				s += "b";
+				s += 1;
+				var c: Cell = action Cell();
+				c.n = 1;
+				var first: int = c.bump();
+				c.n -= first;
+				c.n++;
+				project("i=" + i + " old=" + old + " pre=" + pre + " d=" + d + " g=" + g
+					+ " xs=[" + int(xs[0]) + ", " + xs[1] + "] s=" + s + " c=" + first + ":" + c.n);
+			}
+			"""));
+	}
+
+	@Test void elifChainsDispatchLikeTheirTests() throws Exception {
+		assertEquals("zero one two-or-three two-or-three other minus big other|space digit letter none|"
+			+ "add sub Aa BB none none none|false true false true\n", run("""
+			var missing: string;
+			scene num(var n: int): string {
+				if (n == 0) {
+					cut "zero";
+				} elif (1 == n) {
+					cut "one";
+				} elif (n == 2 || (n == 3)) {
+					cut "two-or-three";
+				} elif (n == -7) {
+					cut "minus";
+				} elif (n == 1000000) {
+					cut "big";
+				} elif (n == 2) {
+					cut "never";
+				}
+				cut "other";
+			}
+			scene kind(var c: char): string {
+				var out: string = "none";
+				if (c == ' ') {
+					out = "space";
+				} elif (c == '0' || c == '7') {
+					out = "digit";
+				} elif (c == 'a') {
+					out = "letter";
+				}
+				cut out;
+			}
+			scene op(var s: string): string {
+				if (s == "add") {
+					cut "add";
+				} elif (s == "sub") {
+					cut "sub";
+				} elif (s == "Aa") {
+					cut "Aa";
+				} elif (s == "BB") {
+					cut "BB";
+				} else {
+					cut "none";
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var built: string = "C";
+				built += "a";
+				var out: string = num(0) + " " + num(1) + " " + num(2) + " " + num(3) + " " + num(4) + " " + num(-7) + " " + num(1000000)
+					+ " " + num(-1) + "|" + kind(' ') + " " + kind('7') + " " + kind('a') + " " + kind('b') + "|"
+					+ op("add") + " " + op("s" + "ub") + " " + op("Aa") + " " + op("BB") + " " + op("Ca") + " " + op(missing) + " " + op("")
+					+ "|" + (built == "Ca" == false) + " " + (missing != "x") + " " + ('a' == 'b') + " " + (true != false);
+				project(out);
+			}
+			"""));
+	}
+
+	@Test void selfTailCallsRunWithoutGrowingTheStack() throws Exception {
+		assertEquals("1784293664 150000.0 4:3 120\n", run("""
+			scene sum(var n: int, var acc: int): int {
+				if (n == 0) {
+					cut acc;
+				}
+				var next: int = n - 1;
+				cut (sum(next, acc + n));
+			}
+			scene halves(var n: int, var d: double): double {
+				keepRollingIf (n > 0) {
+					cut halves(n - 1, d + 0.5);
+				}
+				cut d;
+			}
+			scene swap(var a: int, var b: int, var rounds: int): string {
+				if (rounds == 0) {
+					cut a + ":" + b;
+				}
+				cut swap(b, a, rounds - 1);
+			}
+			scene fact(var n: int): int {
+				if (n <= 1) {
+					cut 1;
+				}
+				cut n * fact(n - 1);
+			}
+			scene entrance(var args: string[]): scrap {
+				project(sum(1000000, 0) + " " + halves(300000, 0.0) + " " + swap(3, 4, 5) + " " + fact(5));
+			}
+			"""));
+	}
+
+	// ---------- Setups ----------
+
+	@Test void setupsCompileToClasses() throws Exception {
+		assertEquals("p:3 2.5 p\n13\n", run("""
+			setup Account {
+				var owner: string = "p";
+				var balance: int;
+				var rate: double;
+				Account(var start: int, var r: double) {
+					balance = start;
+					@.rate = r;
+				}
+				scene deposit(var amount: int): int {
+					balance = balance + amount;
+					cut @.balance;
+				}
+				scene label(): string {
+					cut owner + ":" + balance;
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var a: Account = action Account(1, 2.5);
+				a.deposit(2);
+				var other: Account = a;
+				project(other.label() + " " + a.rate + " " + a.owner);
+				a.balance = 10;
+				project("" + a.deposit(3));
+			}
+			"""));
+	}
+
+	@Test void framesMergeSetupsWithoutLoadingThem() throws Exception {
+		assertEquals("3 true none\n", run("""
+			setup Pair {
+				var a: int;
+				var ok: bool;
+				Pair(var a: int, var ok: bool) {
+					@.a = a;
+					@.ok = ok;
+				}
+			}
+			setup Other {
+				var tag: string;
+			}
+			scene pick(var n: int): Pair {
+				var p: Pair = null;
+				if (n > 1) {
+					p = action Pair(n * 2, n > 2 && n < 10 || n == 0);
+					p.a = n;
+				}
+				cut p;
+			}
+			scene entrance(var args: string[]): scrap {
+				var first: Pair = pick(3);
+				var second: Pair = pick(1);
+				var o: Other = action Other();
+				var label: string = "none";
+				if (first.a > 5) {
+					label = o.tag;
+				}
+				project(first.a + " " + first.ok + " " + label);
+			}
+			"""));
+	}
+
+	@Test void parallelGenerationIsByteIdentical() {
+		StringBuilder source = new StringBuilder("setup Box {\n\tvar v: int;\n\tscene twice(): int { cut v * 2; }\n}\n");
+		for (int i = 0; i < 200; i++) {
+			source.append("scene s").append(i).append("(var a: int): int {\n")
+				.append("\tvar b: Box = action Box();\n")
+				.append("\tkeepRollingDuring (var i: int = 0; i < a; i++) { b.v += i % ").append(i + 1).append("; }\n")
+				.append("\tcut b.twice();\n}\n");
+		}
+		source.append("scene entrance(var args: string[]): scrap { project(\"\" + s7(3)); }\n");
+		GenerationResult first = new Generator(true, null, false, Generator.DEFAULT_MAX_METHOD_SIZE, 0, true)
+			.generate(analyze(source.toString()));
+		GenerationResult second = new Generator().generate(analyze(source.toString()));
+		assertEquals(first.getClasses().keySet(), second.getClasses().keySet());
+		for (String name : first.getClasses().keySet()) {
+			assertArrayEquals(first.getClasses().get(name), second.getClasses().get(name), name);
+		}
+		assertEquals(first.getPlainTextIR(), second.getPlainTextIR());
+		assertTrue(first.dumpIr().contains("s199"));
+		assertThrows(RuntimeException.class, second::dumpIr);
+	}
+
+	// ---------- Optimizer ----------
+
+	@Test void foldingPreservesOutput() throws Exception {
+		String source = """
+			scene entrance(var args: string[]): scrap {
+				var n: int = 10;
+				var d: double = double(7) / 2 + n;
+				project("" + (-7 / 2) + " " + (-7 % 3) + " " + (7.5 % 2) + " " + d);
+				if (2 * 3 == 6) {
+					project("six");
+				}
+				elif (n > 0) {
+					project("positive");
+				}
+				keepRollingIf (1 > 2) {
+					project("never");
+				}
+				keepRollingIf (true) {
+					n = n - 3;
+					if (n < 0) {
+						cut;
+					}
+					project("n=" + n);
+				}
+			}
+			""";
+		String expected = "-3 -1 1.5 13.5\nsix\nn=7\nn=4\nn=1\n";
+		assertEquals(expected, run(source));
+		assertEquals(expected, runOptimized(source));
+	}
+
+	@Test void inliningPreservesOutput() throws Exception {
+		String source = """
+			var calls: int = 0;
+			scene add(var a: int, var b: int): int {
+				cut a + b;
+			}
+			scene clamp(var x: double, var lo: double, var hi: double): double {
+				if (x < lo) {
+					cut lo;
+				}
+				if (x > hi) {
+					cut hi;
+				}
+				cut x;
+			}
+			scene sumTo(var n: int): int {
+				var s: int = 0;
+				keepRollingDuring (var i: int = 1; i <= n; i++) {
+					s = add(s, i);
+				}
+				cut s;
+			}
+			scene count(): scrap {
+				calls = calls + 1;
+			}
+			scene label(var n: int): string {
+				if (n > 1) {
+					cut "many";
+				}
+			}
+			scene fact(var n: int): int {
+				if (n <= 1) {
+					cut 1;
+				}
+				cut n * fact(n - 1);
+			}
+			scene entrance(var args: string[]): scrap {
+				var total: double = 0.5;
+				keepRollingDuring (var i: int = 0; i < 4; i++) {
+					total = total + clamp(double(add(i, i)), 1.0, 5.0);
+					count();
+				}
+				project(total + " " + sumTo(10) + " " + calls + " " + label(2) + " " + label(0) + " " + fact(5));
+			}
+			""";
+		String expected = "12.5 55 4 many null 120\n";
+		assertEquals(expected, run(source));
+		assertEquals(expected, runOptimized(source));
+	}
+
+	@Test void loopOptimizationPreservesOutput() throws Exception {
+		String source = """
+			var scale: int = 0;
+			setup Grid {
+				var width: int;
+				var cells: int[];
+				Grid(var width: int) {
+					@.width = width;
+					cells = action int[12];
+					keepRollingDuring (var i: int = 0; i < width; i++) {
+						cells[i * 4 + 1] = i * width;
+					}
+				}
+				scene total(): int {
+					var sum: int = 0;
+					keepRollingDuring (var i: int = 0; i < 6; i += 2) {
+						sum += cells[i * 2 + 1] + width * 3;
+						width = width - 1;
+					}
+					cut sum;
+				}
+			}
+			scene bump(): int {
+				scale = scale + 1;
+				cut scale;
+			}
+			scene entrance(var args: string[]): scrap {
+				var n: int = 5;
+				var zero: int = 0;
+				var xs: int[] = null;
+				var label: string = "";
+				var d: double = 0.5;
+				keepRollingDuring (var i: int = 10; i > 0; i -= 3) {
+					var k: int = i * 3;
+					if (k < 20) {
+						label = label + (n * 2) + ":" + k + "/" + (d * n) + " ";
+						keepRollingDuring (var j: int = 0; j < n * i && j * 7 < 30; j++) {
+							label = label + j * 7 + (n - 1);
+						}
+						label += ";";
+					}
+				}
+				keepRollingDuring (var i: int = 0; i < 3; i++) {
+					label = label + " " + (scale * 10) + bump();
+				}
+				keepRollingIf (n > 0 && (zero == 0 || n / zero > 1)) {
+					n--;
+				}
+				keepRollingDuring (var i: int = 0; i < 0; i++) {
+					project("" + xs[0] + (n / zero));
+				}
+				var g: Grid = action Grid(3);
+				project(label + " n=" + n + " total=" + g.total() + " " + g.width);
+			}
+			""";
+		String expected = "10:12/2.5 0474144214284;10:3/2.5 0474144214284; 01 102 203 n=0 total=27 0\n";
+		assertEquals(expected, run(source));
+		assertEquals(expected, runOptimized(source));
+	}
+
+	@Test void oversizedScenesAreSplitIntoHelpers() throws Exception {
+		StringBuilder source = new StringBuilder("""
+			setup Tally {
+				var sum: int;
+				scene add(var n: int): int {
+			""");
+		for (int i = 0; i < 1500; i++) {
+			source.append("sum = sum + n * ").append(i % 7).append(";\n");
+		}
+		source.append("""
+					cut sum;
+				}
+			}
+			scene grow(var n: int, var d: double): double {
+				var acc: double = d;
+			""");
+		for (int i = 0; i < 1500; i++) {
+			source.append("acc = acc + n * 0.5;\n");
+			if (i == 1000) {
+				source.append("if (n < 0) { cut -1.0; }\n");
+			}
+		}
+		source.append("""
+				cut acc;
+			}
+			scene entrance(var args: string[]): scrap {
+				var count: int = 0;
+				var label: string = "x";
+				var t: Tally = action Tally();
+			""");
+		for (int i = 0; i < 4000; i++) {
+			source.append(i % 500 == 0 ? "label = label + count;\n" : "count = count + " + (i % 3) + ";\n");
+			if (i == 2000) {
+				source.append("{ var inner: double = 2.5; count = count + int(inner); }\n");
+			}
+		}
+		source.append("""
+				project(label + " " + count + " " + grow(2, 0.5) + " " + grow(-1, 0.0) + " " + t.add(2));
+			}
+			""");
+		Program program = analyze(source.toString());
+		Map<String, byte[]> classes = new Generator().generate(program).getClasses();
+		int helpers = 0;
+		for (byte[] bytes : classes.values()) {
+			ClassNode classNode = new ClassNode();
+			new ClassReader(bytes).accept(classNode, 0);
+			for (MethodNode method : classNode.methods) {
+				CodeSizeEvaluator size = new CodeSizeEvaluator(null);
+				method.accept(size);
+				assertTrue(size.getMaxSize() <= 8000, method.name + " " + size.getMaxSize());
+				helpers += method.name.contains("$") ? 1 : 0;
+			}
+		}
+		assertTrue(helpers >= 5, "helpers: " + helpers);
+		assertEquals("x049999714971996249629963495 3993 1500.5 -1.0 8990\n", run(load(classes)));
+	}
+
+	// ---------- Instrumentation ----------
+
+	@Test void scenesWithSelfTailCallsAreNotSplit() throws Exception {
+		Program program = analyze("""
+			scene sum(var n: int, var acc: int): int {
+				var a: int = n;
+				var b: int = 1;
+				var c: int = a + b;
+				if (n == 0) {
+					cut acc;
+				}
+				cut sum(n - 1, acc + c - n);
+			}
+			scene other(var n: int): int {
+				var a: int = n + 1;
+				var b: int = a * 2;
+				var c: int = b - n;
+				cut a + b + c;
+			}
+			scene entrance(var args: string[]): scrap {
+				project(sum(100000, 0) + " " + other(3));
+			}
+			""");
+		Map<String, byte[]> classes = new Generator(true, null, false, 20).generate(program).getClasses();
+		ClassNode main = new ClassNode();
+		new ClassReader(classes.get("Main")).accept(main, 0);
+		List<String> helpers = main.methods.stream().map(m -> m.name).filter(name -> name.contains("$")).toList();
+		assertTrue(helpers.stream().noneMatch(name -> name.startsWith("sum$")), helpers.toString());
+		assertTrue(helpers.stream().anyMatch(name -> name.startsWith("other$")), helpers.toString());
+		assertEquals("100000 17\n", run(load(classes)));
+	}
+
+	@Test void instrumentationChargesSplitHelpersToTheirScene() throws Exception {
+		Program program = analyze("""
+			setup Box {
+				var v: int;
+				scene grow(var n: int): int {
+					var a: int = n + v;
+					var b: int = a * 2;
+					v = a + b;
+					cut v;
+				}
+			}
+			scene work(var n: int): int {
+				var a: int = n + 1;
+				var b: int = a * 2;
+				var c: int = b - n;
+				cut a + b + c;
+			}
+			scene entrance(var args: string[]): scrap {
+				var box: Box = action Box();
+				project(work(1) + work(2) + work(3) + " " + box.grow(1) + " " + box.grow(2));
+			}
+			""");
+		Map<String, byte[]> classes = new Generator(true, null, true, 20).generate(program).getClasses();
+		ClassLoader loader = load(classes);
+		assertEquals("39 3 15\n", run(loader));
+		ClassNode main = new ClassNode();
+		new ClassReader(classes.get("Main")).accept(main, 0);
+		assertTrue(main.methods.stream().anyMatch(m -> m.name.startsWith("work$")));
+
+		Class<?> mainClass = loader.loadClass("Main");
+		Field field = mainClass.getDeclaredField("$scenes");
+		field.setAccessible(true);
+		List<String> names = List.of((String[]) field.get(null));
+		long[] probes = (long[]) mainClass.getField("$probes").get(null);
+		assertEquals(List.of("Box.grow", "entrance", "work"), names.stream().sorted().toList());
+		assertEquals(3, probes[3 * names.indexOf("work")]);
+		assertEquals(2, probes[3 * names.indexOf("Box.grow")]);
+	}
+
+	@Test void instrumentedScenesCountCallsAndTime() throws Exception {
+		Program program = analyze("""
+			setup Counter {
+				var n: int;
+				scene tick(): int {
+					n++;
+					cut n;
+				}
+			}
+			scene fib(var n: int): int {
+				if (n < 2) {
+					cut n;
+				}
+				cut fib(n - 1) + fib(n - 2);
+			}
+			scene loop(var n: int, var acc: int): int {
+				if (n == 0) {
+					cut acc;
+				}
+				cut loop(n - 1, acc + n);
+			}
+			scene unused(): int {
+				cut 1;
+			}
+			scene entrance(var args: string[]): scrap {
+				var c: Counter = action Counter();
+				keepRollingDuring (var i: int = 0; i < 4; i++) {
+					c.tick();
+				}
+				project(fib(10) + " " + loop(100, 0) + " " + c.n);
+			}
+			""");
+		ClassLoader loader = load(new Generator(true, null, true).generate(program).getClasses());
+		assertEquals("55 5050 4\n", run(loader));
+
+		Class<?> main = loader.loadClass("Main");
+		long[] probes = (long[]) main.getField("$probes").get(null);
+		Method report = main.getDeclaredMethod("$report");
+		report.setAccessible(true);
+		PrintStream original = System.err;
+		Locale locale = Locale.getDefault();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+		Locale.setDefault(Locale.GERMANY);
+		try {
+			report.invoke(null);
+		}
+		finally {
+			System.setErr(original);
+			Locale.setDefault(locale);
+		}
+		NumberFormat format = NumberFormat.getIntegerInstance(Locale.ROOT);
+		Map<String, Long> calls = new HashMap<>();
+		List<Long> times = new ArrayList<>();
+		List<String> rows = err.toString(StandardCharsets.UTF_8).lines().toList();
+		for (String row : rows.subList(1, rows.size())) {
+			String[] columns = row.trim().split("\\s+");
+			calls.put(columns[4], format.parse(columns[2]).longValue());
+			times.add(format.parse(columns[0]).longValue());
+		}
+		assertEquals(Map.of("entrance", 1L, "fib", 177L, "loop", 1L, "unused", 0L, "Counter.tick", 4L), calls);
+		assertEquals(times.stream().sorted(Comparator.reverseOrder()).toList(), times, String.join("\n", rows));
+		assertTrue(rows.get(1).endsWith("entrance"), String.join("\n", rows));
+		assertTrue(rows.getLast().endsWith("unused"), rows.getLast());
+		assertEquals(15, probes.length);
+		for (int i = 0; i < probes.length; i += 3) {
+			assertTrue(probes[i] == 0 ? probes[i + 1] == 0 : probes[i + 1] > 0, Arrays.toString(probes));
+			assertEquals(0, probes[i + 2], Arrays.toString(probes));
+		}
+	}
+
+	@Test void instrumentedBuildsCountScenesTheInlinerWouldExpand() throws Exception {
+		String source = """
+			scene square(var n: int): int {
+				cut n * n;
+			}
+			scene entrance(var args: string[]): scrap {
+				var sum: int = 0;
+				keepRollingDuring (var i: int = 0; i < 10; i++) {
+					sum = sum + square(i);
+				}
+				project("" + sum);
+			}
+			""";
+		Program inlined = new Optimizer().optimize(analyze(source));
+		assertTrue(inlined.items.stream().anyMatch(item -> item instanceof SceneDecl scene && scene.inline));
+
+		Program program = new Optimizer().optimize(analyze(source), false);
+		ClassLoader loader = load(new Generator(true, null, true).generate(program).getClasses());
+		assertEquals("285\n", run(loader));
+		Method report = loader.loadClass("Main").getDeclaredMethod("$report");
+		report.setAccessible(true);
+		PrintStream original = System.err;
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+		try {
+			report.invoke(null);
+		}
+		finally {
+			System.setErr(original);
+		}
+		String row = err.toString(StandardCharsets.UTF_8).lines().filter(line -> line.endsWith(" square")).findFirst().orElseThrow();
+		assertEquals("10", row.trim().split("\\s+")[2], row);
+	}
+
+	@Test void partitionedScenesLoadTheirHoldersLazily() throws Exception {
+		String source = """
+			setup Counter {
+				var n: int;
+				scene tick(): int {
+					n = bump(n);
+					cut n;
+				}
+			}
+			var total: int;
+			scene bump(var n: int): int {
+				total = total + n;
+				cut n + 1;
+			}
+			scene twice(var n: int): int {
+				cut bump(bump(n));
+			}
+			scene square(var n: int): int {
+				cut n * n;
+			}
+			scene unusedA(): int {
+				cut unusedB() + 1;
+			}
+			scene unusedB(): int {
+				cut 2;
+			}
+			scene entrance(var args: string[]): scrap {
+				var c: Counter = action Counter();
+				c.tick();
+				c.tick();
+				project(twice(3) + " " + square(c.n) + " " + total);
+			}
+			""";
+		String expected = run(analyze(source));
+		Map<String, byte[]> classes = new Generator(true, null, false, Generator.DEFAULT_MAX_METHOD_SIZE, 3)
+			.generate(analyze(source)).getClasses();
+		assertEquals(List.of("Main", "Main$Scenes1", "Main$Scenes2", "Counter"), List.copyOf(classes.keySet()));
+
+		List<String> loaded = new ArrayList<>();
+		ClassLoader loader = new ClassLoader(GeneratorTest.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				loaded.add(name);
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		assertEquals(expected, run(loader));
+		assertEquals("5 4 8\n", expected);
+		assertEquals(List.of("Main", "Counter", "Main$Scenes1"), loaded);
+	}
+
+	@Test void constantArrayTemplatesOfConstructorsAndScenesStayApart() throws Exception {
+		assertEquals("12 5\n", run("""
+			var table: int[] = action int[16] {5, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+			setup Box {
+				var first: int;
+				Box() {
+					var xs: int[] = action int[16] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+					first = xs[0];
+				}
+				scene init(): int {
+					var ys: int[] = action int[16] {2, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+					cut ys[0];
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var box: Box = action Box();
+				project((box.first * 10 + box.init()) + " " + table[0]);
+			}
+			"""));
+	}
+
+	@Test void largeConstantArraysAreDecodedFromStrings() throws Exception {
+		String source = """
+			setup Box {
+				var v: int;
+				scene table(): int[] {
+					cut action int[18] {0, 1, -1, 63, 64, -65, 4095, -4096, 2147483647, -2147483647, 7, 100000, -3, 12, 31, 32, 33, -100000};
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var sum: int = 0;
+				keepRollingDuring (var i: int = 0; i < 3; i++) {
+					var xs: int[] = action int[18] {0, 1, -1, 63, 64, -65, 4095, -4096, 2147483647, -2147483647, 7, 100000, -3, 12, 31, 32, 33, -100000};
+					sum = sum + xs[i] + xs[17];
+					xs[17] = 5;
+				}
+				var ds: double[] = action double[16] {0.0, -0.0, 1.5, -2.25, 123456789012345.0, 0.000001, 0.1, 100.0, -7.5, 2.0, 0.5, 1024.0, -1.0, 602000000000000000000000.0, 123456.789, 0.3};
+				var bs: bool[] = action bool[17] {true, false, true, false, true, false, true, false, true, false, true, false, true, false, true, false, true};
+				var cs: char[] = action char[16] {'a', 'b', 's', 'o', 'l', 'u', 't', 'e', ' ', 'c', 'i', 'n', 'e', 'm', 'a', '!'};
+				var names: string[] = action string[2] {"a", "b"};
+				var boxes: Box[] = action Box[2];
+				boxes[0] = action Box();
+				project(sum + " " + ds[1] + " " + ds[4] + " " + ds[13] + " " + ds[14] + " " + bs[0] + " " + bs[15]
+					+ " " + bs[16] + " " + cs[0] + cs[15] + " " + names[1] + " " + boxes[0].table()[9] + " " + boxes[0].table()[8]);
+			}
+			""";
+		String expected = "-300000 -0.0 1.23456789012345E14 6.02E23 123456.789 true false true a! b -2147483647 2147483647\n";
+		assertEquals(expected, run(source));
+		Map<String, byte[]> classes = new Generator().generate(analyze(source)).getClasses();
+		ClassNode main = new ClassNode();
+		new ClassReader(classes.get("Main")).accept(main, 0);
+		assertEquals(List.of("$unpackD", "$unpackI", "$unpackZ"),
+			main.methods.stream().map(m -> m.name).filter(n -> n.startsWith("$")).sorted().toList());
+		assertEquals(List.of("[D", "[I", "[Z"), main.fields.stream().filter(f -> f.name.contains("$array")).map(f -> f.desc).sorted().toList());
+		ClassNode box = new ClassNode();
+		new ClassReader(classes.get("Box")).accept(box, 0);
+		assertTrue(box.methods.stream().anyMatch(m -> m.name.equals("$unpackI")));
+	}
+}
@@ -0,0 +1,266 @@
+package com.lazar.absolutecinema.generator;
+
+import com.lazar.absolutecinema.generator.ir.IrMethod;
+import com.lazar.absolutecinema.generator.ir.IrPrinter;
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.parser.ast.SceneDecl;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IrBuilderTest {
+
+	private static Program analyze(String source) {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		return program;
+	}
+
+	private static IrMethod build(Program program, String scene) {
+		Map<String, SceneDecl> scenes = new HashMap<>();
+		for (var item : program.items) {
+			if (item instanceof SceneDecl s) {
+				scenes.put(s.name.getLexeme(), s);
+			}
+		}
+		return new IrBuilder("Main", scenes, Map.of()).build(scenes.get(scene));
+	}
+
+	@Test void ifElseBuildsDiamond() {
+		Program program = analyze("""
+			scene sign(var x: int): string {
+				var s: string = "zero";
+				if (x > 0) {
+					s = "pos";
+				} else {
+					s = "neg";
+				}
+				cut s;
+			}
+			scene entrance(var args: string[]): scrap { project(sign(1)); }
+			""");
+		String dump = IrPrinter.print(build(program, "sign"));
+		assertTrue(dump.startsWith("Main.sign(I)Ljava/lang/String; {\nb0:\n"), dump);
+		assertTrue(dump.contains("if_icmpgt"), dump);
+		assertFalse(dump.contains("ifeq"), dump);
+		assertFalse(dump.contains("const 1\n"), dump);
+		assertTrue(dump.contains("; preds"), dump);
+		assertTrue(dump.trim().endsWith("areturn\n}"), dump);
+	}
+
+	@Test void codeAfterCutNeverReachesTheClassFile() throws Exception {
+		Program program = analyze("""
+			scene first(var n: int): int {
+				keepRollingDuring (var i: int = 0; i < n; i++) {
+					cut i;
+					project("unreachable");
+				}
+				cut -1;
+				project("unreachable");
+			}
+			scene entrance(var args: string[]): scrap { project("" + first(3)); }
+			""");
+		byte[] bytes = new Generator().generate(program).getBinaryIR();
+		ClassNode classNode = new ClassNode();
+		new ClassReader(bytes).accept(classNode, 0);
+		MethodNode first = classNode.methods.stream().filter(m -> m.name.equals("first")).findFirst().orElseThrow();
+		for (AbstractInsnNode insn : first.instructions) {
+			assertNotEquals(Opcodes.ATHROW, insn.getOpcode());
+			assertNotEquals(Opcodes.NOP, insn.getOpcode());
+			assertNotEquals(Opcodes.INVOKESTATIC, insn.getOpcode());
+		}
+	}
+
+	@Test void concatenationChainBecomesOneCall() {
+		Program program = analyze("""
+			scene describe(var n: int, var c: char, var ok: bool, var d: double): string {
+				cut "n=" + n + ", c=" + c + (", ok=" + ok) + ", d=" + d + " " + 2 + 'x' + null;
+			}
+			scene entrance(var args: string[]): scrap { project(describe(1, 'a', true, 0.5)); }
+			""");
+		String dump = IrPrinter.print(build(program, "describe"));
+		assertEquals(1, dump.split("concat ").length - 1, dump);
+		assertTrue(dump.contains("concat (ICZD)Ljava/lang/String; \"n=\\1, c=\\1, ok=\\1, d=\\1 2xnull\""), dump);
+		assertFalse(dump.contains("StringBuilder"), dump);
+	}
+
+	@Test void statementsLeaveNothingToPop() {
+		Program program = analyze("""
+			var calls: int = 0;
+			scene next(): int {
+				calls = calls + 1;
+				cut calls;
+			}
+			scene fill(var xs: double[], var n: int): scrap {
+				var i: int = 0;
+				keepRollingDuring (i = 0; i < n; i++) {
+					xs[i] = double(next());
+				}
+				n = i;
+			}
+			scene entrance(var args: string[]): scrap {
+				var xs: double[] = action double[3];
+				fill(xs, 3);
+			}
+			""");
+		String dump = IrPrinter.print(build(program, "fill"));
+		assertFalse(dump.contains("dup"), dump);
+		assertFalse(dump.contains("pop"), dump);
+		assertEquals(1, dump.split("invokestatic Main.next").length - 1, dump);
+	}
+
+	@Test void countersUseIincAndArraysReadOnce() {
+		Program program = analyze("""
+			scene tally(var xs: int[], var n: int): int {
+				var total: int = 0;
+				keepRollingDuring (var i: int = 0; i < n; i++) {
+					xs[i] += 2;
+					total += 3;
+				}
+				cut total;
+			}
+			scene entrance(var args: string[]): scrap {
+				var xs: int[] = action int[3];
+				project("" + tally(xs, 3));
+			}
+			""");
+		String dump = IrPrinter.print(build(program, "tally"));
+		assertTrue(dump.contains("iinc 3 1"), dump);
+		assertTrue(dump.contains("iinc 2 3"), dump);
+		assertTrue(dump.contains("dup2\n    iaload"), dump);
+		assertEquals(1, dump.split("iaload").length - 1, dump);
+	}
+
+	@Test void siblingScopesShareSlotsAndAreListed() {
+		Program program = analyze("""
+			scene pick(var n: int): int {
+				var total: int = 0;
+				if (n > 2) {
+					var a: double = 1.5;
+					total = int(a);
+				} else {
+					var s: string = "x";
+					var b: int = 3;
+					total = b;
+				}
+				keepRollingDuring (var i: int = 0; i < n; i++) {
+					total += i;
+				}
+				cut total;
+				var dead: int = 1;
+			}
+			scene entrance(var args: string[]): scrap { project("" + pick(4)); }
+			""");
+		ClassNode classNode = new ClassNode();
+		new ClassReader(new Generator().generate(program).getBinaryIR()).accept(classNode, 0);
+		MethodNode pick = classNode.methods.stream().filter(m -> m.name.equals("pick")).findFirst().orElseThrow();
+		assertEquals(4, pick.maxLocals);
+		Map<String, Integer> slots = new HashMap<>();
+		for (LocalVariableNode local : pick.localVariables) {
+			slots.put(local.name, local.index);
+			assertTrue(pick.instructions.indexOf(local.start) < pick.instructions.indexOf(local.end), local.name);
+		}
+		assertEquals(Map.of("n", 0, "total", 1, "a", 2, "s", 2, "b", 3, "i", 2), slots);
+	}
+
+	@Test void equalityChainsBecomeSwitches() {
+		Program program = analyze("""
+			scene dense(var n: int): int {
+				var r: int = 0;
+				if (n == 1) { r = 10; } elif (n == 2) { r = 20; } elif (n == 3 || n == 5) { r = 30; } else { r = -1; }
+				cut r;
+			}
+			scene sparse(var n: int): int {
+				if (n == 1) { cut 1; } elif (n == 1000) { cut 2; } elif (n == -50000) { cut 3; }
+				cut 0;
+			}
+			scene words(var s: string): int {
+				if (s == "a") { cut 1; } elif (s == "b") { cut 2; } elif (s == "c") { cut 3; }
+				cut 0;
+			}
+			scene mixed(var n: int, var m: int): int {
+				if (n == 1) { cut 1; } elif (m == 2) { cut 2; } elif (n == 3) { cut 3; }
+				cut 0;
+			}
+			scene entrance(var args: string[]): scrap { project("" + dense(1) + sparse(2) + words("a") + mixed(1, 2)); }
+			""");
+		assertTrue(IrPrinter.print(build(program, "dense")).contains("switch 1 -> b1, 2 -> b2, 3 -> b3, 5 -> b3 else b4"));
+		String text = new Generator().generate(program).getPlainTextIR();
+		String dense = text.substring(text.indexOf("dense(I)I"), text.indexOf(".end method", text.indexOf("dense(I)I")));
+		assertTrue(dense.contains("tableswitch 1\n"), dense);
+		assertFalse(dense.contains("if_icmp"), dense);
+		String sparse = text.substring(text.indexOf("sparse(I)I"), text.indexOf(".end method", text.indexOf("sparse(I)I")));
+		assertTrue(sparse.contains("lookupswitch\n        -50000 : "), sparse);
+		String words = text.substring(text.indexOf("words("), text.indexOf(".end method", text.indexOf("words(")));
+		assertTrue(words.contains("java/lang/String/hashCode()I"), words);
+		assertEquals(3, words.split("java/lang/String/equals").length - 1, words);
+		String mixed = text.substring(text.indexOf("mixed(II)I"), text.indexOf(".end method", text.indexOf("mixed(II)I")));
+		assertFalse(mixed.contains("switch"), mixed);
+	}
+
+	@Test void lineNumbersFollowTheScript() {
+		Program program = analyze("""
+			setup Box {
+				var v: int;
+				scene twice(): int {
+					cut v * 2;
+				}
+			}
+			scene sum(var n: int): int {
+				var total: int = 0;
+				keepRollingDuring (var i: int = 0; i < n; i++) {
+					total += i;
+				}
+				cut total;
+			}
+			scene entrance(var args: string[]): scrap { project("" + sum(3)); }
+			""");
+		Map<String, byte[]> classes = new Generator(true, "sum.ac").generate(program).getClasses();
+		ClassNode main = new ClassNode();
+		new ClassReader(classes.get("Main")).accept(main, 0);
+		assertEquals("sum.ac", main.sourceFile);
+		MethodNode sum = main.methods.stream().filter(m -> m.name.equals("sum")).findFirst().orElseThrow();
+		List<Integer> lines = new ArrayList<>();
+		for (AbstractInsnNode insn : sum.instructions) {
+			if (insn instanceof LineNumberNode line) {
+				lines.add(line.line);
+				assertTrue(sum.instructions.indexOf(line.start) < sum.instructions.indexOf(line));
+			}
+		}
+		assertEquals(List.of(8, 9, 10, 9, 12), lines);
+
+		ClassNode box = new ClassNode();
+		new ClassReader(classes.get("Box")).accept(box, 0);
+		assertEquals("sum.ac", box.sourceFile);
+		MethodNode twice = box.methods.stream().filter(m -> m.name.equals("twice")).findFirst().orElseThrow();
+		assertTrue(twice.instructions.get(1) instanceof LineNumberNode line && line.line == 4);
+	}
+
+	@Test void jasminTextCarriesRealLimits() {
+		Program program = analyze("""
+			scene entrance(var args: string[]): scrap {
+				var d: double = 1.5;
+				project("d=" + d);
+			}
+			""");
+		String text = new Generator().generate(program).getPlainTextIR();
+		assertTrue(text.contains(".method public static main([Ljava/lang/String;)V\n    .limit stack 4\n    .limit locals 3\n"), text);
+		assertTrue(text.contains("ldc2_w 1.5"), text);
+		assertTrue(text.contains("invokedynamic makeConcatWithConstants(D)Ljava/lang/String; \"d=\\u0001\""), text);
+	}
+}
@@ -0,0 +1,81 @@
+package com.lazar.absolutecinema.generator;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.Printer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeepholeTest {
+
+	private static MethodNode method() {
+		MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+		method.visitCode();
+		return method;
+	}
+
+	private static List<String> optimized(MethodNode method) {
+		Peephole.optimize(method);
+		List<String> opcodes = new ArrayList<>();
+		for (AbstractInsnNode insn : method.instructions) {
+			if (insn.getOpcode() >= 0) {
+				opcodes.add(Printer.OPCODES[insn.getOpcode()].toLowerCase());
+			}
+		}
+		return opcodes;
+	}
+
+	@Test void constantBranchesAndDeadCodeDisappear() {
+		MethodNode m = method();
+		Label skip = new Label();
+		m.visitInsn(Opcodes.ICONST_1);
+		m.visitJumpInsn(Opcodes.IFEQ, skip);
+		m.visitVarInsn(Opcodes.ILOAD, 0);
+		m.visitInsn(Opcodes.IRETURN);
+		m.visitInsn(Opcodes.ICONST_2);
+		m.visitInsn(Opcodes.IRETURN);
+		m.visitLabel(skip);
+		m.visitInsn(Opcodes.ICONST_0);
+		m.visitInsn(Opcodes.IRETURN);
+		assertEquals(List.of("iload", "ireturn"), optimized(m));
+	}
+
+	@Test void jumpChainsCollapse() {
+		MethodNode m = method();
+		Label hop = new Label();
+		Label exit = new Label();
+		Label loop = new Label();
+		m.visitLabel(loop);
+		m.visitVarInsn(Opcodes.ILOAD, 0);
+		m.visitJumpInsn(Opcodes.IFEQ, hop);
+		m.visitIincInsn(0, -1);
+		m.visitJumpInsn(Opcodes.GOTO, loop);
+		m.visitLabel(hop);
+		m.visitJumpInsn(Opcodes.GOTO, exit);
+		m.visitLabel(exit);
+		m.visitVarInsn(Opcodes.ILOAD, 0);
+		m.visitInsn(Opcodes.IRETURN);
+		List<String> opcodes = optimized(m);
+		assertEquals(List.of("iload", "ifeq", "iinc", "goto", "iload", "ireturn"), opcodes);
+	}
+
+	@Test void gotoReturnStoreLoadAndDupPop() {
+		MethodNode m = method();
+		Label end = new Label();
+		m.visitVarInsn(Opcodes.ILOAD, 0);
+		m.visitInsn(Opcodes.DUP);
+		m.visitInsn(Opcodes.POP);
+		m.visitVarInsn(Opcodes.ISTORE, 1);
+		m.visitVarInsn(Opcodes.ILOAD, 1);
+		m.visitJumpInsn(Opcodes.GOTO, end);
+		m.visitLabel(end);
+		m.visitInsn(Opcodes.IRETURN);
+		assertEquals(List.of("iload", "dup", "istore", "ireturn"), optimized(m));
+	}
+}
@@ -0,0 +1,169 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.generator.Generator;
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.semantic.ResolvedType;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFolderTest {
+
+	private static List<Node> foldEntrance(String body) {
+		Program program = new Parser(new Lexer("""
+			scene entrance(var args: string[]): scrap {
+			""" + body + """
+			}
+			""").lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		new ConstantFolder().fold(program);
+		return ((SceneDecl) program.items.get(0)).body.statements;
+	}
+
+	private static String run(String source, boolean fold) throws Exception {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		if (fold) {
+			new ConstantFolder().fold(program);
+		}
+		Map<String, byte[]> classes = new Generator().generate(program).getClasses();
+		ClassLoader loader = new ClassLoader(ConstantFolderTest.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		PrintStream original = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+		try {
+			loader.loadClass("Main").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+		}
+		finally {
+			System.setOut(original);
+		}
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static Expr initializer(Node node) {
+		return ((Var) node).decl.initializer;
+	}
+
+	private static void assertLiteral(Object expected, ResolvedType type, Expr expr) {
+		Literal literal = assertInstanceOf(Literal.class, expr);
+		assertEquals(expected, literal.value);
+		assertEquals(type, literal.getType());
+	}
+
+	@Test void foldsIntegerArithmeticWithJvmSemantics() {
+		List<Node> body = foldEntrance("""
+			var a: int = 2 * 3 + 7 / 2 - 7 % 3;
+			var b: int = -7 / 2;
+			var c: int = -7 % 3;
+			var d: int = 2147483647 + 1;
+			""");
+		assertLiteral(8, ResolvedType.INT, initializer(body.get(0)));
+		assertLiteral(-3, ResolvedType.INT, initializer(body.get(1)));
+		assertLiteral(-1, ResolvedType.INT, initializer(body.get(2)));
+		assertLiteral(Integer.MIN_VALUE, ResolvedType.INT, initializer(body.get(3)));
+	}
+
+	@Test void foldsDoublesAndCasts() {
+		List<Node> body = foldEntrance("""
+			var a: double = 1 + 0.5 * 3;
+			var b: double = double(5);
+			var c: int = int(4.0) + 1;
+			var d: double = 7.5 % 2;
+			""");
+		assertLiteral(2.5, ResolvedType.DOUBLE, initializer(body.get(0)));
+		assertLiteral(5.0, ResolvedType.DOUBLE, initializer(body.get(1)));
+		assertLiteral(5, ResolvedType.INT, initializer(body.get(2)));
+		assertLiteral(1.5, ResolvedType.DOUBLE, initializer(body.get(3)));
+	}
+
+	@Test void foldsNaNComparisonsLikeTheGeneratedCode() throws Exception {
+		String source = """
+			scene entrance(var args: string[]): scrap {
+				var zero: double = 0.0;
+				var nan: double = zero / zero;
+				project("" + (0.0 / 0.0 < 1.0) + (0.0 / 0.0 <= 1.0) + (0.0 / 0.0 > 1.0) + (0.0 / 0.0 >= 1.0)
+					+ (0.0 / 0.0 == 0.0 / 0.0) + (0.0 / 0.0 != 1.0) + (1.0 < 0.0 / 0.0) + (-0.0 < 0.0));
+				project("" + (nan < 1.0) + (nan <= 1.0) + (nan > 1.0) + (nan >= 1.0)
+					+ (nan == nan) + (nan != 1.0) + (1.0 < nan) + (-0.0 < zero));
+			}
+			""";
+		String expected = "falsefalsefalsefalsefalsetruefalsefalse\n".repeat(2);
+		assertEquals(expected, run(source, false));
+		assertEquals(expected, run(source, true));
+	}
+
+	@Test void foldsStringsAndBooleans() {
+		List<Node> body = foldEntrance("""
+			var s: string = "a" + "b" + 1 + 2.5 + (1 < 2);
+			var t: bool = !true || (3 >= 4 && true);
+			var x: int = 3;
+			var u: bool = true && x > 1;
+			""");
+		assertLiteral("ab12.5true", ResolvedType.STRING, initializer(body.get(0)));
+		assertLiteral(false, ResolvedType.BOOL, initializer(body.get(1)));
+		assertInstanceOf(Binary.class, initializer(body.get(3)));
+	}
+
+	@Test void leavesDivisionByZeroForRuntime() {
+		List<Node> body = foldEntrance("""
+			var a: int = 1 / 0;
+			var b: int = 5 % (2 - 2);
+			""");
+		assertInstanceOf(Binary.class, initializer(body.get(0)));
+		Binary b = assertInstanceOf(Binary.class, initializer(body.get(1)));
+		assertLiteral(0, ResolvedType.INT, b.right);
+	}
+
+	@Test void prunesConstantBranches() {
+		List<Node> body = foldEntrance("""
+			var x: int = 1;
+			if (1 < 2) {
+				project("yes");
+			}
+			else {
+				project("no");
+			}
+			if (false) {
+				project("never");
+			}
+			elif (x > 0) {
+				project("maybe");
+			}
+			elif (true) {
+				project("fallback");
+			}
+			else {
+				project("dead");
+			}
+			keepRollingIf (2 == 3) {
+				project("loop");
+			}
+			""");
+		assertEquals(3, body.size());
+		Block taken = assertInstanceOf(Block.class, body.get(1));
+		assertEquals(1, taken.statements.size());
+		If remaining = assertInstanceOf(If.class, body.get(2));
+		assertEquals(ConditionalType.IF, remaining.ifBranch.conditionalType);
+		assertTrue(remaining.elifBranchList.isEmpty());
+		ExprStmt fallback = (ExprStmt) remaining.elseBranch.block.statements.get(0);
+		assertLiteral("fallback", ResolvedType.STRING, ((Call) fallback.expr).arguments.get(0));
+	}
+}
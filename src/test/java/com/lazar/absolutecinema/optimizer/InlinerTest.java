@@ -0,0 +1,42 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InlinerTest {
+
+	private static Program parse(String source) {
+		return new Parser(new Lexer(source).lex()).parseProgram();
+	}
+
+	@Test void marksSmallScenesButNotRecursiveOnes() {
+		Program program = parse("""
+			scene add(var a: int, var b: int): int { cut a + b; }
+			scene fact(var n: int): int { if (n <= 1) { cut 1; } cut n * fact(n - 1); }
+			scene even(var n: int): bool { if (n == 0) { cut true; } cut odd(n - 1); }
+			scene odd(var n: int): bool { if (n == 0) { cut false; } cut even(n - 1); }
+			scene entrance(var args: string[]): scrap {
+				project("" + add(1, 2) + fact(3) + even(4));
+			}
+			""");
+		List<String> inlined = new Inliner().mark(program);
+		assertEquals(Set.of("add"), Set.copyOf(inlined));
+	}
+
+	@Test void leavesLargeScenesAsCalls() {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < Inliner.MAX_INLINE_SIZE; i++) {
+			body.append("project(\"").append(i).append("\");\n");
+		}
+		Program program = parse("scene big(): scrap {\n" + body + "}\n"
+			+ "scene entrance(var args: string[]): scrap { big(); }\n");
+		assertTrue(new Inliner().mark(program).isEmpty());
+	}
+}
@@ -0,0 +1,106 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopOptimizerTest {
+
+	private static Program analyze(String source) {
+		Program program = new Parser(new Lexer(source).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		return program;
+	}
+
+	private static SceneDecl scene(Program program, String name) {
+		for (Node item : program.items) {
+			if (item instanceof SceneDecl scene && scene.name.getLexeme().equals(name)) {
+				return scene;
+			}
+		}
+		throw new AssertionError(name);
+	}
+
+	@Test void hoistsInvariantsButNotWhatMightThrowOrChange() {
+		Program program = analyze("""
+			var calls: int = 0;
+			scene touch(): int {
+				calls = calls + 1;
+				cut calls;
+			}
+			scene run(var n: int, var zero: int, var d: double): string {
+				var s: string = "";
+				keepRollingIf (n > 0 && n / zero > 1) {
+					s = s + (d * 2.0) + (calls * 3) + (n * 2);
+					n--;
+				}
+				keepRollingIf (n / zero > calls + 1) {
+					touch();
+				}
+				cut s;
+			}
+			scene entrance(var args: string[]): scrap { project(run(1, 1, 0.5)); }
+			""");
+		SceneDecl run = scene(program, "run");
+		int frame = run.frameSize;
+		assertEquals(3, new LoopOptimizer().optimize(program));
+		assertEquals(frame + 4, run.frameSize);
+
+		Block first = assertInstanceOf(Block.class, run.body.statements.get(1));
+		assertEquals(3, first.statements.size());
+		VarDecl product = assertInstanceOf(Var.class, first.statements.get(0)).decl;
+		assertEquals("loop$0", product.name.getLexeme());
+		assertEquals(frame, product.binding.slot());
+		assertEquals("d", ((Variable) ((Binary) product.initializer).left).name.getLexeme());
+		assertInstanceOf(While.class, first.statements.get(2));
+
+		// calls + 1 is read around a call, but the division runs first on every entry.
+		Block second = assertInstanceOf(Block.class, run.body.statements.get(2));
+		Binary division = (Binary) assertInstanceOf(Var.class, second.statements.get(0)).decl.initializer;
+		assertEquals("/", division.op.getLexeme());
+		Binary cond = (Binary) ((While) second.statements.get(1)).condition;
+		assertInstanceOf(Variable.class, cond.left);
+		assertInstanceOf(Binary.class, cond.right);
+	}
+
+	@Test void countersTimesConstantsBecomeRunningSums() {
+		Program program = analyze("""
+			scene fill(var xs: int[], var n: int): scrap {
+				keepRollingDuring (var i: int = 1; i < n; i += 2) {
+					xs[i * 3] = 3 * i + i * 3;
+					xs[i * 5] = i * n;
+				}
+			}
+			scene entrance(var args: string[]): scrap {
+				var xs: int[] = action int[40];
+				fill(xs, 7);
+			}
+			""");
+		SceneDecl fill = scene(program, "fill");
+		assertEquals(2, new LoopOptimizer().optimize(program));
+
+		Block loop = assertInstanceOf(Block.class, fill.body.statements.getFirst());
+		assertEquals(4, loop.statements.size());
+		assertInstanceOf(Var.class, loop.statements.get(0));
+		VarDecl threes = assertInstanceOf(Var.class, loop.statements.get(1)).decl;
+		assertEquals("-", ((Binary) threes.initializer).op.getLexeme());
+		assertEquals(6, ((Literal) ((Binary) threes.initializer).right).value);
+		For rolled = assertInstanceOf(For.class, loop.statements.get(3));
+		assertNull(rolled.initializer);
+
+		Block body = assertInstanceOf(Block.class, rolled.body);
+		Assign advance = (Assign) ((ExprStmt) body.statements.get(0)).expr;
+		assertEquals("+=", advance.op.getLexeme());
+		assertEquals(threes.binding, advance.binding);
+		Block original = assertInstanceOf(Block.class, body.statements.get(2));
+		Binary sum = (Binary) ((Assign) ((ExprStmt) original.statements.get(0)).expr).value;
+		assertEquals("loop$0", ((Variable) sum.left).name.getLexeme());
+		assertEquals("loop$0", ((Variable) sum.right).name.getLexeme());
+		Assign second = (Assign) ((ExprStmt) original.statements.get(1)).expr;
+		assertInstanceOf(Binary.class, second.value);
+	}
+}
@@ -0,0 +1,93 @@
+package com.lazar.absolutecinema.optimizer;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.*;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReachabilityTest {
+
+	private static Program parse(String source) {
+		return new Parser(new Lexer(source).lex()).parseProgram();
+	}
+
+	@Test void dropsScenesAndGlobalsNotReachableFromEntrance() {
+		Program program = parse("""
+			var used: int = 1;
+			var unused: int = 2;
+			scene a(): int { cut b() + used; }
+			scene b(): int { cut 1; }
+			scene ping(): int { cut pong(); }
+			scene pong(): int { cut ping() + unused; }
+			scene entrance(var args: string[]): scrap {
+				project("" + a());
+			}
+			""");
+		List<String> removed = new Reachability().prune(program);
+		assertEquals(java.util.Set.of("var:unused", "scene:ping", "scene:pong"), java.util.Set.copyOf(removed));
+		assertEquals(4, program.items.size());
+		assertDoesNotThrow(() -> new SemanticAnalyzer(program).analyze());
+	}
+
+	@Test void keepsReferencedSetupsAndOnlyCalledMethods() {
+		Program program = parse("""
+			setup Counter {
+				var count: int;
+				Counter() { @.count = 0; }
+				scene bump(): scrap { @.count = @.count + 1; }
+				scene reset(): scrap { @.count = 0; }
+			}
+			setup Unused {
+				var x: int;
+			}
+			scene entrance(var args: string[]): scrap {
+				var c: Counter = action Counter();
+				c.bump();
+			}
+			""");
+		List<String> removed = new Reachability().prune(program);
+		assertEquals(java.util.Set.of("setup:Unused", "method:Counter.reset"), java.util.Set.copyOf(removed));
+		SetupDecl counter = (SetupDecl) program.items.get(0);
+		assertEquals(1, counter.methods.size());
+		assertEquals("bump", counter.methods.get(0).name.getLexeme());
+	}
+
+	@Test void keepsGlobalsWithSideEffectingInitializers() {
+		Program program = parse("""
+			var loud: string = announce();
+			var quiet: int = 1 + 2;
+			scene announce(): string { project("hi"); cut "x"; }
+			scene entrance(var args: string[]): scrap {
+			}
+			""");
+		List<String> removed = new Reachability().prune(program);
+		assertEquals(List.of("var:quiet"), removed);
+	}
+
+	@Test void unreachableBodiesAreNotAnalyzed() {
+		Program program = parse("""
+			scene broken(): int { cut "not an int"; }
+			scene entrance(var args: string[]): scrap {
+			}
+			""");
+		new Reachability().prune(program);
+		assertDoesNotThrow(() -> new SemanticAnalyzer(program).analyze());
+	}
+
+	@Test void keepsEverythingWithoutEntranceOrWithDuplicates() {
+		Program noEntrance = parse("scene a(): scrap { }");
+		assertTrue(new Reachability().prune(noEntrance).isEmpty());
+		Program duplicates = parse("""
+			scene a(): scrap { }
+			scene a(): scrap { }
+			scene entrance(var args: string[]): scrap { }
+			""");
+		new Reachability().prune(duplicates);
+		assertEquals(3, duplicates.items.size());
+	}
+}
@@ -0,0 +1,107 @@
+package com.lazar.absolutecinema.semantic;
+
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalAnalyzerTest {
+
+	private static final String BASE = """
+		var limit: int = 10;
+		scene helper(var a: int): string {
+			cut "" + a + limit;
+		}
+		scene other(): int {
+			cut 1;
+		}
+		scene entrance(var args: string[]): scrap {
+			var x: string = helper(other());
+		}
+		""";
+
+	private static Program parse(String source) {
+		return new Parser(new Lexer(source).lex()).parseProgram();
+	}
+
+	@Test void firstRunChecksEverything() {
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		IncrementalAnalyzer.Result result = analyzer.analyze(parse(BASE));
+		assertEquals(4, result.checked().size());
+		assertTrue(result.reused().isEmpty());
+	}
+
+	@Test void bodyEditRechecksOnlyThatScene() {
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(parse(BASE));
+		IncrementalAnalyzer.Result result = analyzer.analyze(parse(BASE.replace("cut 1;", "cut 2;")));
+		assertEquals(List.of("scene:other"), result.checked());
+	}
+
+	@Test void signatureEditRechecksDependents() {
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(parse(BASE));
+		IncrementalAnalyzer.Result result =
+			analyzer.analyze(parse(BASE.replace("var limit: int = 10;", "var limit: double = 1.5;")));
+		assertEquals(List.of("var:limit", "scene:helper"), result.checked());
+	}
+
+	@Test void tokenStreamReparsesOnlyChangedSpans() {
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(new Lexer(BASE).lex());
+		String edited = BASE.replace("cut 1;", "cut   2 ;");
+		IncrementalAnalyzer.Result result = analyzer.analyze(new Lexer(edited).lex());
+		assertEquals(List.of("scene:other"), result.checked());
+		assertEquals(4, result.program().items.size());
+	}
+
+	@Test void signatureEditSurfacesErrorsInDependents() {
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(parse(BASE));
+		assertThrows(RuntimeException.class,
+			() -> analyzer.analyze(parse(BASE.replace("scene other(): int", "scene other(): string"))));
+	}
+
+	@Test void editsWithCollidingHashesAreRechecked() {
+		String before = """
+			scene f(): int {
+				var Aa: int = 1;
+				cut Aa;
+			}
+			scene entrance(var args: string[]): scrap {
+				f();
+			}
+			""";
+		String after = before.replace("cut Aa;", "cut BB;");
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(parse(before));
+		RuntimeException e = assertThrows(RuntimeException.class, () -> analyzer.analyze(parse(after)));
+		assertTrue(e.getMessage().contains("BB"), e.getMessage());
+
+		IncrementalAnalyzer tokens = new IncrementalAnalyzer();
+		tokens.analyze(new Lexer(before).lex());
+		e = assertThrows(RuntimeException.class, () -> tokens.analyze(new Lexer(after).lex()));
+		assertTrue(e.getMessage().contains("BB"), e.getMessage());
+	}
+
+	@Test void literalEditsWithCollidingHashesAreRechecked() {
+		String before = """
+			scene f(): string {
+				cut "Aa";
+			}
+			scene entrance(var args: string[]): scrap {
+				var s: string = f();
+			}
+			""";
+		IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+		analyzer.analyze(parse(before));
+		IncrementalAnalyzer.Result result = analyzer.analyze(parse(before.replace("\"Aa\"", "\"BB\"")));
+		assertEquals(List.of("scene:f"), result.checked());
+	}
+}
@@ -0,0 +1,87 @@
+package com.lazar.absolutecinema.util;
+
+import com.lazar.absolutecinema.generator.Generator;
+import com.lazar.absolutecinema.lexer.Lexer;
+import com.lazar.absolutecinema.parser.Parser;
+import com.lazar.absolutecinema.parser.ast.Program;
+import com.lazar.absolutecinema.semantic.SemanticAnalyzer;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JfrProfileTest {
+	private static final String SOURCE = """
+		setup Acc {
+			var sum: double;
+		}
+		scene work(var n: int): double {
+			var acc: double = 0.0;
+			keepRollingDuring (var i: int = 0; i < n; i++) {
+				acc = acc + (i % 7) * 0.5 / (acc + 1.0);
+			}
+			cut acc;
+		}
+		scene entrance(var args: string[]): scrap {
+			project("" + work(2000000));
+		}
+		""";
+
+	@Test void samplesLandOnScriptLines(@TempDir Path dir) throws Exception {
+		assertEquals(Set.of("Main", "Acc"), JfrProfile.scriptClasses(SOURCE));
+		Program program = new Parser(new Lexer(SOURCE).lex()).parseProgram();
+		new SemanticAnalyzer(program).analyze();
+		Map<String, byte[]> classes = new Generator(true, "work.ac").generate(program).getClasses();
+		ClassLoader loader = new ClassLoader(JfrProfileTest.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		Method main = loader.loadClass("Main").getMethod("main", String[].class);
+
+		Path file = dir.resolve("run.jfr");
+		PrintStream original = System.out;
+		try (Recording recording = new Recording()) {
+			recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(1)).withStackTrace();
+			recording.start();
+			System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+			long end = System.nanoTime() + Duration.ofMillis(800).toNanos();
+			while (System.nanoTime() < end) {
+				main.invoke(null, (Object) new String[0]);
+			}
+			recording.stop();
+			recording.dump(file);
+		}
+		finally {
+			System.setOut(original);
+		}
+
+		JfrProfile.Profile profile = JfrProfile.read(file, JfrProfile.scriptClasses(SOURCE));
+		assertFalse(profile.lines().isEmpty());
+		JfrProfile.Line hottest = profile.lines().getFirst();
+		assertTrue(hottest.line() == 6 || hottest.line() == 7, profile.toString());
+		JfrProfile.Line call = profile.lines().stream().filter(l -> l.line() == 12).findFirst().orElseThrow();
+		assertTrue(call.total() >= hottest.self(), profile.toString());
+
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		JfrProfile.print(profile, SOURCE.lines().toList(), new PrintStream(text, true, StandardCharsets.UTF_8));
+		List<String> lines = text.toString(StandardCharsets.UTF_8).lines().toList();
+		assertTrue(lines.get(2).endsWith(SOURCE.lines().toList().get(hottest.line() - 1).strip()), lines.get(2));
+	}
+}